@@ -0,0 +1,149 @@
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.Vector;
+import java.util.function.IntSupplier;
+
+/**
+ * Overview:
+ * The {@code BenchmarkFixtures} class implements the workloads measured by the benchmarks.
+ * <br>
+ * JMH要求基准测试类位于具名包中，而模拟器的类都在默认包中，因此所有负载都在这里构造，
+ * 以JDK函数式接口的形式交给{@code benchmark}包中的基准测试类调用。
+ * <br>
+ * 地图从{@code taxi.home}系统属性指定的目录（默认为当前目录）中的{@code map.txt}和{@code light.txt}读入。
+ */
+public class BenchmarkFixtures {
+	private static final int PAIRS = 1024;
+
+	private BenchmarkFixtures() {
+	}
+
+	/**
+	 * Requires:传入是否为VipTaxi。<br>
+	 * Modifies:新建一张城市地图。<br>
+	 * Effects:返回一个负载，每次调用在预先生成的随机起止点之间求一次最短路，返回路径长度。<br>
+	 *
+	 * @param ifVip 是否为VipTaxi。
+	 *
+	 * @return 最短路负载。
+	 *
+	 * @throws Throwable 地图读入异常。
+	 */
+	public static IntSupplier routing(boolean ifVip) throws Throwable {
+		CityMap cityMap = new CityMap(readMap().getRoads());
+		Random random = new Random(1);
+		CityCross[] starts = new CityCross[PAIRS], ends = new CityCross[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			starts[i] = randomCross(random, cityMap);
+			ends[i] = randomCross(random, cityMap);
+		}
+		int[] next = {0};
+		return () -> {
+			int i = next[0]++ & (PAIRS - 1);
+			return cityMap.getTheShortestWay(starts[i], ends[i], ifVip).length;
+		};
+	}
+
+	/**
+	 * Requires:传入一个正整数表示抢单出租车数量。<br>
+	 * Modifies:新建一张城市地图，一个请求和相应数量的出租车。<br>
+	 * Effects:返回一个负载，每次调用从所有抢单出租车中选择一辆，返回被选中出租车的id。<br>
+	 *
+	 * @param registered 抢单出租车数量。
+	 *
+	 * @return 选车负载。
+	 *
+	 * @throws Throwable 地图读入异常。
+	 */
+	public static IntSupplier dispatch(int registered) throws Throwable {
+		MapFile city = readMap();
+		CityMap cityMap = new CityMap(city.getRoads());
+		LightsMap lightsMap = new LightsMap(city.getLights());
+		int cx = cityMap.getRows() / 2, cy = cityMap.getCols() / 2;
+		Request request = new Request(cx, cy, 0, 0, cityMap);
+		Random random = new Random(2);
+		for (int i = 0; i < registered; i++)
+			request.register(new Taxi(cityMap.cross(cx - 2 + random.nextInt(5), cy - 2 + random.nextInt(5)), cityMap, lightsMap));
+		return () -> request.chooseTheTaxi().getId();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:新建一幅红绿灯信息图。<br>
+	 * Effects:返回一个负载，每次调用对一个随机路口和随机来去方向检查一次红绿灯，可以通过时返回1，否则返回0。<br>
+	 *
+	 * @return 红绿灯负载。
+	 *
+	 * @throws Throwable 地图读入异常。
+	 */
+	public static IntSupplier lights() throws Throwable {
+		MapFile city = readMap();
+		LightsMap lightsMap = new LightsMap(city.getLights());
+		Random random = new Random(3);
+		CityCross[] crosses = new CityCross[PAIRS];
+		Direction[] from = new Direction[PAIRS], to = new Direction[PAIRS];
+		for (int i = 0; i < PAIRS; i++) {
+			crosses[i] = new CityCross(random.nextInt(city.getRows()), random.nextInt(city.getCols()));
+			from[i] = Direction.values()[random.nextInt(4)];
+			to[i] = Direction.values()[random.nextInt(4)];
+		}
+		int[] next = {0};
+		return () -> {
+			int i = next[0]++ & (PAIRS - 1);
+			return lightsMap.checkLights(crosses[i], from[i], to[i]) ? 1 : 0;
+		};
+	}
+
+	/**
+	 * Requires:传入一个正整数表示出租车数量。<br>
+	 * Modifies:新建完整的调度系统，将计时器设为尽可能快地运行，并丢弃标准输出。<br>
+	 * Effects:返回一个负载，每次调用提交一个随机请求并运行调度系统的一个时间片。<br>
+	 *
+	 * @param taxiCount 出租车数量。
+	 *
+	 * @return 时间片负载。
+	 *
+	 * @throws Throwable 地图读入异常。
+	 */
+	public static Runnable tick(int taxiCount) throws Throwable {
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}));
+		MyTimer.getMyTimer().setSpeedUp(MyTimer.FASTEST);
+		MapFile city = readMap();
+		CityMap cityMap = new CityMap(city.getRoads());
+		LightsMap lightsMap = new LightsMap(city.getLights());
+		Vector<Taxi> taxis = new Vector<>();
+		TaxiGrid taxiGrid = new TaxiGrid(cityMap.getRows(), cityMap.getCols());
+		Random random = new Random(4);
+		for (int i = 0; i < taxiCount; i++) {
+			CityCross cityCross = randomCross(random, cityMap);
+			taxis.add(i < taxiCount * 3 / 10 ? new VipTaxi(cityCross, cityMap, lightsMap) : new Taxi(cityCross, cityMap, lightsMap));
+		}
+		taxiGrid.update(taxis);
+		TaxiSchedulingSystem taxiSchedulingSystem = new TaxiSchedulingSystem(cityMap, lightsMap, taxis, taxiGrid);
+		UserOperator userOperator = new UserOperator(taxis, cityMap, taxiSchedulingSystem);
+		return () -> {
+			userOperator.addRequest(random.nextInt(cityMap.getRows()), random.nextInt(cityMap.getCols()),
+					random.nextInt(cityMap.getRows()), random.nextInt(cityMap.getCols()));
+			taxiSchedulingSystem.tick();
+		};
+	}
+
+	private static MapFile readMap() throws Throwable {
+		String home = System.getProperty("taxi.home", ".");
+		return MapFile.readText(new File(home, "map.txt").getPath(), new File(home, "light.txt").getPath());
+	}
+
+	private static CityCross randomCross(Random random, CityMap cityMap) {
+		return cityMap.cross(random.nextInt(cityMap.getRows()), random.nextInt(cityMap.getCols()));
+	}
+}
@@ -0,0 +1,42 @@
+package benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Overview:
+ * The {@code Fixtures} class implements the bridge from the benchmarks to {@code BenchmarkFixtures}.
+ * <br>
+ * 具名包无法直接引用默认包中的类，因此通过反射调用一次{@code BenchmarkFixtures}中的工厂方法，
+ * 取得以JDK接口表示的负载。反射只发生在{@code @Setup}中，不计入测量。
+ */
+final class Fixtures {
+	private Fixtures() {
+	}
+
+	/**
+	 * Requires:传入{@code BenchmarkFixtures}中工厂方法的名字，参数类型和参数。<br>
+	 * Modifies:无。<br>
+	 * Effects:调用相应的工厂方法并返回其构造的负载。<br>
+	 *
+	 * @param name  工厂方法名。
+	 * @param type  参数类型，无参数时为null。
+	 * @param arg   参数，无参数时为null。
+	 * @param <T>   负载类型。
+	 *
+	 * @return 负载。
+	 *
+	 * @throws Throwable 工厂方法抛出的异常。
+	 */
+	@SuppressWarnings("unchecked")
+	static <T> T load(String name, Class<?> type, Object arg) throws Throwable {
+		Class<?> fixtures = Class.forName("BenchmarkFixtures");
+		try {
+			if (type == null) return (T) fixtures.getMethod(name).invoke(null);
+			Method method = fixtures.getMethod(name, type);
+			return (T) method.invoke(null, arg);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		}
+	}
+}
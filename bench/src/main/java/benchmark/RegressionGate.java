@@ -0,0 +1,89 @@
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Overview:
+ * The {@code RegressionGate} class implements the comparison of two JMH result files.
+ * <br>
+ * 用法：{@code java -cp benchmarks.jar benchmark.RegressionGate baseline.csv current.csv [tolerance%]}，
+ * 两个文件都由{@code -rf csv}生成。吞吐量模式下分数越高越好，其余模式下分数越低越好。
+ * 任何一项比基线差超过容忍比例（默认10%），或者基线中的某项在当前结果中缺失（被改名或删除）时以状态1退出。
+ */
+public final class RegressionGate {
+	private RegressionGate() {
+	}
+
+	/**
+	 * Requires:传入基线结果文件，当前结果文件，以及可选的容忍比例。<br>
+	 * Modifies:无。<br>
+	 * Effects:逐项比较并输出结果，存在退化或缺失的基线项时以状态1退出，参数错误时以状态2退出。<br>
+	 *
+	 * @param args 命令行参数。
+	 *
+	 * @throws IOException 读文件异常。
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err.println("usage: RegressionGate baseline.csv current.csv [tolerance%]");
+			System.exit(2);
+		}
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) / 100 : 0.1;
+		Map<String, String[]> baseline = read(args[0]), current = read(args[1]);
+		int regressions = 0;
+		for (Map.Entry<String, String[]> entry : current.entrySet()) {
+			String[] before = baseline.get(entry.getKey());
+			if (before == null) {
+				System.out.println("NEW  " + entry.getKey());
+				continue;
+			}
+			double old = Double.parseDouble(before[4]), now = Double.parseDouble(entry.getValue()[4]);
+			double change = entry.getValue()[1].equals("thrpt") ? (old - now) / old : (now - old) / old;
+			boolean regressed = change > tolerance;
+			if (regressed) regressions++;
+			System.out.printf("%s %s %.3f -> %.3f %s (%+.1f%%)%n", regressed ? "FAIL" : "OK  ", entry.getKey(), old, now, entry.getValue()[6], change * 100);
+		}
+		for (String key : baseline.keySet()) {
+			if (current.containsKey(key)) continue;
+			System.out.println("MISS " + key);
+			regressions++;
+		}
+		System.exit(regressions > 0 ? 1 : 0);
+	}
+
+	private static Map<String, String[]> read(String fileName) throws IOException {
+		Map<String, String[]> results = new LinkedHashMap<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+			String[] header = split(reader.readLine());
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				String[] row = split(line);
+				StringBuilder key = new StringBuilder(row[0]);
+				for (int i = 7; i < row.length && i < header.length; i++)
+					if (!row[i].isEmpty()) key.append(' ').append(header[i].replace("Param: ", "")).append('=').append(row[i]);
+				results.put(key.toString(), row);
+			}
+		}
+		return results;
+	}
+
+	private static String[] split(String line) {
+		List<String> fields = new ArrayList<>();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for (char c : line.toCharArray()) {
+			if (c == '"') quoted = !quoted;
+			else if (c == ',' && !quoted) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else field.append(c);
+		}
+		fields.add(field.toString());
+		return fields.toArray(new String[0]);
+	}
+}
@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Overview:
+ * The {@code BatchDispatcher} class implements the batch assignment of expired requests to their registered taxis.
+ * <br>
+ * 表现对象：{@code HashMap<Taxi, Integer> taxiIndex, ArrayList<Taxi> taxiList, int[] parent, int[] taxiLocal, int[] taxiGlobal, int[] requestLocal,
+ * long[] heapKeys, int[] heapNodes, int heapSize; }
+ * 分别表示本批候选出租车到编号的映射，按编号排列的候选出租车，合并请求和出租车的并查集，出租车编号在当前连通块中的局部编号（不在时为-1），
+ * 局部编号对应的出租车编号，请求在当前连通块中的局部编号，以及Dijkstra搜索用的二叉堆的键，结点和大小。
+ * <br>
+ * 一辆出租车可以抢多个请求，逐个选车时靠前的请求可能拿走靠后请求唯一的候选车。批量分派把同一时间片到期的请求和它们仍在等待的候选车
+ * 看成二分图，按并查集拆成互不相交的连通块，每块用逐次最短增广路求最小费用最大匹配：先让尽可能多的请求得到出租车，
+ * 再使每个请求失去的信誉度优先级（该请求候选车中最高信誉度减去所选车的信誉度）之和最小，最后使接客距离之和最小。
+ * <br>
+ * 建立一批时把每条边的费用算好，按请求存为压缩的邻接数组，匹配时通过请求所用的边编号O(1)取得反向边的费用。
+ * 所有费用非负，因此初始势能为0，每次用带势能（Johnson约简）的Dijkstra从所有未匹配请求出发找到汇点的最短增广路，
+ * 每次增广的代价为O(E log V)。
+ * <br>
+ * 抽象函数：{@code AF(c) = (requests -> taxis); }
+ * 表示一批请求到出租车的分派。
+ * <br>
+ * 不定式：{@code taxiIndex.size() == taxiList.size() && heapKeys.length == heapNodes.length && heapSize <= heapKeys.length;}
+ */
+public class BatchDispatcher {
+	private static final long INF = Long.MAX_VALUE / 4;
+	private final HashMap<Taxi, Integer> taxiIndex = new HashMap<>();
+	private final ArrayList<Taxi> taxiList = new ArrayList<>();
+	private int[] parent = new int[0];
+	private int[] taxiLocal = new int[0];
+	private int[] taxiGlobal = new int[0];
+	private int[] requestLocal = new int[0];
+	private long[] heapKeys = new long[64];
+	private int[] heapNodes = new int[64];
+	private int heapSize = 0;
+
+	/**
+	 * Requires:传入一批不为空且互不相同的请求，只能在调度线程中调用。<br>
+	 * Modifies:清除各请求候选列表中已不在等待的出租车。<br>
+	 * Effects:返回与请求一一对应的出租车数组，没有分到出租车的请求对应null，同一辆出租车最多分给一个请求。<br>
+	 *
+	 * @param requests 同一时间片到期的请求。
+	 *
+	 * @return 分派结果。
+	 */
+	public Taxi[] assign(List<Request> requests) {
+		int n = requests.size();
+		taxiIndex.clear();
+		taxiList.clear();
+		List<List<Taxi>> candidates = new ArrayList<>(n);
+		int[] edgeStart = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			candidates.add(requests.get(i).getCandidates());
+			edgeStart[i + 1] = edgeStart[i] + candidates.get(i).size();
+		}
+		int[] edgeTaxi = new int[edgeStart[n]];
+		long[] edgeCost = new long[edgeStart[n]];
+		for (int i = 0; i < n; i++) {
+			Request request = requests.get(i);
+			int maxCredit = 0;
+			for (Taxi taxi : candidates.get(i)) maxCredit = Math.max(maxCredit, taxi.getCredit());
+			for (int j = 0, e = edgeStart[i]; e < edgeStart[i + 1]; j++, e++) {
+				Taxi taxi = candidates.get(i).get(j);
+				Integer index = taxiIndex.get(taxi);
+				if (index == null) {
+					taxiIndex.put(taxi, index = taxiList.size());
+					taxiList.add(taxi);
+				}
+				edgeTaxi[e] = index;
+				edgeCost[e] = (long) (maxCredit - taxi.getCredit()) << 32 | taxi.howFar(request.getStart());
+			}
+		}
+		int[] match = solve(n, taxiList.size(), edgeStart, edgeTaxi, edgeCost);
+		Taxi[] result = new Taxi[n];
+		for (int i = 0; i < n; i++) if (match[i] >= 0) result[i] = taxiList.get(match[i]);
+		return result;
+	}
+
+	/**
+	 * Requires:传入请求数，出租车数，以及压缩的邻接数组：请求{@code i}的边为{@code [edgeStart[i], edgeStart[i + 1])}，
+	 * 每条边的出租车编号和非负费用。同一请求不能有两条到同一辆出租车的边。<br>
+	 * Modifies:修改搜索缓冲区。<br>
+	 * Effects:返回最小费用最大匹配中每个请求分到的出租车编号，没有分到的为-1。<br>
+	 *
+	 * @param n         请求数。
+	 * @param m         出租车数。
+	 * @param edgeStart 每个请求的第一条边。
+	 * @param edgeTaxi  每条边的出租车编号。
+	 * @param edgeCost  每条边的费用。
+	 *
+	 * @return 每个请求分到的出租车编号。
+	 */
+	int[] solve(int n, int m, int[] edgeStart, int[] edgeTaxi, long[] edgeCost) {
+		if (parent.length < n + m) parent = new int[n + m];
+		for (int i = 0; i < n + m; i++) parent[i] = i;
+		for (int i = 0; i < n; i++) for (int e = edgeStart[i]; e < edgeStart[i + 1]; e++) union(i, n + edgeTaxi[e]);
+		if (taxiLocal.length < m) {
+			taxiLocal = new int[m];
+			taxiGlobal = new int[m];
+		}
+		Arrays.fill(taxiLocal, 0, m, -1);
+		if (requestLocal.length < n) requestLocal = new int[n];
+		int[] head = new int[n + m], next = new int[n], members = new int[n];
+		Arrays.fill(head, -1);
+		for (int i = n - 1; i >= 0; i--)
+			if (edgeStart[i + 1] > edgeStart[i]) {
+				int root = find(i);
+				next[i] = head[root];
+				head[root] = i;
+			}
+		int[] matchEdge = new int[n], matchTaxi = new int[m];
+		Arrays.fill(matchEdge, -1);
+		Arrays.fill(matchTaxi, -1);
+		for (int root = 0; root < n + m; root++) {
+			int k = 0;
+			for (int i = head[root]; i >= 0; i = next[i]) members[k++] = i;
+			if (k > 0) match(members, k, edgeStart, edgeTaxi, edgeCost, matchEdge, matchTaxi);
+		}
+		for (int i = 0; i < n; i++) matchEdge[i] = matchEdge[i] < 0 ? -1 : edgeTaxi[matchEdge[i]];
+		return matchEdge;
+	}
+
+	private void match(int[] members, int k, int[] edgeStart, int[] edgeTaxi, long[] edgeCost, int[] matchEdge, int[] matchTaxi) {
+		int t = 0;
+		for (int i = 0; i < k; i++) {
+			requestLocal[members[i]] = i;
+			for (int e = edgeStart[members[i]]; e < edgeStart[members[i] + 1]; e++)
+				if (taxiLocal[edgeTaxi[e]] < 0) {
+					taxiLocal[edgeTaxi[e]] = t;
+					taxiGlobal[t++] = edgeTaxi[e];
+				}
+		}
+		int sink = k + t;
+		long[] potential = new long[sink + 1], dist = new long[sink + 1];
+		int[] via = new int[sink + 1], from = new int[sink + 1];
+		boolean[] done = new boolean[sink + 1];
+		for (int round = 0; round < k; round++) {
+			Arrays.fill(dist, INF);
+			Arrays.fill(done, false);
+			heapSize = 0;
+			for (int i = 0; i < k; i++)
+				if (matchEdge[members[i]] < 0) {
+					dist[i] = 0;
+					push(0, i);
+				}
+			while (heapSize > 0) {
+				long d = heapKeys[0];
+				int node = pop();
+				if (done[node] || d > dist[node]) continue;
+				done[node] = true;
+				if (node == sink) break;
+				if (node < k) {
+					int request = members[node];
+					for (int e = edgeStart[request]; e < edgeStart[request + 1]; e++) {
+						if (e == matchEdge[request]) continue;
+						int taxi = k + taxiLocal[edgeTaxi[e]];
+						relax(dist, via, from, taxi, d + edgeCost[e] + potential[node] - potential[taxi], e, node);
+					}
+				} else {
+					int owner = matchTaxi[taxiGlobal[node - k]];
+					if (owner < 0) relax(dist, via, from, sink, d + potential[node] - potential[sink], -1, node);
+					else {
+						int request = requestLocal[owner];
+						relax(dist, via, from, request, d - edgeCost[matchEdge[owner]] + potential[node] - potential[request], -1, node);
+					}
+				}
+			}
+			if (dist[sink] >= INF) break;
+			for (int v = 0; v <= sink; v++) potential[v] += Math.min(dist[v], dist[sink]);
+			for (int taxi = from[sink]; ; ) {
+				int request = members[from[taxi]], previous = matchEdge[request];
+				matchEdge[request] = via[taxi];
+				matchTaxi[edgeTaxi[via[taxi]]] = request;
+				if (previous < 0) break;
+				taxi = k + taxiLocal[edgeTaxi[previous]];
+			}
+		}
+		for (int i = 0; i < t; i++) taxiLocal[taxiGlobal[i]] = -1;
+	}
+
+	private void relax(long[] dist, int[] via, int[] from, int node, long value, int edge, int previous) {
+		if (value >= dist[node]) return;
+		dist[node] = value;
+		via[node] = edge;
+		from[node] = previous;
+		push(value, node);
+	}
+
+	private void push(long key, int node) {
+		if (heapSize == heapKeys.length) {
+			heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+			heapNodes = Arrays.copyOf(heapNodes, heapSize * 2);
+		}
+		int i = heapSize++;
+		while (i > 0 && heapKeys[(i - 1) >> 1] > key) {
+			heapKeys[i] = heapKeys[(i - 1) >> 1];
+			heapNodes[i] = heapNodes[(i - 1) >> 1];
+			i = (i - 1) >> 1;
+		}
+		heapKeys[i] = key;
+		heapNodes[i] = node;
+	}
+
+	private int pop() {
+		int top = heapNodes[0];
+		long lastKey = heapKeys[--heapSize];
+		int lastNode = heapNodes[heapSize], i = 0;
+		for (int child = 1; child < heapSize; child = 2 * i + 1) {
+			if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) child++;
+			if (heapKeys[child] >= lastKey) break;
+			heapKeys[i] = heapKeys[child];
+			heapNodes[i] = heapNodes[child];
+			i = child;
+		}
+		heapKeys[i] = lastKey;
+		heapNodes[i] = lastNode;
+		return top;
+	}
+
+	private int find(int node) {
+		while (parent[node] != node) node = parent[node] = parent[parent[node]];
+		return node;
+	}
+
+	private void union(int a, int b) {
+		parent[find(a)] = find(b);
+	}
+
+	public boolean repOk() {
+		return taxiIndex.size() == taxiList.size() && heapKeys.length == heapNodes.length && heapSize <= heapKeys.length;
+	}
+}
@@ -6,11 +6,15 @@
  * <br>
  * 抽象函数：{@code AF(c) = (x,y); }表示路口坐标。
  * <br>
- * 不定式：{@code !(x < 0 || x >= 80 || y < 0 || y >= 80);}
+ * 不定式：{@code !(x < 0 || y < 0);}
+ * 路口是否在地图范围内由{@link CityMap#contains(CityCross)}判断。
+ * <br>
+ * 路口是不可变对象。地图内的路口应通过{@link CityMap#cross(int, int)}取得共享的实例，移动时使用{@link CityMap#moveOn(CityCross, Direction)}，
+ * 这样运行过程中不再新建路口对象。
  */
 public class CityCross {
-	private int x;
-	private int y;
+	private final int x;
+	private final int y;
 
 	/**
 	 * Requires:x，y大于等于0。<br>
@@ -50,18 +54,18 @@ public class CityCross {
 	/**
 	 * Requires:无。<br>
 	 * Modifies:无。<br>
-	 * Effects:如果x和y都在[0,79]中的时候返回true，否则返回false。<br>
+	 * Effects:如果x和y都非负的时候返回true，否则返回false。<br>
 	 *
 	 * @return 路口是否合法。
 	 */
 	public boolean repOk() {
-		return !(x < 0 || x >= 80 || y < 0 || y >= 80);
+		return !(x < 0 || y < 0);
 	}
 
 	/**
 	 * Requires:一个Direction值。<br>
 	 * Modifies:无。<br>
-	 * Effects:返回当前路口向传入方向移动之后的到达的路口。<br>
+	 * Effects:返回当前路口向传入方向移动之后的到达的路口，每次调用新建一个路口对象。<br>
 	 *
 	 * @param direction 移动方向。
 	 *
@@ -88,6 +92,18 @@ public class CityCross {
 		return x == cityCross.x && y == cityCross.y;
 	}
 
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回与{@link #equals(Object)}一致的哈希值。<br>
+	 *
+	 * @return 哈希值。
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * x + y;
+	}
+
 	/**
 	 * Requires:无。<br>
 	 * Modifies:无。<br>
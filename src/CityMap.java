@@ -1,23 +1,43 @@
-import java.util.Vector;
+import java.util.Arrays;
+import java.util.function.Supplier;
 
 /**
  * Overview:
  * The {@code CityMap} class implements the encapsulation of the entire city map.
  * <br>
- * 表现对象：{@code int[][] crosses, int[][] flags, int[][] rightFlow, int[][] downFlow; }
- * 分别表示路口信息，路口备份信息，东西向道路流量信息，南北向道路流量信息。
+ * 表现对象：{@code int[][] crosses, int[][] flags, CityCross[] table, byte[] adjacency, int[] offsets, int[] frontFlow, int[] backFlow, int[] flowDeltas, int deltaCount,
+ * RouteIndex routeIndex, RouteIndex vipRouteIndex, ComponentIndex componentIndex, ComponentIndex vipComponentIndex, int invalidatedPairs, long version, Fleet fleet; }
+ * 分别表示路口信息，路口备份信息，以路口编号索引的共享路口对象，每个路口的相邻道路掩码，沿各方向编码移动时路口编号的增量，上一时间片发布的只读车流信息，正在构建的车流信息，本时间片的车流增量记录，增量记录条数，普通出租车距离索引，VipTaxi距离索引（用于选车时的距离查询和{@link FlowRouteSearch}的启发函数，最短路径规划使用{@link RouteSearch}），普通出租车和VipTaxi的连通块索引，最近一次修改道路影响的(起点,终点)对数，地图版本号，该地图上的共享车队（见{@link Fleet#shared(CityMap, LightsMap)}）。
  * <br>
  * 抽象对象：{@code AF(c) = (crosses,flow); }
  * 表示路口路况和车流信息。
  * <br>
- * 不定式：{@code crosses != null && flags != null && rightFlow != null && downFlow != null;}
+ * 路口{@code (x,y)}的编号为{@code x * cols + y}。相邻道路掩码的低4位是当前道路，高4位是VipTaxi使用的原始道路，
+ * 第{@link Direction#ordinal()}位表示沿该方向有路可走。原始道路与当前道路共用同一份路口信息，因此两组掩码总是同时修改。
+ * <br>
+ * 车流信息以道路编号索引，路口{@code (x,y)}的东西向道路编号为{@code 2 * (x * cols + y)}，南北向道路编号为{@code 2 * (x * cols + y) + 1}。
+ * <br>
+ * 不定式：{@code crosses != null && flags != null && table.length == rows * cols && adjacency.length == rows * cols && offsets.length == 4 && frontFlow != null && backFlow != null && routeIndex != null && vipRouteIndex != null && componentIndex != null && vipComponentIndex != null;}
  */
 public class CityMap {
+	public static final byte[] NOWAY = new byte[0];
 	private final int[][] crosses;
 	private final int[][] originalCrosses;
 	private int[][] flags;
-	private int[][] rightFlow;
-	private int[][] downFlow;
+	private final CityCross[] table;
+	private final byte[] adjacency;
+	private final int[] offsets;
+	private volatile int[] frontFlow;
+	private int[] backFlow;
+	private int[] flowDeltas = new int[64];
+	private int deltaCount = 0;
+	private final RouteIndex routeIndex;
+	private final RouteIndex vipRouteIndex;
+	private final ComponentIndex componentIndex;
+	private final ComponentIndex vipComponentIndex;
+	private int invalidatedPairs;
+	private volatile long version;
+	private Fleet fleet;
 
 	/**
 	 * Requires:一个表示城市路口状态的int数组。<br>
@@ -30,15 +50,51 @@ public class CityMap {
 		this.crosses = crosses;
 		this.originalCrosses = crosses;
 		this.flags = new int[crosses.length][crosses[0].length];
-		this.rightFlow = new int[crosses.length][crosses[0].length];
-		this.downFlow = new int[crosses.length][crosses[0].length];
+		this.table = new CityCross[crosses.length * crosses[0].length];
+		this.adjacency = new byte[crosses.length * crosses[0].length];
+		this.offsets = new int[]{-crosses[0].length, crosses[0].length, -1, 1};
+		for (int i = 0; i < crosses.length; i++)
+			for (int j = 0; j < crosses[0].length; j++) refreshAdjacency(i, j);
+		this.frontFlow = new int[2 * crosses.length * crosses[0].length];
+		this.backFlow = new int[2 * crosses.length * crosses[0].length];
+		this.routeIndex = new RouteIndex(this, crosses.length, crosses[0].length, false);
+		this.vipRouteIndex = new RouteIndex(this, crosses.length, crosses[0].length, true);
+		this.componentIndex = new ComponentIndex(this, crosses.length, crosses[0].length, false);
+		this.vipComponentIndex = new ComponentIndex(this, crosses.length, crosses[0].length, true);
 		clearFlow();
 	}
 
 	/**
-	 * Requires:传入3个参数，前两个为不为空的路口，一个起始地，一个目的地。后一个为出租车是否为VipTaxi。<br>
-	 * Modifies:无。<br>
-	 * Effects:返回起始地到目的地的当前最短距离且第一个方向流量最小的路径。<br>
+	 * Requires:传入地图行数，列数和{@link MapFile}格式压缩的路口道路信息。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:直接从压缩的道路信息初始化城市地图，不需要调用者先展开成int数组。<br>
+	 *
+	 * @param rows     地图行数。
+	 * @param cols     地图列数。
+	 * @param roadBits 压缩的路口道路信息。
+	 */
+	public CityMap(int rows, int cols, byte[] roadBits) {
+		this(MapFile.unpackRoads(rows, cols, roadBits));
+	}
+
+	/**
+	 * Requires:一个表示城市路口当前状态的int数组，和一个同样大小的数组表示每个路口被{@link #markRoad}关闭的道路。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:按快照中的道路信息初始化城市地图，之后的{@link #markRoad}可以恢复被关闭的道路。<br>
+	 *
+	 * @param crosses 城市路口路况信息数组。
+	 * @param flags   路口备份信息数组。
+	 */
+	public CityMap(int[][] crosses, int[][] flags) {
+		this(crosses);
+		for (int i = 0; i < crosses.length; i++) System.arraycopy(flags[i], 0, this.flags[i], 0, crosses[0].length);
+	}
+
+	/**
+	 * Requires:传入3个参数，前两个为不为空的路口，一个起始地，一个目的地。后一个为出租车是否为VipTaxi。可在多个线程中并发调用，但不能与{@link #markRoad}并发。<br>
+	 * Modifies:修改当前线程的搜索缓冲区。<br>
+	 * Effects:用A*搜索返回起始地到目的地的当前最短距离且第一个方向流量最小的路径，之后各步在最短路之间按方向顺序选择第一个，
+	 * 每个元素是方向编码{@link Direction#ordinal()}，若无法到达则返回空路径。<br>
 	 *
 	 * @param start    起始地口
 	 * @param end      终点路口
@@ -46,95 +102,291 @@ public class CityMap {
 	 *
 	 * @return 起始路口到终点路口的最短路。
 	 */
-	public synchronized Vector<Direction> getTheShortestWay(CityCross start, CityCross end, boolean ifVip) {
-		Vector<Direction> ways = new Vector<>();
-		Vector<Direction> ans = new Vector<>();
-		if (start.equals(end)) return ways;
-		CityCross[] queue = new CityCross[6500];
-		int[] from = new int[6500];
-		int[] step = new int[6500];
-		boolean[][] visited = new boolean[85][85];
-		Direction[] directions = new Direction[6500];
-		int head = 0, tail = 1;
-		queue[head] = start;
-		visited[start.getX()][start.getY()] = true;
-		while (head < tail) {
-			if (ans.size() > 0 && step[head] > ans.size()) return ans;
-			CityCross now = queue[head];
+	public byte[] getTheShortestWay(CityCross start, CityCross end, boolean ifVip) {
+		int cols = crosses[0].length, from = start.getX() * cols + start.getY();
+		RouteSearch search = RouteSearch.forThread(crosses.length * cols);
+		if (start.equals(end) || !reachable(start, end, ifVip)) return NOWAY;
+		int left = search.search(this, cols, from, end.getX() * cols + end.getY(), ifVip);
+		Metrics.getMetrics().route(search.getExpanded());
+		if (left <= 0) return NOWAY;
+		byte[] ways = new byte[left];
+		int x = start.getX(), y = start.getY();
+		for (int step = 0; step < ways.length; step++, left--) {
+			Direction next = null;
 			for (Direction direction : Direction.values()) {
-				CityCross nextCityCross = now.moveOn(direction);
-				if (!nextCityCross.repOk()) continue;
-				if (visited[nextCityCross.getX()][nextCityCross.getY()]) continue;
-				if ((!ifVip && !canMove(now, nextCityCross)) || (ifVip && !canVipMove(now, nextCityCross))) continue;
-				if (nextCityCross.equals(end)) {
-					ways.clear();
-					ways.add(direction);
-					for (int i = head; i > 0; i = from[i]) ways.add(0, directions[i]);
-					if (ans.size() == 0) ans = ways;
-					else if (getFlow(start, ans.get(0)) > getFlow(start, ways.get(0)))
-						ans = ways;
-				} else {
-					visited[nextCityCross.getX()][nextCityCross.getY()] = true;
-					queue[tail] = nextCityCross;
-					from[tail] = head;
-					step[tail] = step[head] + 1;
-					directions[tail] = direction;
-					tail++;
-				}
+				if (!connected(x, y, direction, ifVip)) continue;
+				if (search.distanceTo((x + direction.getX()) * cols + y + direction.getY()) != left - 1) continue;
+				if (next == null || step == 0 && getFlow(start, next) > getFlow(start, direction)) next = direction;
+				if (step > 0) break;
 			}
-			head++;
+			ways[step] = (byte) next.ordinal();
+			x += next.getX();
+			y += next.getY();
 		}
-		return ans;
+		return ways;
 	}
 
+	/**
+	 * Requires:传入起始地，目的地，出租车在起始地的来向，是否为VipTaxi，红绿灯信息图，以及出租车走第一步的模拟时间。
+	 * 可在多个线程中并发调用，但不能与{@link #markRoad}并发。<br>
+	 * Modifies:修改当前线程的搜索缓冲区。<br>
+	 * Effects:按红绿灯的反转周期用{@link TimedRouteSearch}返回最早到达目的地的路径，每个元素是一个时间片的动作，
+	 * 方向编码表示走一步，{@link TimedRouteSearch#WAIT}表示在路口等红灯，若无法到达则返回空路径。<br>
+	 *
+	 * @param start     起始路口
+	 * @param end       终点路口
+	 * @param heading   起始路口的来向
+	 * @param ifVip     是否为VipTaxi
+	 * @param lightsMap 红绿灯信息图
+	 * @param now       走第一步的模拟时间
+	 *
+	 * @return 起始路口到终点路口最早到达的路径。
+	 */
+	public byte[] getTheFastestWay(CityCross start, CityCross end, Direction heading, boolean ifVip, LightsMap lightsMap, long now) {
+		int cols = crosses[0].length;
+		if (start.equals(end) || !reachable(start, end, ifVip)) return NOWAY;
+		TimedRouteSearch search = TimedRouteSearch.forThread(crosses.length * cols);
+		byte[] ways = search.search(this, lightsMap, cols, start.getX() * cols + start.getY(), heading.ordinal(), end.getX() * cols + end.getY(), ifVip, now);
+		Metrics.getMetrics().route(search.getExpanded());
+		return ways;
+	}
 
+	/**
+	 * Requires:传入两个不为空的路口，一个起始地，一个目的地，是否为VipTaxi，以及非负的最大绕行步数。可在多个线程中并发调用，但不能与{@link #markRoad}并发。<br>
+	 * Modifies:若目的地的距离表不存在则建立之，修改当前线程的搜索缓冲区。<br>
+	 * Effects:用{@link FlowRouteSearch}返回按上一时间片发布的车流加权后代价最小的路径，步数不超过最短步数加最大绕行步数，
+	 * 每个元素是方向编码{@link Direction#ordinal()}，若无法到达则返回空路径。<br>
+	 *
+	 * @param start     起始路口
+	 * @param end       终点路口
+	 * @param ifVip     是否为VipTaxi
+	 * @param maxDetour 最大绕行步数
+	 *
+	 * @return 起始路口到终点路口避开拥堵的路径。
+	 */
+	public byte[] getTheLeastCongestedWay(CityCross start, CityCross end, boolean ifVip, int maxDetour) {
+		int cols = crosses[0].length;
+		if (start.equals(end) || !reachable(start, end, ifVip)) return NOWAY;
+		int[] distance = (ifVip ? vipRouteIndex : routeIndex).row(end.getX() * cols + end.getY());
+		FlowRouteSearch search = FlowRouteSearch.forThread(crosses.length * cols);
+		byte[] ways = search.search(this, cols, start.getX() * cols + start.getY(), end.getX() * cols + end.getY(), ifVip, distance, maxDetour);
+		Metrics.getMetrics().route(search.getExpanded());
+		return ways;
+	}
+
+	/**
+	 * Requires:传入两个地图内的路口，以及出租车是否为VipTaxi。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果两个路口之间有路可达返回true，否则返回false，时间复杂度为O(1)。<br>
+	 *
+	 * @param start 起始路口。
+	 * @param end   终点路口。
+	 * @param ifVip 是否为VipTaxi。
+	 *
+	 * @return 两个路口是否可达。
+	 */
+	public boolean reachable(CityCross start, CityCross end, boolean ifVip) {
+		int cols = crosses[0].length;
+		return (ifVip ? vipComponentIndex : componentIndex).reachable(start.getX() * cols + start.getY(), end.getX() * cols + end.getY());
+	}
+
+	/**
+	 * Requires:传入两个不为空的路口，一个起始地，一个目的地，以及出租车是否为VipTaxi。可在多个线程中并发调用，但不能与{@link #markRoad}并发。<br>
+	 * Modifies:若目的地的距离表不存在则建立之。<br>
+	 * Effects:返回起始地到目的地的最短距离，若无法到达则返回0。已建立的距离表不加锁读取，因此各分片并行选车时不会互相等待。<br>
+	 *
+	 * @param start 起始路口。
+	 * @param end   终点路口。
+	 * @param ifVip 是否为VipTaxi。
+	 *
+	 * @return 起始路口到终点路口的最短距离。
+	 */
+	public int getDistance(CityCross start, CityCross end, boolean ifVip) {
+		int distance = (ifVip ? vipRouteIndex : routeIndex).distance(start.getX(), start.getY(), end.getX(), end.getY());
+		return distance < 0 ? 0 : distance;
+	}
+
+	/**
+	 * Requires:传入一个地图内的路口坐标和一个方向，以及是否使用VipTaxi的道路信息。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果该路口沿该方向的相邻路口在地图内且两者之间有道路，返回true，否则返回false。<br>
+	 *
+	 * @param x         路口x坐标。
+	 * @param y         路口y坐标。
+	 * @param direction 移动方向。
+	 * @param ifVip     是否为VipTaxi。
+	 *
+	 * @return 两个路口是否相通。
+	 */
+	public boolean connected(int x, int y, Direction direction, boolean ifVip) {
+		return (neighbours(x * crosses[0].length + y, ifVip) >> direction.ordinal() & 1) != 0;
+	}
+
+	/**
+	 * Requires:传入一个合法的路口编号，以及是否使用VipTaxi的道路信息。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该路口的相邻道路掩码，第{@link Direction#ordinal()}位为1表示沿该方向有路可走。<br>
+	 *
+	 * @param node  路口编号，即{@code x * cols + y}。
+	 * @param ifVip 是否为VipTaxi。
+	 *
+	 * @return 相邻道路掩码。
+	 */
+	public int neighbours(int node, boolean ifVip) {
+		return ifVip ? (adjacency[node] & 0xF0) >> 4 : adjacency[node] & 0x0F;
+	}
+
+	/**
+	 * Requires:传入一个合法的路口编号和一个该路口有路可走的方向编码。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回沿该方向相邻的路口编号。<br>
+	 *
+	 * @param node 路口编号。
+	 * @param code 方向编码，即{@link Direction#ordinal()}的值。
+	 *
+	 * @return 相邻的路口编号。
+	 */
+	public int neighbour(int node, int code) {
+		return node + offsets[code];
+	}
 
 	/**
 	 * Requires:无。<br>
-	 * Modifies:初始化两个Flow数组。<br>
+	 * Modifies:清空两个车流缓冲区和增量记录。<br>
 	 * Effects:清除车流信息。<br>
 	 */
-	public void clearFlow() {
-		for (int i = 0; i < crosses.length; i++)
-			for (int j = 0; j < crosses[0].length; j++) {
-				downFlow[i][j] = rightFlow[i][j] = Integer.MAX_VALUE;
-				if (crosses[i][j] == 1) rightFlow[i][j] = 0;
-				else if (crosses[i][j] == 2) downFlow[i][j] = 0;
-				else if (crosses[i][j] == 3) rightFlow[i][j] = downFlow[i][j] = 0;
-			}
+	public synchronized void clearFlow() {
+		Arrays.fill(frontFlow, 0);
+		Arrays.fill(backFlow, 0);
+		deltaCount = 0;
 	}
 
 	/**
 	 * Requires:传入一个经过方向移动后的不为空的路口和一个方向。<br>
-	 * Modifies:添加Flow数组的相应值。<br>
-	 * Effects:增加车流信息。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回出租车沿该方向走到该路口所经过的道路编号，若没有经过道路则返回-1。<br>
 	 *
 	 * @param nowCityCross 当前所在的路口。
 	 * @param direction    走到路口所走的方向。
+	 *
+	 * @return 经过的道路编号，或者-1。
 	 */
-	public void addFlow(CityCross nowCityCross, Direction direction) {
-		if (direction == null) return;
+	public int flowEdge(CityCross nowCityCross, Direction direction) {
+		if (direction == null) return -1;
+		int node = nowCityCross.getX() * crosses[0].length + nowCityCross.getY();
 		switch (direction) {
 			case UP:
-				downFlow[nowCityCross.getX()][nowCityCross.getY()]++;
-				break;
+				return 2 * node + 1;
 			case DOWN:
-				if (nowCityCross.getX() > 0)
-					downFlow[nowCityCross.getX() - 1][nowCityCross.getY()]++;
-				break;
+				return nowCityCross.getX() > 0 ? 2 * (node - crosses[0].length) + 1 : -1;
 			case LEFT:
-				rightFlow[nowCityCross.getX()][nowCityCross.getY()]++;
-				break;
+				return 2 * node;
 			case RIGHT:
-				if (nowCityCross.getY() > 0)
-					rightFlow[nowCityCross.getX()][nowCityCross.getY() - 1]++;
+				return nowCityCross.getY() > 0 ? 2 * (node - 1) : -1;
 		}
+		return -1;
+	}
+
+	/**
+	 * Requires:传入两个道路编号，-1表示没有道路。只能在调度线程中调用。<br>
+	 * Modifies:修改正在构建的车流信息，并记录增量。<br>
+	 * Effects:将一辆车的车流从原来的道路移到新的道路上，该修改在下一次发布后可见。<br>
+	 *
+	 * @param from 原来经过的道路编号。
+	 * @param to   现在经过的道路编号。
+	 */
+	public synchronized void moveFlow(int from, int to) {
+		if (from == to) return;
+		if (from >= 0) recordFlow(from, -1);
+		if (to >= 0) recordFlow(to, 1);
+	}
+
+	/**
+	 * Requires:传入一个经过方向移动后的不为空的路口和一个方向。只能在调度线程中调用。<br>
+	 * Modifies:修改正在构建的车流信息，并记录增量。<br>
+	 * Effects:增加车流信息，该修改在下一次发布后可见。<br>
+	 *
+	 * @param nowCityCross 当前所在的路口。
+	 * @param direction    走到路口所走的方向。
+	 */
+	public void addFlow(CityCross nowCityCross, Direction direction) {
+		moveFlow(-1, flowEdge(nowCityCross, direction));
+	}
+
+	/**
+	 * Requires:只能在调度线程中调用，且此时没有出租车在运行。<br>
+	 * Modifies:交换两个车流缓冲区，清空增量记录。<br>
+	 * Effects:发布本时间片构建的车流信息，并将本时间片的增量补到新的构建缓冲区上，使两个缓冲区再次一致。<br>
+	 */
+	public synchronized void publishFlow() {
+		int[] built = backFlow;
+		backFlow = frontFlow;
+		frontFlow = built;
+		for (int i = 0; i < deltaCount; i += 2) backFlow[flowDeltas[i]] += flowDeltas[i + 1];
+		deltaCount = 0;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回路口当前道路信息的副本。<br>
+	 *
+	 * @return 路口道路信息。
+	 */
+	public synchronized int[][] copyRoads() {
+		int[][] roads = new int[crosses.length][];
+		for (int i = 0; i < crosses.length; i++) roads[i] = crosses[i].clone();
+		return roads;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回路口备份信息的副本，非0的位表示被{@link #markRoad}关闭的道路。<br>
+	 *
+	 * @return 路口备份信息。
+	 */
+	public synchronized int[][] copyFlags() {
+		int[][] copy = new int[flags.length][];
+		for (int i = 0; i < flags.length; i++) copy[i] = flags[i].clone();
+		return copy;
+	}
+
+	/**
+	 * Requires:只能在调度线程中发布车流之后调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一时间片发布的车流信息的副本，以道路编号索引。<br>
+	 *
+	 * @return 车流信息。
+	 */
+	public int[] copyFlow() {
+		return frontFlow.clone();
+	}
+
+	/**
+	 * Requires:传入以道路编号索引的车流信息，只能在调度线程启动前调用。<br>
+	 * Modifies:修改两个车流缓冲区，清空增量记录。<br>
+	 * Effects:把车流信息设为已发布的状态，用于从快照恢复。<br>
+	 *
+	 * @param flow 车流信息。
+	 */
+	public synchronized void restoreFlow(int[] flow) {
+		System.arraycopy(flow, 0, frontFlow, 0, frontFlow.length);
+		System.arraycopy(flow, 0, backFlow, 0, backFlow.length);
+		deltaCount = 0;
+	}
+
+	private void recordFlow(int edge, int delta) {
+		backFlow[edge] += delta;
+		if (deltaCount == flowDeltas.length) flowDeltas = Arrays.copyOf(flowDeltas, deltaCount * 2);
+		flowDeltas[deltaCount++] = edge;
+		flowDeltas[deltaCount++] = delta;
 	}
 
 	/**
 	 * Requires:传入一个不为空的路口和一个方向。<br>
 	 * Modifies:无。<br>
-	 * Effects:返回这个路口在这个方向上的车流信息。<br>
+	 * Effects:返回这个路口在这个方向上的道路在上一时间片发布的车流信息，若该方向没有道路则返回{@code Integer.MAX_VALUE}。<br>
 	 *
 	 * @param cityCross 待查的路口。
 	 * @param direction 待查道路在待查路口的方向。
@@ -142,19 +394,31 @@ public class CityMap {
 	 * @return 待查道路的车流大小。
 	 */
 	public int getFlow(CityCross cityCross, Direction direction) {
-		switch (direction) {
+		if (!connected(cityCross.getX(), cityCross.getY(), direction, false)) return Integer.MAX_VALUE;
+		return getFlow(cityCross.getX() * crosses[0].length + cityCross.getY(), direction.ordinal());
+	}
+
+	/**
+	 * Requires:传入一个合法的路口编号和一个该路口有路可走的方向编码。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回这个路口在这个方向上的道路在上一时间片发布的车流信息，不检查道路是否存在。<br>
+	 *
+	 * @param node 路口编号，即{@code x * cols + y}。
+	 * @param code 方向编码，即{@link Direction#ordinal()}的值。
+	 *
+	 * @return 该道路的车流大小。
+	 */
+	public int getFlow(int node, int code) {
+		int[] flow = frontFlow;
+		switch (Direction.of(code)) {
 			case UP:
-				if (cityCross.getX() > 0)
-					return downFlow[cityCross.getX() - 1][cityCross.getY()];
-				return Integer.MAX_VALUE;
+				return flow[2 * (node - crosses[0].length) + 1];
 			case DOWN:
-				return downFlow[cityCross.getX()][cityCross.getY()];
+				return flow[2 * node + 1];
 			case LEFT:
-				if (cityCross.getY() > 0)
-					return rightFlow[cityCross.getX()][cityCross.getY() - 1];
-				return Integer.MAX_VALUE;
+				return flow[2 * (node - 1)];
 			case RIGHT:
-				return rightFlow[cityCross.getX()][cityCross.getY()];
+				return flow[2 * node];
 		}
 		return 0;
 	}
@@ -170,27 +434,40 @@ public class CityMap {
 	 * @return 两个路口是否想通。
 	 */
 	public boolean canMove(CityCross now, CityCross nextCityCross) {
-		if (nextCityCross.getY() > now.getY())
-			return crosses[now.getX()][now.getY()] == 3 || crosses[now.getX()][now.getY()] == 1;
-		if (nextCityCross.getX() > now.getX())
-			return crosses[now.getX()][now.getY()] == 3 || crosses[now.getX()][now.getY()] == 2;
-		if (nextCityCross.getY() < now.getY())
-			return crosses[nextCityCross.getX()][nextCityCross.getY()] == 3 || crosses[nextCityCross.getX()][nextCityCross.getY()] == 1;
-		return crosses[nextCityCross.getX()][nextCityCross.getY()] == 3 || crosses[nextCityCross.getX()][nextCityCross.getY()] == 2;
+		return (neighbours(now.getX() * crosses[0].length + now.getY(), false) >> code(now, nextCityCross) & 1) != 0;
 	}
 
 	private boolean canVipMove(CityCross now, CityCross nextCityCross) {
-		if (nextCityCross.getY() > now.getY())
-			return originalCrosses[now.getX()][now.getY()] == 3 || originalCrosses[now.getX()][now.getY()] == 1;
-		if (nextCityCross.getX() > now.getX())
-			return originalCrosses[now.getX()][now.getY()] == 3 || originalCrosses[now.getX()][now.getY()] == 2;
-		if (nextCityCross.getY() < now.getY())
-			return originalCrosses[nextCityCross.getX()][nextCityCross.getY()] == 3 || originalCrosses[nextCityCross.getX()][nextCityCross.getY()] == 1;
-		return originalCrosses[nextCityCross.getX()][nextCityCross.getY()] == 3 || originalCrosses[nextCityCross.getX()][nextCityCross.getY()] == 2;
+		return (neighbours(now.getX() * crosses[0].length + now.getY(), true) >> code(now, nextCityCross) & 1) != 0;
 	}
+
+	private static int code(CityCross now, CityCross nextCityCross) {
+		if (nextCityCross.getY() > now.getY()) return Direction.RIGHT.ordinal();
+		if (nextCityCross.getX() > now.getX()) return Direction.DOWN.ordinal();
+		if (nextCityCross.getY() < now.getY()) return Direction.LEFT.ordinal();
+		return Direction.UP.ordinal();
+	}
+
+	private void refreshAdjacency(int x, int y) {
+		for (int i = x; i <= x + 1 && i < crosses.length; i++)
+			for (int j = y; j <= y + 1 && j < crosses[0].length; j++) {
+				if (i != x && j != y) continue;
+				adjacency[i * crosses[0].length + j] = (byte) (mask(crosses, i, j) | mask(originalCrosses, i, j) << 4);
+			}
+	}
+
+	private static int mask(int[][] roads, int x, int y) {
+		int mask = 0;
+		if (x > 0 && (roads[x - 1][y] & 2) != 0) mask |= 1 << Direction.UP.ordinal();
+		if (x + 1 < roads.length && (roads[x][y] & 2) != 0) mask |= 1 << Direction.DOWN.ordinal();
+		if (y > 0 && (roads[x][y - 1] & 1) != 0) mask |= 1 << Direction.LEFT.ordinal();
+		if (y + 1 < roads[0].length && (roads[x][y] & 1) != 0) mask |= 1 << Direction.RIGHT.ordinal();
+		return mask;
+	}
+
 	/**
 	 * Requires:传入一个路口和希望变成的道路信息。<br>
-	 * Modifies:修改了路口当前道路信息和城市备份道路信息。<br>
+	 * Modifies:修改了路口当前道路信息，城市备份道路信息和相邻道路掩码，增量修复距离索引和连通块索引，增加地图版本号。<br>
 	 * Effects:如果修改成功返回true，失败则返回false。<br>
 	 *
 	 * @param cityCross 待修改路口。
@@ -200,7 +477,9 @@ public class CityMap {
 	 */
 	public synchronized boolean markRoad(CityCross cityCross, int road) {
 		if (road < 0 || road > 3) return false;
-		if (!cityCross.repOk()) return false;
+		if (!contains(cityCross)) return false;
+		int before = crosses[cityCross.getX()][cityCross.getY()];
+		int vipBefore = originalCrosses[cityCross.getX()][cityCross.getY()];
 		int origin = flags[cityCross.getX()][cityCross.getY()] != 0 ? flags[cityCross.getX()][cityCross.getY()] : crosses[cityCross.getX()][cityCross.getY()];
 		switch (origin) {
 			case 0:
@@ -209,21 +488,146 @@ public class CityMap {
 				if (road > 1) return false;
 				crosses[cityCross.getX()][cityCross.getY()] = road;
 				flags[cityCross.getX()][cityCross.getY()] = road ^ 1;
-				return true;
+				break;
 			case 2:
 				if (road != 0 && road != 2) return false;
 				crosses[cityCross.getX()][cityCross.getY()] = road;
 				flags[cityCross.getX()][cityCross.getY()] = road ^ 2;
-				return true;
+				break;
 			case 3:
 				crosses[cityCross.getX()][cityCross.getY()] = road;
 				flags[cityCross.getX()][cityCross.getY()] = road == 3 ? 0 : 3;
-				return true;
+				break;
+			default:
+				return false;
 		}
-		return false;
+		refreshAdjacency(cityCross.getX(), cityCross.getY());
+		componentIndex.roadChanged(cityCross.getX(), cityCross.getY(), before, crosses[cityCross.getX()][cityCross.getY()]);
+		vipComponentIndex.roadChanged(cityCross.getX(), cityCross.getY(), vipBefore, originalCrosses[cityCross.getX()][cityCross.getY()]);
+		invalidatedPairs = routeIndex.roadChanged(cityCross.getX(), cityCross.getY(), before, crosses[cityCross.getX()][cityCross.getY()])
+				           + vipRouteIndex.roadChanged(cityCross.getX(), cityCross.getY(), vipBefore, originalCrosses[cityCross.getX()][cityCross.getY()]);
+		version++;
+		return true;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回最近一次成功修改道路时距离发生变化的(起点,终点)对数，普通视图和Vip视图分别计数。<br>
+	 *
+	 * @return 最近一次修改道路影响的(起点,终点)对数。
+	 */
+	public synchronized int getInvalidatedPairs() {
+		return invalidatedPairs;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回地图行数，即路口x坐标的上界。<br>
+	 *
+	 * @return 地图行数。
+	 */
+	public int getRows() {
+		return crosses.length;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回地图列数，即路口y坐标的上界。<br>
+	 *
+	 * @return 地图列数。
+	 */
+	public int getCols() {
+		return crosses[0].length;
+	}
+
+	/**
+	 * Requires:传入一个不为空的路口。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果路口在地图范围内返回true，否则返回false。<br>
+	 *
+	 * @param cityCross 待检查的路口。
+	 *
+	 * @return 路口是否在地图范围内。
+	 */
+	public boolean contains(CityCross cityCross) {
+		return contains(cityCross.getX(), cityCross.getY());
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果坐标在地图范围内返回true，否则返回false。<br>
+	 *
+	 * @param x 路口x坐标。
+	 * @param y 路口y坐标。
+	 *
+	 * @return 坐标是否在地图范围内。
+	 */
+	public boolean contains(int x, int y) {
+		return x >= 0 && y >= 0 && x < crosses.length && y < crosses[0].length;
+	}
+
+	/**
+	 * Requires:传入地图范围内的坐标。<br>
+	 * Modifies:第一次取得该路口时新建并记录之。<br>
+	 * Effects:返回该坐标共享的路口对象，同一坐标总是返回同一个对象（并发第一次取得时可能短暂存在相等的副本）。<br>
+	 *
+	 * @param x 路口x坐标。
+	 * @param y 路口y坐标。
+	 *
+	 * @return 共享的路口对象。
+	 */
+	public CityCross cross(int x, int y) {
+		int node = x * crosses[0].length + y;
+		CityCross cityCross = table[node];
+		if (cityCross == null) table[node] = cityCross = new CityCross(x, y);
+		return cityCross;
+	}
+
+	/**
+	 * Requires:传入一个地图内的路口和一个方向，或者null表示不动。<br>
+	 * Modifies:第一次取得目的路口时新建并记录之。<br>
+	 * Effects:返回该路口向该方向移动后到达的共享路口对象，不检查道路是否相通。<br>
+	 *
+	 * @param cityCross 当前路口。
+	 * @param direction 移动方向。
+	 *
+	 * @return 移动后的路口。
+	 */
+	public CityCross moveOn(CityCross cityCross, Direction direction) {
+		return direction == null ? cityCross : cross(cityCross.getX() + direction.getX(), cityCross.getY() + direction.getY());
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回地图版本号，每次成功修改道路后加一。<br>
+	 *
+	 * @return 地图版本号。
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Requires:传入新建车队的方法。<br>
+	 * Modifies:该地图还没有共享车队时用传入的方法新建之。<br>
+	 * Effects:返回该地图上的共享车队。车队由地图持有，不再使用地图时一同回收。<br>
+	 *
+	 * @param create 新建车队的方法。
+	 *
+	 * @return 共享车队。
+	 */
+	synchronized Fleet sharedFleet(Supplier<Fleet> create) {
+		if (fleet == null) fleet = create.get();
+		return fleet;
 	}
 
 	public boolean repOk() {
-		return crosses != null && flags != null && rightFlow != null && downFlow != null;
+		return crosses != null && flags != null && table.length == adjacency.length && adjacency.length == crosses.length * crosses[0].length && offsets.length == 4
+		       && frontFlow != null && backFlow != null && routeIndex != null && vipRouteIndex != null && componentIndex != null && vipComponentIndex != null;
 	}
 }
@@ -0,0 +1,184 @@
+import java.util.Arrays;
+
+/**
+ * Overview:
+ * The {@code ComponentIndex} class implements the connected components index of the city map.
+ * <br>
+ * 表现对象：{@code CityMap cityMap, boolean ifVip, int rows, int cols, int[] label, int[] size, int[] free, int freeCount,
+ * int[] queue, int[] stamp, int generation, int[] opened, int openedCount; }
+ * 分别表示所属城市地图，是否为VipTaxi视图，地图行数，地图列数，每个路口所在连通块的编号，每个编号的连通块大小，未使用的编号栈，
+ * 未使用编号数，BFS队列缓存，BFS访问标记，标记代数，以及本次修改中新打开的道路（路口编号对）和条数。
+ * <br>
+ * 道路是双向的，因此两个路口可达当且仅当它们在同一个连通块中。打开一条连接两个连通块的道路时，把较小的连通块并入较大的；
+ * 关闭一条道路时，从道路两端交替进行BFS，若一侧先搜索完毕而未与另一侧相遇，则这一侧是一个完整的连通块，若它的编号还被其他路口使用则给它分配新的编号。
+ * <br>
+ * 抽象函数：{@code AF(c) = (node -> component); }
+ * 表示每个路口所在的连通块。
+ * <br>
+ * 不定式：{@code cityMap != null && label.length == rows * cols && size.length == rows * cols && freeCount <= free.length;}
+ */
+public class ComponentIndex {
+	private final CityMap cityMap;
+	private final boolean ifVip;
+	private final int rows;
+	private final int cols;
+	private final int[] label;
+	private final int[] size;
+	private final int[] free;
+	private int freeCount = 0;
+	private final int[] queue;
+	private final int[] stamp;
+	private int generation = 0;
+	private final int[] opened = new int[4];
+	private int openedCount = 0;
+
+	/**
+	 * Requires:传入一个已建立相邻道路掩码的城市地图，地图的行数和列数，以及是否为VipTaxi视图。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:计算所有路口所在的连通块。<br>
+	 *
+	 * @param cityMap 所属城市地图。
+	 * @param rows    地图行数。
+	 * @param cols    地图列数。
+	 * @param ifVip   是否为VipTaxi视图。
+	 */
+	public ComponentIndex(CityMap cityMap, int rows, int cols, boolean ifVip) {
+		this.cityMap = cityMap;
+		this.ifVip = ifVip;
+		this.rows = rows;
+		this.cols = cols;
+		this.label = new int[rows * cols];
+		this.size = new int[rows * cols];
+		this.free = new int[rows * cols];
+		this.queue = new int[rows * cols];
+		this.stamp = new int[rows * cols];
+		Arrays.fill(label, -1);
+		int next = 0;
+		for (int node = 0; node < rows * cols; node++) {
+			if (label[node] >= 0) continue;
+			int head = 0, tail = 0;
+			label[node] = next;
+			queue[tail++] = node;
+			while (head < tail) {
+				int now = queue[head++];
+				for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+					int other = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+					if (label[other] >= 0) continue;
+					label[other] = next;
+					queue[tail++] = other;
+				}
+			}
+			size[next++] = tail;
+		}
+		for (int i = rows * cols - 1; i >= next; i--) free[freeCount++] = i;
+	}
+
+	/**
+	 * Requires:传入两个合法的路口编号。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果两个路口之间有路可达返回true，否则返回false。<br>
+	 *
+	 * @param from 起点编号，即{@code x * cols + y}。
+	 * @param to   终点编号。
+	 *
+	 * @return 两个路口是否可达。
+	 */
+	public boolean reachable(int from, int to) {
+		return label[from] == label[to];
+	}
+
+	/**
+	 * Requires:传入被修改的路口坐标，以及修改前后的道路信息，城市地图的相邻道路掩码已经更新。<br>
+	 * Modifies:修改受影响路口的连通块编号。<br>
+	 * Effects:检查路口右方和下方两条道路的变化，先处理关闭的道路再处理打开的道路，使连通块与修改后的地图一致。
+	 * 两条道路同时关闭时最多分成三块，三个端点两两检查。<br>
+	 *
+	 * @param x      被修改路口x坐标。
+	 * @param y      被修改路口y坐标。
+	 * @param before 修改前的道路信息。
+	 * @param after  修改后的道路信息。
+	 */
+	public void roadChanged(int x, int y, int before, int after) {
+		int node = x * cols + y;
+		boolean rightChanged = y + 1 < cols && (before & 1) != (after & 1);
+		boolean downChanged = x + 1 < rows && (before & 2) != (after & 2);
+		openedCount = 0;
+		if (rightChanged && (after & 1) != 0) addOpened(node, node + 1);
+		if (downChanged && (after & 2) != 0) addOpened(node, node + cols);
+		boolean rightClosed = rightChanged && (after & 1) == 0, downClosed = downChanged && (after & 2) == 0;
+		if (rightClosed) split(node, node + 1);
+		if (downClosed) split(node, node + cols);
+		if (rightClosed && downClosed) split(node + 1, node + cols);
+		for (int i = 0; i < openedCount; i += 2) merge(opened[i], opened[i + 1]);
+		openedCount = 0;
+	}
+
+	private void addOpened(int u, int v) {
+		opened[openedCount++] = u;
+		opened[openedCount++] = v;
+	}
+
+	private boolean isOpened(int u, int v) {
+		for (int i = 0; i < openedCount; i += 2)
+			if (opened[i] == u && opened[i + 1] == v || opened[i] == v && opened[i + 1] == u) return true;
+		return false;
+	}
+
+	private void merge(int u, int v) {
+		if (label[u] == label[v]) return;
+		int small = size[label[u]] < size[label[v]] ? u : v, target = label[small == u ? v : u], old = label[small];
+		int head = 0, tail = 0;
+		label[small] = target;
+		queue[tail++] = small;
+		while (head < tail) {
+			int now = queue[head++];
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int other = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (label[other] != old) continue;
+				label[other] = target;
+				queue[tail++] = other;
+			}
+		}
+		size[target] += tail;
+		size[old] = 0;
+		free[freeCount++] = old;
+	}
+
+	private void split(int u, int v) {
+		generation += 2;
+		int sideA = generation, sideB = generation + 1;
+		int headA = 0, tailA = 0, headB = rows * cols, tailB = rows * cols;
+		stamp[u] = sideA;
+		queue[tailA++] = u;
+		stamp[v] = sideB;
+		queue[--tailB] = v;
+		while (headA < tailA && tailB < headB) {
+			int now = queue[headA++];
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int other = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (stamp[other] == sideA || isOpened(now, other)) continue;
+				if (stamp[other] == sideB) return;
+				stamp[other] = sideA;
+				queue[tailA++] = other;
+			}
+			now = queue[--headB];
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int other = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (stamp[other] == sideB || isOpened(now, other)) continue;
+				if (stamp[other] == sideA) return;
+				stamp[other] = sideB;
+				queue[--tailB] = other;
+			}
+		}
+		int from = headA == tailA ? 0 : tailB, to = headA == tailA ? tailA : rows * cols, old = label[queue[from]];
+		if (size[old] == to - from) return;
+		int fresh = free[--freeCount];
+		for (int i = from; i < to; i++) label[queue[i]] = fresh;
+		size[fresh] = to - from;
+		size[old] -= to - from;
+	}
+
+	public boolean repOk() {
+		return cityMap != null && label.length == rows * cols && size.length == rows * cols && freeCount <= free.length;
+	}
+}
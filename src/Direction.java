@@ -16,6 +16,7 @@ public enum Direction {
 	LEFT(0, -1),
 	RIGHT(0, 1);
 
+	private static final Direction[] CODES = values();
 	private int x, y;
 
 	/**
@@ -52,4 +53,17 @@ public enum Direction {
 	public int getX() {
 		return x;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Requires:传入一个方向编码，即{@link #ordinal()}的值。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回编码对应的方向，不新建数组。<br>
+	 *
+	 * @param code 方向编码。
+	 *
+	 * @return 对应的方向。
+	 */
+	public static Direction of(int code) {
+		return CODES[code];
+	}
+}
@@ -0,0 +1,287 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Overview:
+ * The {@code EventLog} class implements the asynchronous, batched event pipeline of the scheduling system.
+ * <br>
+ * 表现对象：{@code byte[] types, long[] times, long[] requestTimes, int[] fields, AtomicLongArray published,
+ * AtomicLong claimed, long consumed, Thread writer, boolean idle, DataOutputStream out, boolean binary, int traceSampling, EventLog eventLog; }
+ * 表现了预先分配的环形缓冲区中每条记录的类型，时间，请求发出时间，整数字段（出租车id，出租车坐标，信誉度，出租车状态，请求起止坐标），
+ * 每个槽位已发布的序号，已申请的序号，后台线程已写出的序号，后台写出线程，后台线程是否正在等待新事件，输出流，是否为二进制格式，追踪事件的采样间隔，和事件日志单例。
+ * <br>
+ * 生产者申请序号后把事件写入对应槽位并发布，后台线程按序号顺序成批写出。缓冲区满时生产者等待后台线程。
+ * 没有新事件时后台线程挂起，生产者发布事件后发现它在等待时将其唤醒。
+ * 文本格式与原来直接打印的信息相同；二进制格式每条记录固定为{@code RECORDSIZE}字节。
+ * <br>
+ * 抽象函数：{@code AF(x) = (events[consumed, claimed)); }
+ * 表现了尚未写出的事件序列。
+ * <br>
+ * 不定式：{@code consumed <= claimed.get() && claimed.get() - consumed <= CAPACITY && traceSampling > 0;}
+ */
+public class EventLog {
+	public static final byte REGISTER = 0;
+	public static final byte TAKE = 1;
+	public static final byte FINISH = 2;
+	public static final byte CREDIT = 3;
+	public static final byte TRACE = 4;
+	public static final byte MISS = 5;
+	public static final int RECORDSIZE = 1 + 8 + 8 + 4 * 9;
+	private static final int CAPACITY = 1 << 16;
+	private static final int FIELDS = 9;
+	private static EventLog eventLog;
+	private final byte[] types = new byte[CAPACITY];
+	private final long[] times = new long[CAPACITY];
+	private final long[] requestTimes = new long[CAPACITY];
+	private final int[] fields = new int[CAPACITY * FIELDS];
+	private final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+	private final AtomicLong claimed = new AtomicLong();
+	private volatile long consumed = 0;
+	private final Thread writer;
+	private volatile boolean idle = false;
+	private volatile DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out, 1 << 16));
+	private volatile boolean binary = false;
+	private volatile int traceSampling = 1;
+
+	private EventLog() {
+		for (int i = 0; i < CAPACITY; i++) published.set(i, -1);
+		writer = new Thread(this::write, "event-log");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:如果自身单例不存在，新建自身单例并启动后台写出线程，若存在则无修改。<br>
+	 * Effects:返回事件日志单例。<br>
+	 *
+	 * @return 事件日志单例。
+	 */
+	public synchronized static EventLog getEventLog() {
+		if (eventLog == null) eventLog = new EventLog();
+		return eventLog;
+	}
+
+	/**
+	 * Requires:传入输出文件名（为null时写到标准输出），是否使用二进制格式，和一个正整数表示追踪事件的采样间隔。<br>
+	 * Modifies:写出已有事件后修改输出流，输出格式和采样间隔。应在产生新事件之前调用。<br>
+	 * Effects:配置事件日志，采样间隔为n时每个出租车每n个时间片输出一次追踪信息。<br>
+	 *
+	 * @param fileName      输出文件名，或者null。
+	 * @param binary        是否使用二进制格式。
+	 * @param traceSampling 追踪事件的采样间隔。
+	 *
+	 * @throws IOException 打开文件异常。
+	 */
+	public void configure(String fileName, boolean binary, int traceSampling) throws IOException {
+		if (traceSampling <= 0) throw new IllegalArgumentException("trace sampling must be positive");
+		flush();
+		OutputStream stream = fileName == null ? System.out : new FileOutputStream(fileName);
+		synchronized (this) {
+			out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+			this.binary = binary;
+			this.traceSampling = traceSampling;
+		}
+	}
+
+	/**
+	 * Requires:传入抢单的出租车和被抢的请求。<br>
+	 * Modifies:向缓冲区写入一条抢单事件。<br>
+	 * Effects:记录出租车抢单。<br>
+	 *
+	 * @param taxi    抢单的出租车。
+	 * @param request 被抢的请求。
+	 */
+	public void register(Taxi taxi, Request request) {
+		publish(REGISTER, taxi.getId(), 0, 0, 0, 0, request);
+	}
+
+	/**
+	 * Requires:传入接单的出租车和被接的请求。<br>
+	 * Modifies:向缓冲区写入一条接单事件。<br>
+	 * Effects:记录出租车接单。<br>
+	 *
+	 * @param taxi    接单的出租车。
+	 * @param request 被接的请求。
+	 */
+	public void take(Taxi taxi, Request request) {
+		publish(TAKE, taxi.getId(), 0, 0, 0, 0, request);
+	}
+
+	/**
+	 * Requires:传入完成请求的出租车和完成的请求。<br>
+	 * Modifies:向缓冲区写入一条完成事件。<br>
+	 * Effects:记录出租车完成请求。<br>
+	 *
+	 * @param taxi    完成请求的出租车。
+	 * @param request 完成的请求。
+	 */
+	public void finish(Taxi taxi, Request request) {
+		publish(FINISH, taxi.getId(), 0, 0, 0, 0, request);
+	}
+
+	/**
+	 * Requires:传入一辆出租车。<br>
+	 * Modifies:向缓冲区写入一条信誉度事件。<br>
+	 * Effects:记录出租车当前的信誉度。<br>
+	 *
+	 * @param taxi 出租车。
+	 */
+	public void credit(Taxi taxi) {
+		publish(CREDIT, taxi.getId(), 0, 0, taxi.getCredit(), 0, null);
+	}
+
+	/**
+	 * Requires:传入一辆出租车。<br>
+	 * Modifies:按采样间隔向缓冲区写入一条追踪事件。<br>
+	 * Effects:记录出租车当前的状态，位置和信誉度。<br>
+	 *
+	 * @param taxi 出租车。
+	 */
+	public void trace(Taxi taxi) {
+		if ((MyTimer.getMyTimer().getTime() / 100 + taxi.getId()) % traceSampling != 0) return;
+		publish(TRACE, taxi.getId(), taxi.getStayCityCross().getX(), taxi.getStayCityCross().getY(),
+				taxi.getCredit(), taxi.getStatus().ordinal(), null);
+	}
+
+	/**
+	 * Requires:传入一个没有出租车接单的请求。<br>
+	 * Modifies:向缓冲区写入一条无法完成事件。<br>
+	 * Effects:记录请求无法完成。<br>
+	 *
+	 * @param request 无法完成的请求。
+	 */
+	public void miss(Request request) {
+		publish(MISS, 0, 0, 0, 0, 0, request);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:等待后台线程写出调用前已发布的所有事件。<br>
+	 */
+	public void flush() {
+		long target = claimed.get();
+		while (consumed < target) LockSupport.parkNanos(100_000);
+		synchronized (this) {
+			try {
+				out.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void publish(byte type, int taxi, int x, int y, int credit, int status, Request request) {
+		long sequence = claimed.getAndIncrement();
+		while (sequence - consumed >= CAPACITY) Thread.yield();
+		int slot = (int) (sequence & (CAPACITY - 1)), base = slot * FIELDS;
+		types[slot] = type;
+		times[slot] = MyTimer.getMyTimer().getTime();
+		fields[base] = taxi;
+		fields[base + 1] = x;
+		fields[base + 2] = y;
+		fields[base + 3] = credit;
+		fields[base + 4] = status;
+		fields[base + 5] = request == null ? 0 : request.getStart().getX();
+		fields[base + 6] = request == null ? 0 : request.getStart().getY();
+		fields[base + 7] = request == null ? 0 : request.getEnd().getX();
+		fields[base + 8] = request == null ? 0 : request.getEnd().getY();
+		requestTimes[slot] = request == null ? 0 : request.getStartTime();
+		published.set(slot, sequence);
+		if (idle) LockSupport.unpark(writer);
+	}
+
+	private void write() {
+		StringBuilder line = new StringBuilder();
+		while (true) {
+			long next = consumed;
+			int slot = (int) (next & (CAPACITY - 1));
+			if (published.get(slot) != next) {
+				synchronized (this) {
+					try {
+						out.flush();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+				while (published.get(slot) != next) {
+					idle = true;
+					if (published.get(slot) != next) LockSupport.park(this);
+					idle = false;
+				}
+			}
+			synchronized (this) {
+				for (; published.get(slot) == next; slot = (int) (++next & (CAPACITY - 1))) {
+					try {
+						if (binary) writeBinary(slot);
+						else {
+							line.setLength(0);
+							format(slot, line);
+							out.write(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+						}
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+					consumed = next + 1;
+				}
+			}
+		}
+	}
+
+	private void writeBinary(int slot) throws IOException {
+		out.writeByte(types[slot]);
+		out.writeLong(times[slot]);
+		out.writeLong(requestTimes[slot]);
+		for (int i = 0; i < FIELDS; i++) out.writeInt(fields[slot * FIELDS + i]);
+	}
+
+	private void format(int slot, StringBuilder line) {
+		int base = slot * FIELDS;
+		switch (types[slot]) {
+			case REGISTER:
+				line.append("taxi No.").append(fields[base]).append(" register the ");
+				appendRequest(slot, line).append(" at ").append(times[slot] / 1000.0).append('s');
+				break;
+			case TAKE:
+				line.append("taxi No.").append(fields[base]).append(" take the ");
+				appendRequest(slot, line).append("at ").append(times[slot] / 1000.0).append('s');
+				break;
+			case FINISH:
+				line.append("taxi No.").append(fields[base]).append(" finished the ");
+				appendRequest(slot, line).append(" at ").append(times[slot] / 1000.0).append('s');
+				break;
+			case CREDIT:
+				line.append("now taxi No.").append(fields[base]).append(" credit: ").append(fields[base + 3]);
+				break;
+			case TRACE:
+				line.append("Taxi{id=").append(fields[base])
+						.append(", status=").append(TaxiStatus.values()[fields[base + 4]])
+						.append(", now=").append(times[slot] / 1000.0).append('s')
+						.append(", stayCityCross=CityCross{x=").append(fields[base + 1]).append(", y=").append(fields[base + 2]).append('}')
+						.append(", credit=").append(fields[base + 3]).append('}');
+				break;
+			case MISS:
+				appendRequest(slot, line).append(" can not be finished!");
+				break;
+		}
+	}
+
+	private StringBuilder appendRequest(int slot, StringBuilder line) {
+		int base = slot * FIELDS;
+		return line.append("Request{start=CityCross{x=").append(fields[base + 5]).append(", y=").append(fields[base + 6])
+				       .append("}, end=CityCross{x=").append(fields[base + 7]).append(", y=").append(fields[base + 8])
+				       .append("}, startTime=").append(requestTimes[slot] / 1000.0).append("s}");
+	}
+
+	public boolean repOk() {
+		return consumed <= claimed.get() && claimed.get() - consumed <= CAPACITY && traceSampling > 0;
+	}
+}
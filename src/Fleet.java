@@ -0,0 +1,531 @@
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Overview:
+ * The {@code Fleet} class implements the struct-of-arrays storage and stepping of a fleet of taxis.
+ * <br>
+ * 表现对象：{@code CityMap cityMap, LightsMap lightsMap, int cols, int size, Taxi[] views, boolean[] vip, int[] node, byte[] heading,
+ * byte[] status, int[] waitTime, int[] credit, byte[][] route, int[] routeCursor, int[] routeTarget, long[] routeVersion,
+ * long[] routeStart, int[] rerouteFrom, Request[] aim, boolean[] trace; }
+ * 分别表示城市地图，红绿灯信息图，地图列数，出租车数，每个槽位对应的出租车对象，是否为VipTaxi，当前路口编号，最后一次运行方向，运行状态，
+ * 等待时间，信誉度，当前规划路径（方向编码），路径中下一步的位置，路径目的地的路口编号（没有时为-1），规划路径时的地图版本号，
+ * 路径第一步的模拟时间，路径中开始检查车流的位置，当前请求，追踪标记。
+ * <br>
+ * 每辆出租车的状态按槽位存放在并行的基本类型数组中，{@link Taxi}和{@link VipTaxi}只保存所属车队和槽位，是这些数组的视图。
+ * {@link #step(int[], int, int)}在数组上逐个运行一组槽位的出租车，不经过出租车对象，红绿灯，车流和道路都按路口编号和方向编码查询，
+ * 不需要取得路口和方向对象。不同槽位可以被不同线程同时运行；
+ * {@link #add(Taxi, CityCross, boolean)}会扩容数组，不能与运行同时进行。
+ * 路径规划方式见{@link Routing}。按红绿灯规划时路径中包括在路口等红灯的时间片，
+ * 路径第i步只在{@code routeStart + i * TICK}时执行，出租车不在计划的时间片到达时重新规划。
+ * <br>
+ * 下一段道路（在出租车自己可走的道路中）的车流大于阈值时重新规划路径；如果新路径仍然走这段拥堵的道路，说明没有更好的选择，
+ * 之后{@code REROUTE_GAP}步内不再因车流重新规划，避免在整段拥堵的路上每到一个路口都重新搜索出同样的路径。
+ * <br>
+ * 每张城市地图最多有一个共享车队，记录在地图上（见{@link #shared(CityMap, LightsMap)}），地图不再使用时车队随之回收。
+ * <br>
+ * 抽象函数：{@code AF(c) = (slot -> taxi state); }
+ * 表示每个槽位上出租车的状态。
+ * <br>
+ * 不定式：{@code cityMap != null && lightsMap != null && size <= views.length && all arrays have the same length;}
+ */
+public class Fleet {
+	public static final int MOVED_WITH_PASSENGER = 1;
+	public static final int FINISHED = 2;
+	private static final int TIMEUNIT = 100;
+	private static final int WAITUPPERTIME = 20000;
+	private static final int STOPUPPERTIME = 1000;
+	private static final int REROUTE_GAP = 4;
+	private static final TaxiStatus[] STATUSES = TaxiStatus.values();
+	private static volatile int rerouteFlow = 4;
+	private static volatile Routing routing = Routing.SHORTEST;
+	private static volatile int maxDetour = 4;
+	private final CityMap cityMap;
+	private final LightsMap lightsMap;
+	private final int cols;
+	private int size = 0;
+	private Taxi[] views = new Taxi[16];
+	private boolean[] vip = new boolean[16];
+	private int[] node = new int[16];
+	private byte[] heading = new byte[16];
+	private byte[] status = new byte[16];
+	private int[] waitTime = new int[16];
+	private int[] credit = new int[16];
+	private byte[][] route = new byte[16][];
+	private int[] routeCursor = new int[16];
+	private int[] routeTarget = new int[16];
+	private long[] routeVersion = new long[16];
+	private long[] routeStart = new long[16];
+	private int[] rerouteFrom = new int[16];
+	private Request[] aim = new Request[16];
+	private boolean[] trace = new boolean[16];
+
+	/**
+	 * Requires:传入一张城市地图和一幅红绿灯信息图。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化一个空车队。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param lightsMap 红绿灯信息图。
+	 */
+	public Fleet(CityMap cityMap, LightsMap lightsMap) {
+		this.cityMap = cityMap;
+		this.lightsMap = lightsMap;
+		this.cols = cityMap.getCols();
+	}
+
+	/**
+	 * Requires:传入一张城市地图和一幅红绿灯信息图。<br>
+	 * Modifies:该地图还没有共享车队时新建之并记录在地图上。<br>
+	 * Effects:返回该地图上不指定车队新建的出租车所共享的车队。共享车队使用另一幅红绿灯信息图时抛出异常，
+	 * 而不是替换车队，否则已在原车队中的出租车会与新车队分离。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param lightsMap 红绿灯信息图。
+	 *
+	 * @return 共享车队。
+	 */
+	public static Fleet shared(CityMap cityMap, LightsMap lightsMap) {
+		Fleet fleet = cityMap.sharedFleet(() -> new Fleet(cityMap, lightsMap));
+		if (fleet.lightsMap != lightsMap) throw new IllegalStateException("the shared fleet of this map uses another lights map");
+		return fleet;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回车队所在地图的列数，路口编号为{@code x * cols + y}。<br>
+	 *
+	 * @return 地图列数。
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Requires:传入一个非负整数。<br>
+	 * Modifies:修改触发重新规划的车流阈值。<br>
+	 * Effects:当出租车下一段道路的车流大于该阈值时，出租车重新规划路径；新路径仍走这段道路时，之后几步内不再因车流重新规划。<br>
+	 *
+	 * @param flow 车流阈值。
+	 */
+	public static void setRerouteFlow(int flow) {
+		rerouteFlow = flow;
+	}
+
+	/**
+	 * Requires:传入一个不为空的路径规划方式。<br>
+	 * Modifies:修改路径规划方式。<br>
+	 * Effects:之后规划的路径使用该方式。<br>
+	 *
+	 * @param routing 路径规划方式。
+	 */
+	public static void setRouting(Routing routing) {
+		Fleet.routing = routing;
+	}
+
+	/**
+	 * Requires:传入一个非负整数。<br>
+	 * Modifies:修改最大绕行步数。<br>
+	 * Effects:按车流规划的路径步数不超过最短步数加该值。<br>
+	 *
+	 * @param detour 最大绕行步数。
+	 */
+	public static void setMaxDetour(int detour) {
+		if (detour < 0) throw new IllegalArgumentException("detour must be non-negative");
+		maxDetour = detour;
+	}
+
+	/**
+	 * Requires:传入出租车对象，它的初始位置，以及是否为VipTaxi，不能与运行出租车同时调用。<br>
+	 * Modifies:必要时扩容数组，占用一个新槽位。<br>
+	 * Effects:返回该出租车的槽位，初始状态为等待服务，方向向上。<br>
+	 *
+	 * @param view      出租车对象。
+	 * @param cityCross 初始位置。
+	 * @param ifVip     是否为VipTaxi。
+	 *
+	 * @return 槽位。
+	 */
+	public synchronized int add(Taxi view, CityCross cityCross, boolean ifVip) {
+		if (size == views.length) {
+			int capacity = size * 2;
+			views = Arrays.copyOf(views, capacity);
+			vip = Arrays.copyOf(vip, capacity);
+			node = Arrays.copyOf(node, capacity);
+			heading = Arrays.copyOf(heading, capacity);
+			status = Arrays.copyOf(status, capacity);
+			waitTime = Arrays.copyOf(waitTime, capacity);
+			credit = Arrays.copyOf(credit, capacity);
+			route = Arrays.copyOf(route, capacity);
+			routeCursor = Arrays.copyOf(routeCursor, capacity);
+			routeTarget = Arrays.copyOf(routeTarget, capacity);
+			routeVersion = Arrays.copyOf(routeVersion, capacity);
+			routeStart = Arrays.copyOf(routeStart, capacity);
+			rerouteFrom = Arrays.copyOf(rerouteFrom, capacity);
+			aim = Arrays.copyOf(aim, capacity);
+			trace = Arrays.copyOf(trace, capacity);
+		}
+		int slot = size++;
+		views[slot] = view;
+		vip[slot] = ifVip;
+		node[slot] = cityCross.getX() * cols + cityCross.getY();
+		heading[slot] = (byte) Direction.UP.ordinal();
+		status[slot] = (byte) TaxiStatus.WAIT.ordinal();
+		route[slot] = CityMap.NOWAY;
+		routeTarget[slot] = -1;
+		return slot;
+	}
+
+	/**
+	 * Requires:传入一组已占用的槽位和其中的下标范围，同一槽位不能被多个线程同时运行。<br>
+	 * Modifies:修改这些槽位的状态和相关的状态信息，VipTaxi载客行驶或完成请求时修改其服务记录。<br>
+	 * Effects:按顺序模拟{@code slots[from]}到{@code slots[to - 1]}的出租车各运行一个时间片。<br>
+	 *
+	 * @param slots 槽位数组。
+	 * @param from  第一个下标。
+	 * @param to    最后一个下标加1。
+	 */
+	public void step(int[] slots, int from, int to) {
+		for (int i = from; i < to; i++) {
+			int slot = slots[i], events = step(slot);
+			if (events != 0 && vip[slot]) ((VipTaxi) views[slot]).record(events);
+		}
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位，同一槽位不能被多个线程同时运行。<br>
+	 * Modifies:修改该槽位的状态和相关的状态信息。<br>
+	 * Effects:模拟出租车运行一个时间片，返回本次运行发生的事件：{@code MOVED_WITH_PASSENGER}表示载客行驶了一步，
+	 * {@code FINISHED}表示完成了当前请求。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 事件位。
+	 */
+	public int step(int slot) {
+		int events = 0, next;
+		switch (STATUSES[status[slot]]) {
+			case WAIT:
+				waitTime[slot] += TIMEUNIT;
+				next = wander(slot);
+				if (next >= 0) {
+					if (!passes(slot, next)) return events;
+					move(slot, next);
+				}
+				if (waitTime[slot] == WAITUPPERTIME) {
+					waitTime[slot] = 0;
+					status[slot] = (byte) TaxiStatus.STOP.ordinal();
+				}
+				break;
+			case READY:
+				next = nextDirection(slot, aim[slot].getStart(), aim[slot].getStart().getX() * cols + aim[slot].getStart().getY());
+				if (next < 0 || next != TimedRouteSearch.WAIT && !passes(slot, next)) return events;
+				routeCursor[slot]++;
+				if (next == TimedRouteSearch.WAIT) return events;
+				move(slot, next);
+				if (routeCursor[slot] == route[slot].length) {
+					planRoute(slot, aim[slot].getEnd());
+					status[slot] = (byte) TaxiStatus.STOP.ordinal();
+				}
+				break;
+			case WORK:
+				next = nextDirection(slot, aim[slot].getEnd(), aim[slot].getEnd().getX() * cols + aim[slot].getEnd().getY());
+				if (next < 0 || next != TimedRouteSearch.WAIT && !passes(slot, next)) return events;
+				routeCursor[slot]++;
+				if (next == TimedRouteSearch.WAIT) return events;
+				move(slot, next);
+				events |= MOVED_WITH_PASSENGER;
+				if (routeCursor[slot] == route[slot].length) {
+					credit[slot] += 3;
+					EventLog.getEventLog().finish(views[slot], aim[slot]);
+					EventLog.getEventLog().credit(views[slot]);
+					aim[slot] = null;
+					status[slot] = (byte) TaxiStatus.STOP.ordinal();
+					events |= FINISHED;
+				}
+				break;
+			case STOP:
+				waitTime[slot] += TIMEUNIT;
+				if (waitTime[slot] == STOPUPPERTIME) {
+					waitTime[slot] = 0;
+					status[slot] = (byte) (aim[slot] == null ? TaxiStatus.WAIT : TaxiStatus.WORK).ordinal();
+				}
+				break;
+		}
+		if (trace[slot]) EventLog.getEventLog().trace(views[slot]);
+		return events;
+	}
+
+	private boolean passes(int slot, int direction) {
+		return LightsMap.allows(lightsMap.getLight(node[slot], MyTimer.getMyTimer().getTime()), heading[slot], direction);
+	}
+
+	private int flow(int here, int code, boolean ifVip) {
+		return (cityMap.neighbours(here, ifVip) >> code & 1) == 0 ? Integer.MAX_VALUE : cityMap.getFlow(here, code);
+	}
+
+	private void move(int slot, int direction) {
+		heading[slot] = (byte) direction;
+		node[slot] = cityMap.neighbour(node[slot], direction);
+	}
+
+	private int wander(int slot) {
+		int here = node[slot], minFlow = Integer.MAX_VALUE, candidates = 0;
+		for (int code = 0; code < 4; code++) {
+			int flow = flow(here, code, false);
+			if (flow < minFlow) {
+				minFlow = flow;
+				candidates = 0;
+			}
+			if (flow == minFlow) candidates |= 1 << code;
+		}
+		if (minFlow == Integer.MAX_VALUE) return -1;
+		for (int pick = ThreadLocalRandom.current().nextInt(Integer.bitCount(candidates)); pick > 0; pick--)
+			candidates &= candidates - 1;
+		return Integer.numberOfTrailingZeros(candidates);
+	}
+
+	private int nextDirection(int slot, CityCross target, int targetNode) {
+		byte[] ways = route[slot];
+		int cursor = routeCursor[slot];
+		if (routeTarget[slot] != targetNode || routeVersion[slot] != cityMap.getVersion() || cursor >= ways.length
+				    || routing == Routing.LIGHTS && routeStart[slot] + cursor * MyTimer.TICK != MyTimer.getMyTimer().getTime()) {
+			planRoute(slot, target);
+			ways = route[slot];
+			cursor = 0;
+		} else if (cursor >= rerouteFrom[slot] && ways[cursor] != TimedRouteSearch.WAIT && flow(node[slot], ways[cursor], vip[slot]) > rerouteFlow) {
+			int jammed = ways[cursor];
+			planRoute(slot, target);
+			ways = route[slot];
+			cursor = 0;
+			if (ways.length > 0 && ways[0] == jammed) rerouteFrom[slot] = REROUTE_GAP;
+		}
+		return cursor < ways.length ? ways[cursor] : -1;
+	}
+
+	private void planRoute(int slot, CityCross target) {
+		routeVersion[slot] = cityMap.getVersion();
+		routeStart[slot] = MyTimer.getMyTimer().getTime();
+		switch (routing) {
+			case LIGHTS:
+				route[slot] = cityMap.getTheFastestWay(getCross(slot), target, Direction.of(heading[slot]), vip[slot], lightsMap, routeStart[slot]);
+				break;
+			case FLOW:
+				route[slot] = cityMap.getTheLeastCongestedWay(getCross(slot), target, vip[slot], maxDetour);
+				break;
+			default:
+				route[slot] = cityMap.getTheShortestWay(getCross(slot), target, vip[slot]);
+		}
+		routeCursor[slot] = 0;
+		rerouteFrom[slot] = 0;
+		routeTarget[slot] = target.getX() * cols + target.getY();
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位和一个不为空的请求，只能在调度线程中调用。<br>
+	 * Modifies:修改该槽位的当前请求，等待时间和状态，并记录接单事件。<br>
+	 * Effects:模拟出租车抢单成功。<br>
+	 *
+	 * @param slot    槽位。
+	 * @param request 待完成请求。
+	 */
+	public void carry(int slot, Request request) {
+		EventLog.getEventLog().take(views[slot], request);
+		aim[slot] = request;
+		waitTime[slot] = 0;
+		int start = request.getStart().getX() * cols + request.getStart().getY();
+		status[slot] = (byte) (node[slot] == start ? TaxiStatus.STOP : TaxiStatus.READY).ordinal();
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车所在的路口。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 当前路口。
+	 */
+	public CityCross getCross(int slot) {
+		int here = node[slot];
+		return cityMap.cross(here / cols, here % cols);
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车所在路口的编号，即{@code x * cols + y}。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 当前路口编号。
+	 */
+	public int getNode(int slot) {
+		return node[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车最后一次运行的方向。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 最后一次运行方向。
+	 */
+	public Direction getHeading(int slot) {
+		return Direction.of(heading[slot]);
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车的运行状态。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 运行状态。
+	 */
+	public TaxiStatus getStatus(int slot) {
+		return STATUSES[status[slot]];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车在当前状态下已等待的时间，单位为ms。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 等待时间。
+	 */
+	public int getWaitTime(int slot) {
+		return waitTime[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车正在完成的请求，没有时返回null。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 当前请求。
+	 */
+	public Request getAim(int slot) {
+		return aim[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位，最后一次运行方向，运行状态，等待时间，信誉度，以及当前请求（可以为null），不能与运行出租车同时调用。<br>
+	 * Modifies:修改该槽位的状态，清除规划路径。<br>
+	 * Effects:把出租车恢复到快照中的状态，下一次运行时重新规划路径。<br>
+	 *
+	 * @param slot     槽位。
+	 * @param heading  最后一次运行方向。
+	 * @param status   运行状态。
+	 * @param waitTime 等待时间。
+	 * @param credit   信誉度。
+	 * @param request  当前请求。
+	 */
+	public void restore(int slot, Direction heading, TaxiStatus status, int waitTime, int credit, Request request) {
+		this.heading[slot] = (byte) heading.ordinal();
+		this.status[slot] = (byte) status.ordinal();
+		this.waitTime[slot] = waitTime;
+		this.credit[slot] = credit;
+		this.aim[slot] = request;
+		route[slot] = CityMap.NOWAY;
+		routeTarget[slot] = -1;
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车的信誉度。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 信誉度。
+	 */
+	public int getCredit(int slot) {
+		return credit[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位和信誉度增量，同一槽位的调用者需要自行同步。<br>
+	 * Modifies:修改该槽位的信誉度。<br>
+	 * Effects:将信誉度增加num。<br>
+	 *
+	 * @param slot 槽位。
+	 * @param num  信誉度增量。
+	 */
+	public void addCredit(int slot, int num) {
+		credit[slot] += num;
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该槽位出租车是否为VipTaxi。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 是否为VipTaxi。
+	 */
+	public boolean isVip(int slot) {
+		return vip[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该出租车是否被追踪。<br>
+	 *
+	 * @param slot 槽位。
+	 *
+	 * @return 是否被追踪。
+	 */
+	public boolean isTraced(int slot) {
+		return trace[slot];
+	}
+
+	/**
+	 * Requires:传入一个已占用的槽位和一个布尔值。<br>
+	 * Modifies:修改该槽位的追踪标记。<br>
+	 * Effects:设置该出租车是否被追踪。<br>
+	 *
+	 * @param slot  槽位。
+	 * @param trace 是否被追踪。
+	 */
+	public void setTrace(int slot, boolean trace) {
+		this.trace[slot] = trace;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回车队所在的城市地图。<br>
+	 *
+	 * @return 城市地图。
+	 */
+	public CityMap getCityMap() {
+		return cityMap;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回车队中的出租车数。<br>
+	 *
+	 * @return 出租车数。
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	public boolean repOk() {
+		return cityMap != null && lightsMap != null && size <= views.length && node.length == views.length && route.length == views.length
+				       && rerouteFrom.length == views.length;
+	}
+}
@@ -0,0 +1,147 @@
+import java.util.Arrays;
+
+/**
+ * Overview:
+ * The {@code FlowRouteSearch} class implements the congestion-aware point-to-point search on the city map.
+ * <br>
+ * 表现对象：{@code int cells, int[] cost, int[] hops, byte[] via, int[] stamp, int[] closed, int[][] buckets, int[] bucketSizes, int generation, int expanded; }
+ * 分别表示地图路口数，从起点出发的代价，取得该代价的路径步数，到达该路口的方向编码，代价的有效代数标记，已展开标记，
+ * 按{@code f}模{@code BUCKETS}分组的待展开路口，各组大小，当前代数，上一次查询展开的路口数。
+ * <br>
+ * 每条道路的代价为{@code 1 + min(flow, MAX_PENALTY)}，其中{@code flow}是该道路上一时间片发布的车流，代价是小整数，因此用桶代替二叉堆（Dial算法）。
+ * 启发函数为{@link RouteIndex}给出的到终点的步数，它是一致的，每次扩展{@code f}最多增加{@code MAX_PENALTY + 2}，
+ * 因此只需要{@code BUCKETS}个循环使用的桶。每个路口只记录代价最小的一条路径的步数，
+ * 从起点走到该路口的步数加上到终点的步数超过最短步数加最大绕行步数时不再扩展，因此返回的路径步数不超过该上限，
+ * 但在绕行限制下不保证代价最小。每个线程使用自己的缓冲区，通过代数标记代替清空。
+ * <br>
+ * 抽象函数：{@code AF(c) = (node -> least cost from start); }
+ * 表示上一次查询中已到达路口从起点出发的最小代价。
+ * <br>
+ * 不定式：{@code cost.length == cells && hops.length == cells && via.length == cells && stamp.length == cells && closed.length == cells
+ * && buckets.length == BUCKETS && bucketSizes.length == BUCKETS && generation >= 0;}
+ */
+public class FlowRouteSearch {
+	public static final int MAX_PENALTY = 7;
+	private static final int BUCKETS = 16;
+	private static final ThreadLocal<FlowRouteSearch> SCRATCH = new ThreadLocal<>();
+	private final int cells;
+	private final int[] cost;
+	private final int[] hops;
+	private final byte[] via;
+	private final int[] stamp;
+	private final int[] closed;
+	private final int[][] buckets = new int[BUCKETS][16];
+	private final int[] bucketSizes = new int[BUCKETS];
+	private int generation = 0;
+	private int expanded = 0;
+
+	private FlowRouteSearch(int cells) {
+		this.cells = cells;
+		this.cost = new int[cells];
+		this.hops = new int[cells];
+		this.via = new byte[cells];
+		this.stamp = new int[cells];
+		this.closed = new int[cells];
+	}
+
+	/**
+	 * Requires:传入地图路口数。<br>
+	 * Modifies:当前线程没有对应大小的缓冲区时新建之。<br>
+	 * Effects:返回当前线程的搜索缓冲区。<br>
+	 *
+	 * @param cells 地图路口数。
+	 *
+	 * @return 当前线程的搜索缓冲区。
+	 */
+	public static FlowRouteSearch forThread(int cells) {
+		FlowRouteSearch search = SCRATCH.get();
+		if (search == null || search.cells != cells) SCRATCH.set(search = new FlowRouteSearch(cells));
+		return search;
+	}
+
+	/**
+	 * Requires:传入一张不为空的城市地图，地图列数，起点和终点编号，是否使用VipTaxi的道路信息，所有路口到终点的步数表，以及非负的最大绕行步数，
+	 * 终点必须从起点可达。<br>
+	 * Modifies:修改缓冲区。<br>
+	 * Effects:返回起点到终点在车流代价下的最优路径，每个元素是方向编码，路径步数不超过最短步数加最大绕行步数。起点与终点相同时返回空路径。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param cols      地图列数。
+	 * @param start     起点编号，即{@code x * cols + y}。
+	 * @param end       终点编号。
+	 * @param ifVip     是否为VipTaxi。
+	 * @param distance  所有路口到终点的步数，不可达为-1。
+	 * @param maxDetour 最大绕行步数。
+	 *
+	 * @return 起点到终点的路径。
+	 */
+	public byte[] search(CityMap cityMap, int cols, int start, int end, boolean ifVip, int[] distance, int maxDetour) {
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			Arrays.fill(closed, 0);
+			generation = 1;
+		}
+		Arrays.fill(bucketSizes, 0);
+		expanded = 0;
+		int limit = distance[start] + maxDetour, pending = 1;
+		stamp[start] = generation;
+		cost[start] = 0;
+		hops[start] = 0;
+		add(distance[start], start);
+		for (int f = distance[start]; pending > 0; f++) {
+			for (int i = 0; i < bucketSizes[f & (BUCKETS - 1)]; i++) {
+				int node = buckets[f & (BUCKETS - 1)][i];
+				pending--;
+				if (closed[node] == generation || cost[node] + distance[node] != f) continue;
+				closed[node] = generation;
+				expanded++;
+				if (node == end) return path(cols, start, end);
+				for (int mask = cityMap.neighbours(node, ifVip); mask != 0; mask &= mask - 1) {
+					int code = Integer.numberOfTrailingZeros(mask), next = cityMap.neighbour(node, code);
+					int value = cost[node] + 1 + Math.min(cityMap.getFlow(node, code), MAX_PENALTY), steps = hops[node] + 1;
+					if (distance[next] < 0 || steps + distance[next] > limit || closed[next] == generation) continue;
+					if (stamp[next] == generation && (cost[next] < value || cost[next] == value && hops[next] <= steps)) continue;
+					stamp[next] = generation;
+					cost[next] = value;
+					hops[next] = steps;
+					via[next] = (byte) code;
+					add(value + distance[next], next);
+					pending++;
+				}
+			}
+			bucketSizes[f & (BUCKETS - 1)] = 0;
+		}
+		return CityMap.NOWAY;
+	}
+
+	private void add(int f, int node) {
+		int index = f & (BUCKETS - 1);
+		if (bucketSizes[index] == buckets[index].length) buckets[index] = Arrays.copyOf(buckets[index], bucketSizes[index] * 2);
+		buckets[index][bucketSizes[index]++] = node;
+	}
+
+	private byte[] path(int cols, int start, int end) {
+		byte[] ways = new byte[hops[end]];
+		for (int node = end, step = ways.length - 1; node != start; step--) {
+			Direction direction = Direction.of(ways[step] = via[node]);
+			node -= direction.getX() * cols + direction.getY();
+		}
+		return ways;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次查询展开的路口数。<br>
+	 *
+	 * @return 展开的路口数。
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	public boolean repOk() {
+		return cost.length == cells && hops.length == cells && via.length == cells && stamp.length == cells && closed.length == cells
+				       && buckets.length == BUCKETS && bucketSizes.length == BUCKETS && generation >= 0;
+	}
+}
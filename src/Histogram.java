@@ -0,0 +1,112 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Overview:
+ * The {@code Histogram} class implements a concurrent histogram of non-negative values with bounded relative error.
+ * <br>
+ * 表现对象：{@code AtomicLongArray counts, AtomicLong count, AtomicLong sum, AtomicLong max; }
+ * 分别表示每个桶的计数，总计数，数值总和，以及最大值。
+ * <br>
+ * 与HdrHistogram相同的对数线性分桶：小于{@code 2 * HALF}的值每个值一个桶，之后每个2的幂区间均分为{@code HALF}个桶，
+ * 因此任意数值的相对误差不超过{@code 1 / HALF}，桶数只与数值的位数有关。记录操作不加锁，可以被多个线程同时调用。
+ * <br>
+ * 抽象函数：{@code AF(c) = (multiset of recorded values); }
+ * 表示所有记录过的数值。
+ * <br>
+ * 不定式：{@code counts.length() == BUCKETS && count.get() >= 0 && sum.get() >= 0 && max.get() >= 0;}
+ */
+public class Histogram {
+	private static final int HALF = 32;
+	private static final int BUCKETS = 2 * HALF + (63 - 6) * HALF;
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Requires:传入一个非负数，负数按0记录。<br>
+	 * Modifies:修改相应桶的计数，总计数，总和和最大值。<br>
+	 * Effects:记录一个数值。<br>
+	 *
+	 * @param value 数值。
+	 */
+	public void record(long value) {
+		value = Math.max(0, value);
+		counts.incrementAndGet(bucket(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+
+	private static int bucket(long value) {
+		if (value < 2 * HALF) return (int) value;
+		int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+		return 2 * HALF + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+	}
+
+	private static long highest(int bucket) {
+		if (bucket < 2 * HALF) return bucket;
+		int shift = (bucket - 2 * HALF) / HALF + 1;
+		return ((long) ((bucket - 2 * HALF) % HALF + HALF + 1) << shift) - 1;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回记录过的数值个数。<br>
+	 *
+	 * @return 记录次数。
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回记录过的最大值，没有记录时返回0。<br>
+	 *
+	 * @return 最大值。
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回记录过的数值的平均值（向下取整），没有记录时返回0。<br>
+	 *
+	 * @return 平均值。
+	 */
+	public long getMean() {
+		long n = count.get();
+		return n == 0 ? 0 : sum.get() / n;
+	}
+
+	/**
+	 * Requires:传入0到100之间的百分位。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回不小于该百分位数值的最小桶上界，即至少有该比例的记录不超过返回值，且返回值不超过最大值。没有记录时返回0。<br>
+	 *
+	 * @param percentile 百分位。
+	 *
+	 * @return 百分位数值。
+	 */
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+		if (total == 0) return 0;
+		long rank = Math.max(1, (long) Math.ceil(total * percentile / 100)), seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if (seen >= rank) return Math.min(highest(i), max.get());
+		}
+		return max.get();
+	}
+
+	public boolean repOk() {
+		return counts.length() == BUCKETS && count.get() >= 0 && sum.get() >= 0 && max.get() >= 0;
+	}
+}
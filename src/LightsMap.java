@@ -1,49 +1,94 @@
-import static java.lang.Thread.sleep;
-
 /**
  * Overview:
  * The {@code LightsMap} class implements the encapsulation of city's traffic information.
  * <br>
- * 表现对象：{@code int[][] lights; }
- * 表现城市中的红绿灯信息。
+ * 表现对象：{@code int cols, long[] lit, long[] vertical, int[] offsets; }
+ * 分别表示地图列数，每个路口是否有红绿灯的位图，每个路口在相位0时是否南北方向通行的位图，以及每个路口的相位偏移（毫秒，没有设置时为null）。
+ * <br>
+ * 路口{@code (x,y)}对应位图的第{@code x * cols + y}位。红绿灯的布局只在构造时写入一次，此后不再修改；
+ * 时间{@code t}时路口的相位为{@code floor((t + offset) / PERIOD)}，相位为奇数时与相位0相反，
+ * 因此任意路口任意时间的红绿灯都可以在O(1)时间内算出，不需要每个周期改写整张图，也不需要后台线程。
+ * 当前时间取自全局计时器{@link MyTimer}，与调度系统在时间为{@code PERIOD}的整数倍时反转所有红绿灯的效果相同。
+ * 给相邻路口设置递增的偏移可以形成绿波。
  * <br>
  * 抽象函数：{@code AF(x) = (lights); }
  * 表现城市中的红绿灯信息。
  * <br>
- * 不定式：{@code lights != null;}
+ * 不定式：{@code cols > 0 && lit != null && vertical != null && lit.length == vertical.length && (offsets == null || offsets.length == lit.length << 6);}
  */
-public class LightsMap implements Runnable {
-	private final int[][] lights;
+public class LightsMap {
+	public static final long PERIOD = 300;
+	private final int cols;
+	private final long[] lit;
+	private final long[] vertical;
+	private int[] offsets;
 
 	/**
-	 * Requires:无。<br>
-	 * Modifies:红绿灯信息数组。<br>
-	 * Effects:初始化当前红绿灯信息图。<br>
+	 * Requires:传入红绿灯信息图，0表示没有红绿灯，正数表示南北方向通行，负数表示东西方向通行。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:把红绿灯信息图按相位0的状态存为位图，不保留传入的数组。<br>
 	 *
 	 * @param lights 红绿灯信息图。
 	 */
 	public LightsMap(int[][] lights) {
-		this.lights = lights;
+		this.cols = lights[0].length;
+		this.lit = new long[(lights.length * cols + 63) >>> 6];
+		this.vertical = new long[lit.length];
+		for (int x = 0; x < lights.length; x++)
+			for (int y = 0; y < cols; y++) {
+				int node = x * cols + y;
+				if (lights[x][y] != 0) lit[node >>> 6] |= 1L << node;
+				if (lights[x][y] > 0) vertical[node >>> 6] |= 1L << node;
+			}
 	}
 
-	@Override
-	public void run() {
-		while (true) {
-			try {
-				sleep(1);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
+	/**
+	 * Requires:传入地图行数，列数和{@link MapFile}格式压缩的红绿灯信息，有红绿灯的路口在相位0时南北方向通行。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:直接从压缩的红绿灯信息构造位图，不需要先展开成int数组。<br>
+	 *
+	 * @param rows      地图行数。
+	 * @param cols      地图列数。
+	 * @param lightBits 压缩的红绿灯信息。
+	 */
+	public LightsMap(int rows, int cols, byte[] lightBits) {
+		this.cols = cols;
+		this.lit = new long[(rows * cols + 63) >>> 6];
+		this.vertical = new long[lit.length];
+		for (int node = 0; node < rows * cols; node++)
+			if (MapFile.light(lightBits, node) != 0) {
+				lit[node >>> 6] |= 1L << node;
+				vertical[node >>> 6] |= 1L << node;
 			}
-		}
 	}
 
 	/**
-	 * Requires:无。<br>
-	 * Modifies:红绿灯信息数组。<br>
-	 * Effects:将城市中的所有红绿灯反转。<br>
+	 * Requires:传入路口坐标和一个非负的偏移，单位为毫秒，不能与出租车运行同时调用。<br>
+	 * Modifies:修改该路口的相位偏移。<br>
+	 * Effects:让该路口的红绿灯比没有偏移时提前{@code offset}毫秒切换。<br>
+	 *
+	 * @param x      路口x坐标。
+	 * @param y      路口y坐标。
+	 * @param offset 偏移。
+	 */
+	public void setOffset(int x, int y, int offset) {
+		if (offset < 0) throw new IllegalArgumentException("offset must be non-negative");
+		if (offsets == null) offsets = new int[lit.length << 6];
+		offsets[x * cols + y] = offset;
+	}
+
+	/**
+	 * Requires:传入路口坐标。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该路口的相位偏移，单位为毫秒。<br>
+	 *
+	 * @param x 路口x坐标。
+	 * @param y 路口y坐标。
+	 *
+	 * @return 相位偏移。
 	 */
-	public void changeLights() {
-		for (int[] line : lights) for (int i = 0; i < line.length; i++) line[i] = (~line[i]) + 1;
+	public int getOffset(int x, int y) {
+		return offsets == null ? 0 : offsets[x * cols + y];
 	}
 
 	/**
@@ -58,14 +103,60 @@ public class LightsMap implements Runnable {
 	 * @return 该线路是否可以通过当前路口的红绿灯。
 	 */
 	public boolean checkLights(CityCross stayCityCross, Direction curDirection, Direction tempDirection) {
-		int situation = lights[stayCityCross.getX()][stayCityCross.getY()];
+		int light = getLight(stayCityCross.getX(), stayCityCross.getY(), MyTimer.getMyTimer().getTime());
+		return allows(light, curDirection.ordinal(), tempDirection.ordinal());
+	}
+
+	/**
+	 * Requires:传入路口坐标和一个模拟时间。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该路口的红绿灯在该时间的状态，0表示没有红绿灯，1表示南北方向通行，-1表示东西方向通行。<br>
+	 *
+	 * @param x    路口x坐标。
+	 * @param y    路口y坐标。
+	 * @param time 模拟时间。
+	 *
+	 * @return 红绿灯状态。
+	 */
+	public int getLight(int x, int y, long time) {
+		return getLight(x * cols + y, time);
+	}
+
+	/**
+	 * Requires:传入路口编号和一个模拟时间。<br>
+	 * Modifies:无。<br>
+	 * Effects:与{@link #getLight(int, int, long)}相同，路口由编号{@code x * cols + y}给出。<br>
+	 *
+	 * @param node 路口编号。
+	 * @param time 模拟时间。
+	 *
+	 * @return 红绿灯状态。
+	 */
+	public int getLight(int node, long time) {
+		if ((lit[node >>> 6] >>> node & 1) == 0) return 0;
+		long phase = Math.floorDiv(time + (offsets == null ? 0 : offsets[node]), PERIOD);
+		return ((vertical[node >>> 6] >>> node ^ phase) & 1) != 0 ? 1 : -1;
+	}
+
+	/**
+	 * Requires:传入红绿灯信息，车的来向和去向的方向编码。<br>
+	 * Modifies:无。<br>
+	 * Effects:按{@link #checkLights}的规则判断该来向的车在这样的红绿灯下是否可以去往将要去的去向。<br>
+	 *
+	 * @param situation 红绿灯信息。
+	 * @param cur       来向编码。
+	 * @param temp      去向编码。
+	 *
+	 * @return 是否可以通过。
+	 */
+	public static boolean allows(int situation, int cur, int temp) {
 		if (situation == 0) return true;
-		if (situation > 0)
-			return curDirection == Direction.UP || curDirection == Direction.DOWN || curDirection == Direction.RIGHT && tempDirection == Direction.DOWN || curDirection == Direction.LEFT && tempDirection == Direction.UP;
-		return curDirection == Direction.LEFT || curDirection == Direction.RIGHT || curDirection == Direction.UP && tempDirection == Direction.RIGHT || curDirection == Direction.DOWN && tempDirection == Direction.LEFT;
+		int up = Direction.UP.ordinal(), down = Direction.DOWN.ordinal(), left = Direction.LEFT.ordinal(), right = Direction.RIGHT.ordinal();
+		if (situation > 0) return cur == up || cur == down || cur == right && temp == down || cur == left && temp == up;
+		return cur == left || cur == right || cur == up && temp == right || cur == down && temp == left;
 	}
 
 	public boolean repOk() {
-		return lights != null;
+		return cols > 0 && lit != null && vertical != null && lit.length == vertical.length && (offsets == null || offsets.length == lit.length << 6);
 	}
 }
@@ -1,6 +1,6 @@
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
 import java.util.Random;
 import java.util.Vector;
 
@@ -11,41 +11,88 @@ import java.util.Vector;
 public class Main {
 	/**
 	 * Requires:无。<br>
-	 * Modifies:新建初始化所有需要的实例包括一个计时器，一个城市路口地图，一个红绿灯信息图，一个请求队列，一个出租车列表，一个用户操作安全类，启动相应线程。<br>
+	 * Modifies:新建初始化所有需要的实例包括一个计时器，一个城市路口地图，一个红绿灯信息图，一个出租车列表，一个出租车位置索引，一个用户操作安全类，启动相应线程。<br>
 	 * Effects:实现本次作业的模拟要求，无返回值。<br>
+	 * 命令行参数{@code map=<文件>}从{@link MapFile}格式的二进制文件读入地图和红绿灯，否则读入map.txt和light.txt，地图大小由文件决定。
+	 * {@code taxis=<n>}设置出租车数量（默认100，其中30%为VipTaxi）。{@code dispatch=batch}让同一时间片到期的请求一起分派。
+	 * {@code shards=<n>}把地图划分为n个矩形区域并行调度（默认1）。{@code routing=<shortest|lights|flow>}设置出租车的路径规划方式（见{@link Routing}），
+	 * {@code detour=<n>}设置按车流规划时的最大绕行步数（默认4）。
+	 * {@code replay=<文件>}回放文本或二进制格式的请求轨迹（见{@link RequestTrace}），{@code rejects=<文件>}将被拒绝的记录写到文件，默认为标准错误。
+	 * {@code speed=<倍数>}设置模拟时钟的加速倍数，{@code speed=max}表示尽可能快地运行。
+	 * {@code log=<文件>}将事件日志写到文件，{@code logformat=binary}使用二进制格式，{@code tracesample=<n>}设置追踪事件的采样间隔。
+	 * {@code metrics=<文件>}每隔{@code metricsinterval=<毫秒>}（默认1000）把{@link Metrics}的快照追加到文件。
+	 * {@code checkpoint=<文件>}每隔{@code checkpointinterval=<n>}（默认10）个时间片把完整的模拟状态保存到文件（见{@link Snapshot}），
+	 * {@code restore=<文件>}从快照文件恢复地图，红绿灯，时间，出租车和待分派请求，此时不再读入地图文件，也不新建出租车。<br>
 	 *
 	 * @param args 传入的命令行参数。
 	 */
 	public static void main(String[] args) {
 		try {
-			// read map.txt
-			int[][] ways = myReadFile("map.txt", 80);
-			for (int[] line : ways) for (int each : line) if (each < 0 || each > 3) System.exit(0);
-			// read road.txt
-			int[][] lights = myReadFile("light.txt", 80);
-			for (int[] line : lights) for (int each : line) if (each != 0 && each != 1) System.exit(0);
+			String mapFile = null, logFile = null, replayFile = null, rejectFile = null, metricsFile = null, checkpointFile = null, restoreFile = null;
+			boolean binaryLog = false;
+			int traceSampling = 1, taxiCount = 100, shardCount = 1, checkpointInterval = 10;
+			long metricsInterval = 1000;
+			boolean batchDispatch = false;
+			for (String arg : args)
+				if (arg.startsWith("speed="))
+					MyTimer.getMyTimer().setSpeedUp(arg.equals("speed=max") ? MyTimer.FASTEST : Double.parseDouble(arg.substring(6)));
+				else if (arg.startsWith("map=")) mapFile = arg.substring(4);
+				else if (arg.startsWith("log=")) logFile = arg.substring(4);
+				else if (arg.equals("logformat=binary")) binaryLog = true;
+				else if (arg.startsWith("tracesample=")) traceSampling = Integer.parseInt(arg.substring(12));
+				else if (arg.startsWith("taxis=")) taxiCount = Integer.parseInt(arg.substring(6));
+				else if (arg.startsWith("shards=")) shardCount = Integer.parseInt(arg.substring(7));
+				else if (arg.startsWith("metrics=")) metricsFile = arg.substring(8);
+				else if (arg.startsWith("metricsinterval=")) metricsInterval = Long.parseLong(arg.substring(16));
+				else if (arg.equals("dispatch=batch")) batchDispatch = true;
+				else if (arg.startsWith("routing=")) Fleet.setRouting(Routing.valueOf(arg.substring(8).toUpperCase()));
+				else if (arg.startsWith("detour=")) Fleet.setMaxDetour(Integer.parseInt(arg.substring(7)));
+				else if (arg.startsWith("replay=")) replayFile = arg.substring(7);
+				else if (arg.startsWith("rejects=")) rejectFile = arg.substring(8);
+				else if (arg.startsWith("checkpoint=")) checkpointFile = arg.substring(11);
+				else if (arg.startsWith("checkpointinterval=")) checkpointInterval = Integer.parseInt(arg.substring(19));
+				else if (arg.startsWith("restore=")) restoreFile = arg.substring(8);
+			if (taxiCount <= 0) throw new Exception("taxis must be positive");
+			if (shardCount <= 0) throw new Exception("shards must be positive");
+			// read map, snapshot, binary or map.txt and light.txt
+			Snapshot snapshot = restoreFile != null ? Snapshot.load(restoreFile) : null;
+			CityMap cityMap;
+			LightsMap lightsMap;
+			if (snapshot != null) {
+				cityMap = snapshot.restoreCityMap();
+				lightsMap = snapshot.restoreLightsMap();
+			} else {
+				MapFile city = mapFile != null ? MapFile.load(mapFile) : MapFile.readText("map.txt", "light.txt");
+				cityMap = new CityMap(city.getRows(), city.getCols(), city.getRoadBits());
+				lightsMap = new LightsMap(city.getRows(), city.getCols(), city.getLightBits());
+			}
 			// read end
 			// init start
 			MyTimer.getMyTimer();
-			CityMap cityMap = new CityMap(ways);
-			LightsMap lightsMap = new LightsMap(lights);
-			Vector<Request> requestArrayList = new Vector<>();
-			Vector<Taxi> taxis = new Vector<>();
-			UserOperator userOperator = new UserOperator(taxis, requestArrayList, cityMap);
-			for (int i = 0; i < 30; i++) {
-				Random random = new Random();
-				taxis.add(new VipTaxi(new CityCross(random.nextInt(80), random.nextInt(80)), cityMap, lightsMap));
-			}
-			for (int i = 30; i < 100; i++) {
-				Random random = new Random();
-				taxis.add(new Taxi(new CityCross(random.nextInt(80), random.nextInt(80)), cityMap, lightsMap));
+			if (snapshot != null) MyTimer.getMyTimer().setTime(snapshot.getTime());
+			EventLog.getEventLog().configure(logFile, binaryLog, traceSampling);
+			if (metricsFile != null) Metrics.getMetrics().startDump(metricsFile, metricsInterval);
+			Vector<Taxi> taxis = snapshot != null ? snapshot.restoreTaxis(Fleet.shared(cityMap, lightsMap)) : new Vector<>();
+			TaxiGrid taxiGrid = new TaxiGrid(cityMap.getRows(), cityMap.getCols());
+			TaxiSchedulingSystem taxiSchedulingSystem = new TaxiSchedulingSystem(cityMap, lightsMap, taxis, taxiGrid, Runtime.getRuntime().availableProcessors(), shardCount);
+			taxiSchedulingSystem.setBatchDispatch(batchDispatch);
+			UserOperator userOperator = new UserOperator(taxis, cityMap, taxiSchedulingSystem);
+			if (snapshot != null) snapshot.restoreRequests(cityMap, taxis, taxiSchedulingSystem);
+			Random random = new Random();
+			for (int i = 0; snapshot == null && i < taxiCount; i++) {
+				CityCross cityCross = cityMap.cross(random.nextInt(cityMap.getRows()), random.nextInt(cityMap.getCols()));
+				taxis.add(i < taxiCount * 3 / 10 ? new VipTaxi(cityCross, cityMap, lightsMap) : new Taxi(cityCross, cityMap, lightsMap));
 			}
+			taxiGrid.update(taxis);
+			if (checkpointFile != null) taxiSchedulingSystem.setCheckpoint(checkpointFile, checkpointInterval);
+			if (replayFile != null)
+				taxiSchedulingSystem.replay(replayFile, rejectFile == null ? System.err : new PrintStream(new FileOutputStream(rejectFile), true));
 			// init end
 			// start run
-			new Thread(new TaxiSchedulingSystem(cityMap, lightsMap, taxis, requestArrayList)).start();
+			new Thread(taxiSchedulingSystem).start();
 			new Thread(new Simulation(userOperator)).start();
-			new Thread(lightsMap).start();
 			System.in.read();
+			EventLog.getEventLog().flush();
 			System.exit(0);
 		} catch (FileNotFoundException e) {
 			System.out.println("No Map!");
@@ -57,29 +104,4 @@ public class Main {
 			System.exit(0);
 		}
 	}
-
-	/**
-	 * Requires:传入一个文件存在的文件名，一个正数的地图大小。<br>
-	 * Modifies:无。<br>
-	 * Effects:返回相应的文件内容。<br>
-	 *
-	 * @param fileName 要读入信息的文件名。
-	 * @param mapCap   地图大小。
-	 *
-	 * @return 文件内容，用数组表示。
-	 *
-	 * @throws Throwable 异常。
-	 */
-	private static int[][] myReadFile(String fileName, int mapCap) throws Throwable {
-		if (mapCap <= 0) throw new Exception();
-		int tmp[][] = new int[mapCap][mapCap];
-		BufferedReader bufferedReader = new BufferedReader(new FileReader(fileName));
-		for (int i = 0; i < mapCap; i++) {
-			String line = bufferedReader.readLine().trim();
-			if (line.length() != mapCap) System.exit(0);
-			for (int j = 0; j < line.length(); j++) tmp[i][j] = line.charAt(j) - '0';
-		}
-		bufferedReader.close();
-		return tmp;
-	}
 }
@@ -0,0 +1,275 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+/**
+ * Overview:
+ * The {@code MapFile} class implements the compact binary format of the city map and the traffic lights.
+ * <br>
+ * 文件格式（大端序）：{@code int MAGIC, short VERSION, short 0, int rows, int cols}共16字节的文件头，
+ * 之后是每个路口2位的道路信息（每字节4个路口，低位在前，按行优先顺序），
+ * 再之后是每个路口1位的红绿灯信息（每字节8个路口，低位在前，按行优先顺序）。
+ * <br>
+ * 表现对象：{@code int rows, int cols, byte[] roadBits, byte[] lightBits; }
+ * 表现了地图的行数，列数，按文件格式压缩的路口道路信息和红绿灯信息。
+ * <br>
+ * 读入二进制文件时只保留压缩的数组，{@link CityMap#CityMap(int, int, byte[])}和{@link LightsMap#LightsMap(int, int, byte[])}直接从压缩的数组构造，
+ * 不需要先展开成{@code int[rows][cols]}。
+ * <br>
+ * 抽象函数：{@code AF(x) = (roads, lights); }
+ * 表现了一张城市地图和它的红绿灯信息。
+ * <br>
+ * 不定式：{@code rows > 0 && cols > 0 && roadBits.length == (rows * cols + 3) / 4 && lightBits.length == (rows * cols + 7) / 8;}
+ */
+public class MapFile {
+	public static final int MAGIC = 0x54584D50;
+	public static final short VERSION = 1;
+	private static final int HEADER = 16;
+	private final int rows;
+	private final int cols;
+	private final byte[] roadBits;
+	private final byte[] lightBits;
+
+	private MapFile(int rows, int cols, byte[] roadBits, byte[] lightBits) {
+		this.rows = rows;
+		this.cols = cols;
+		this.roadBits = roadBits;
+		this.lightBits = lightBits;
+	}
+
+	/**
+	 * Requires:传入一个存在的二进制地图文件名。<br>
+	 * Modifies:无。<br>
+	 * Effects:通过内存映射读入二进制地图文件，文件格式错误或超过{@link Integer#MAX_VALUE}字节时抛出异常。<br>
+	 *
+	 * @param fileName 二进制地图文件名。
+	 *
+	 * @return 读入的地图。
+	 *
+	 * @throws IOException 读文件异常或文件格式错误。
+	 */
+	public static MapFile load(String fileName) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) throw new IOException(fileName + ": file too large (" + channel.size() + " bytes)");
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			if (channel.size() < HEADER || buffer.getInt(0) != MAGIC) throw new IOException(fileName + ": not a map file");
+			if (buffer.getShort(4) != VERSION) throw new IOException(fileName + ": unsupported version " + buffer.getShort(4));
+			int rows = buffer.getInt(8), cols = buffer.getInt(12);
+			if (rows <= 0 || cols <= 0) throw new IOException(fileName + ": bad size " + rows + "x" + cols);
+			long cells = (long) rows * cols, lightsOffset = HEADER + (cells + 3) / 4;
+			if (cells > Integer.MAX_VALUE / 2) throw new IOException(fileName + ": too many crosses " + rows + "x" + cols);
+			if (channel.size() < lightsOffset + (cells + 7) / 8) throw new IOException(fileName + ": truncated");
+			byte[] roadBits = new byte[(int) ((cells + 3) / 4)], lightBits = new byte[(int) ((cells + 7) / 8)];
+			buffer.position(HEADER);
+			buffer.get(roadBits);
+			buffer.get(lightBits);
+			return new MapFile(rows, cols, roadBits, lightBits);
+		}
+	}
+
+	/**
+	 * Requires:传入道路文本文件名和红绿灯文本文件名，两个文件的每一行都是等长的数字串。<br>
+	 * Modifies:无。<br>
+	 * Effects:读入文本格式的地图，地图大小由文件内容决定，文件格式错误时抛出带行号的异常。<br>
+	 *
+	 * @param roadFile  道路文本文件名。
+	 * @param lightFile 红绿灯文本文件名。
+	 *
+	 * @return 读入的地图。
+	 *
+	 * @throws IOException 读文件异常或文件格式错误。
+	 */
+	public static MapFile readText(String roadFile, String lightFile) throws IOException {
+		int[][] roads = readGrid(roadFile, 3), lights = readGrid(lightFile, 1);
+		if (roads.length != lights.length || roads[0].length != lights[0].length)
+			throw new IOException(lightFile + ": size differs from " + roadFile);
+		int rows = roads.length, cols = roads[0].length;
+		long cells = (long) rows * cols;
+		byte[] roadBits = new byte[(int) ((cells + 3) / 4)], lightBits = new byte[(int) ((cells + 7) / 8)];
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++) {
+				long cell = (long) i * cols + j;
+				roadBits[(int) (cell >> 2)] |= roads[i][j] << ((cell & 3) << 1);
+				lightBits[(int) (cell >> 3)] |= lights[i][j] << (cell & 7);
+			}
+		return new MapFile(rows, cols, roadBits, lightBits);
+	}
+
+	/**
+	 * Requires:传入一个可写的文件名。<br>
+	 * Modifies:写入文件。<br>
+	 * Effects:以二进制格式保存当前地图。<br>
+	 *
+	 * @param fileName 输出文件名。
+	 *
+	 * @throws IOException 写文件异常。
+	 */
+	public void save(String fileName) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			out.writeInt(rows);
+			out.writeInt(cols);
+			out.write(roadBits);
+			out.write(lightBits);
+		}
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回地图行数。<br>
+	 *
+	 * @return 地图行数。
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回地图列数。<br>
+	 *
+	 * @return 地图列数。
+	 */
+	public int getCols() {
+		return cols;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回压缩的路口道路信息，每个路口2位，每字节4个路口，低位在前。返回的数组不能修改。<br>
+	 *
+	 * @return 压缩的路口道路信息。
+	 */
+	public byte[] getRoadBits() {
+		return roadBits;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回压缩的红绿灯信息，每个路口1位，每字节8个路口，低位在前。返回的数组不能修改。<br>
+	 *
+	 * @return 压缩的红绿灯信息。
+	 */
+	public byte[] getLightBits() {
+		return lightBits;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回展开的路口道路信息数组，每次调用返回新数组。<br>
+	 *
+	 * @return 路口道路信息数组。
+	 */
+	public int[][] getRoads() {
+		return unpackRoads(rows, cols, roadBits);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回展开的红绿灯信息数组，每次调用返回新数组。<br>
+	 *
+	 * @return 红绿灯信息数组。
+	 */
+	public int[][] getLights() {
+		int[][] lights = new int[rows][cols];
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++) lights[i][j] = light(lightBits, i * cols + j);
+		return lights;
+	}
+
+	/**
+	 * Requires:传入地图行数，列数和压缩的路口道路信息。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回展开的路口道路信息数组。<br>
+	 *
+	 * @param rows     地图行数。
+	 * @param cols     地图列数。
+	 * @param roadBits 压缩的路口道路信息。
+	 *
+	 * @return 路口道路信息数组。
+	 */
+	static int[][] unpackRoads(int rows, int cols, byte[] roadBits) {
+		int[][] roads = new int[rows][cols];
+		for (int i = 0; i < rows; i++)
+			for (int j = 0; j < cols; j++) {
+				int cell = i * cols + j;
+				roads[i][j] = roadBits[cell >> 2] >> ((cell & 3) << 1) & 3;
+			}
+		return roads;
+	}
+
+	/**
+	 * Requires:传入压缩的红绿灯信息和路口编号。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该路口是否有红绿灯，1表示有，0表示没有。<br>
+	 *
+	 * @param lightBits 压缩的红绿灯信息。
+	 * @param cell      路口编号。
+	 *
+	 * @return 该路口的红绿灯信息。
+	 */
+	static int light(byte[] lightBits, int cell) {
+		return lightBits[cell >> 3] >> (cell & 7) & 1;
+	}
+
+	/**
+	 * Requires:传入道路文本文件名，红绿灯文本文件名和输出的二进制文件名。<br>
+	 * Modifies:写入二进制文件。<br>
+	 * Effects:把文本格式的地图转换为二进制格式。<br>
+	 *
+	 * @param args 命令行参数。
+	 *
+	 * @throws IOException 读写文件异常或文件格式错误。
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 3) {
+			System.err.println("usage: MapFile map.txt light.txt city.map");
+			System.exit(2);
+		}
+		MapFile mapFile = readText(args[0], args[1]);
+		mapFile.save(args[2]);
+		System.out.println(args[2] + ": " + mapFile.getRows() + "x" + mapFile.getCols());
+	}
+
+	private static int[][] readGrid(String fileName, int max) throws IOException {
+		ArrayList<int[]> grid = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				line = line.trim();
+				if (line.isEmpty()) continue;
+				if (!grid.isEmpty() && line.length() != grid.get(0).length)
+					throw new IOException(fileName + ":" + (grid.size() + 1) + ": expected " + grid.get(0).length + " cells");
+				int[] row = new int[line.length()];
+				for (int j = 0; j < row.length; j++) {
+					row[j] = line.charAt(j) - '0';
+					if (row[j] < 0 || row[j] > max)
+						throw new IOException(fileName + ":" + (grid.size() + 1) + ": bad cell '" + line.charAt(j) + "'");
+				}
+				grid.add(row);
+			}
+		}
+		if (grid.isEmpty()) throw new IOException(fileName + ": empty map");
+		return grid.toArray(new int[0][]);
+	}
+
+	public boolean repOk() {
+		return rows > 0 && cols > 0 && roadBits.length == ((long) rows * cols + 3) / 4 && lightBits.length == ((long) rows * cols + 7) / 8;
+	}
+}
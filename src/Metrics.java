@@ -0,0 +1,214 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Overview:
+ * The {@code Metrics} class implements the in-process metrics registry of the scheduling system.
+ * <br>
+ * 表现对象：{@code Histogram tick, Histogram dispatch, Histogram register, Histogram step, Histogram flow, long overBudget,
+ * Histogram routesPerTick, LongAdder routes, LongAdder expanded, Histogram expandedPerRoute, long pending,
+ * LongAdder registrations, Histogram registrationsPerRequest, long taken, long missed, long rechosen,
+ * AtomicLongArray statuses, long routesAtTick, Metrics metrics; }
+ * 分别表示时间片耗时及其中分派，抢单，运行出租车，更新车流各阶段耗时的直方图（纳秒），超过{@code BUDGET}的时间片数，
+ * 每个时间片的最短路查询次数，最短路查询总数，展开路口总数，每次查询展开路口数的直方图，待分派请求数，抢单总数，
+ * 每个请求到期时的抢单数直方图，分派成功数，无车可派数，因被其他分片抢先而重新选车的次数，各状态的出租车数，
+ * 上一个时间片结束时的查询总数，和指标单例。
+ * <br>
+ * 调度线程在时间片各阶段之间记录耗时，分派阶段包括执行收件箱中的用户操作和投放回放的请求，{@link CityMap}在每次最短路查询后记录展开的路口数，{@link Request}记录抢单数。
+ * {@link #snapshot()}返回按名称排列的当前值，{@link #startDump(String, long)}启动后台线程按固定间隔把快照追加到文件，
+ * 每行一个快照，格式为空格分隔的{@code name=value}。时间单位为纳秒。
+ * <br>
+ * 抽象函数：{@code AF(c) = (name -> value); }
+ * 表示每个指标名到当前值的映射。
+ * <br>
+ * 不定式：{@code statuses.length() == TaxiStatus.values().length && overBudget >= 0 && taken >= 0 && missed >= 0;}
+ */
+public class Metrics {
+	public static final long BUDGET = 100_000_000L;
+	private static final Metrics metrics = new Metrics();
+	private final Histogram tick = new Histogram();
+	private final Histogram dispatch = new Histogram();
+	private final Histogram register = new Histogram();
+	private final Histogram step = new Histogram();
+	private final Histogram flow = new Histogram();
+	private volatile long overBudget = 0;
+	private final Histogram routesPerTick = new Histogram();
+	private final LongAdder routes = new LongAdder();
+	private final LongAdder expanded = new LongAdder();
+	private final Histogram expandedPerRoute = new Histogram();
+	private volatile long pending = 0;
+	private final LongAdder registrations = new LongAdder();
+	private final Histogram registrationsPerRequest = new Histogram();
+	private volatile long taken = 0;
+	private volatile long missed = 0;
+	private volatile long rechosen = 0;
+	private final AtomicLongArray statuses = new AtomicLongArray(TaxiStatus.values().length);
+	private long routesAtTick = 0;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回指标单例。单例在类加载时创建，并行运行的出租车查询最短路时调用该方法不需要加锁。<br>
+	 *
+	 * @return 指标单例。
+	 */
+	public static Metrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Requires:传入一个时间片中分派，抢单，运行出租车，更新车流四个阶段的耗时，单位为纳秒，只能在调度线程中调用。<br>
+	 * Modifies:修改各阶段耗时的直方图，超时时间片数和每个时间片的查询次数。<br>
+	 * Effects:记录一个时间片，总耗时为四个阶段之和，超过{@code BUDGET}时计入超时。<br>
+	 *
+	 * @param dispatchNanos 分派阶段耗时。
+	 * @param registerNanos 抢单阶段耗时。
+	 * @param stepNanos     运行出租车阶段耗时。
+	 * @param flowNanos     更新车流阶段耗时。
+	 */
+	public void tick(long dispatchNanos, long registerNanos, long stepNanos, long flowNanos) {
+		long total = dispatchNanos + registerNanos + stepNanos + flowNanos;
+		tick.record(total);
+		dispatch.record(dispatchNanos);
+		register.record(registerNanos);
+		step.record(stepNanos);
+		flow.record(flowNanos);
+		if (total > BUDGET) overBudget++;
+		long now = routes.sum();
+		routesPerTick.record(now - routesAtTick);
+		routesAtTick = now;
+	}
+
+	/**
+	 * Requires:传入一次最短路查询展开的路口数，可以被多个线程同时调用。<br>
+	 * Modifies:修改查询总数，展开路口总数和直方图。<br>
+	 * Effects:记录一次最短路查询。<br>
+	 *
+	 * @param nodes 展开的路口数。
+	 */
+	public void route(int nodes) {
+		routes.increment();
+		expanded.add(nodes);
+		expandedPerRoute.record(nodes);
+	}
+
+	/**
+	 * Requires:无，可以被多个线程同时调用。<br>
+	 * Modifies:修改抢单总数。<br>
+	 * Effects:记录一次抢单。<br>
+	 */
+	public void register() {
+		registrations.increment();
+	}
+
+	/**
+	 * Requires:传入到期的请求，是否分派成功，以及是否因被其他分片抢先而重新选车，只能在调度线程中调用。<br>
+	 * Modifies:修改分派计数和每个请求的抢单数直方图。<br>
+	 * Effects:记录一个请求的分派结果。<br>
+	 *
+	 * @param request  到期的请求。
+	 * @param success  是否分派成功。
+	 * @param rechosen 是否重新选车。
+	 */
+	public void dispatch(Request request, boolean success, boolean rechosen) {
+		registrationsPerRequest.record(request.getRegistrations());
+		if (success) taken++;
+		else missed++;
+		if (rechosen) this.rechosen++;
+	}
+
+	/**
+	 * Requires:传入待分派请求数和各状态的出租车数（按{@link TaxiStatus}序号排列），只能在调度线程中调用。<br>
+	 * Modifies:修改待分派请求数和出租车状态分布。<br>
+	 * Effects:更新时间片结束时的队列深度和出租车状态分布。<br>
+	 *
+	 * @param pending  待分派请求数。
+	 * @param statuses 各状态的出租车数。
+	 */
+	public void gauge(int pending, int[] statuses) {
+		this.pending = pending;
+		for (int i = 0; i < statuses.length; i++) this.statuses.set(i, statuses[i]);
+	}
+
+	/**
+	 * Requires:无，可以在任意线程中调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回所有指标当前值的快照，按名称分组排列。直方图给出次数，平均值，p50，p99，p999和最大值。<br>
+	 *
+	 * @return 指标名到当前值的映射。
+	 */
+	public Map<String, Long> snapshot() {
+		LinkedHashMap<String, Long> values = new LinkedHashMap<>();
+		values.put("time", MyTimer.getMyTimer().getTime());
+		put(values, "tick", tick);
+		values.put("tick.overBudget", overBudget);
+		put(values, "tick.dispatch", dispatch);
+		put(values, "tick.register", register);
+		put(values, "tick.step", step);
+		put(values, "tick.flow", flow);
+		values.put("route.queries", routes.sum());
+		values.put("route.expanded", expanded.sum());
+		put(values, "route.perTick", routesPerTick);
+		put(values, "route.expandedPerQuery", expandedPerRoute);
+		values.put("queue.depth", pending);
+		values.put("register.total", registrations.sum());
+		put(values, "register.perRequest", registrationsPerRequest);
+		values.put("dispatch.taken", taken);
+		values.put("dispatch.missed", missed);
+		values.put("dispatch.rechosen", rechosen);
+		for (TaxiStatus status : TaxiStatus.values()) values.put("taxi." + status, statuses.get(status.ordinal()));
+		return values;
+	}
+
+	private static void put(Map<String, Long> values, String name, Histogram histogram) {
+		values.put(name + ".count", histogram.getCount());
+		values.put(name + ".mean", histogram.getMean());
+		values.put(name + ".p50", histogram.getPercentile(50));
+		values.put(name + ".p99", histogram.getPercentile(99));
+		values.put(name + ".p999", histogram.getPercentile(99.9));
+		values.put(name + ".max", histogram.getMax());
+	}
+
+	/**
+	 * Requires:传入输出文件名和一个正整数表示真实时间的间隔，单位为毫秒。<br>
+	 * Modifies:打开文件，新建并启动后台写出线程。<br>
+	 * Effects:每隔一个间隔把当前快照作为一行追加到文件。<br>
+	 *
+	 * @param fileName 输出文件名。
+	 * @param interval 间隔。
+	 *
+	 * @throws IOException 打开文件异常。
+	 */
+	public void startDump(String fileName, long interval) throws IOException {
+		if (interval <= 0) throw new IllegalArgumentException("metrics interval must be positive");
+		PrintStream out = new PrintStream(new FileOutputStream(fileName, true), true);
+		Thread dumper = new Thread(() -> {
+			StringBuilder line = new StringBuilder();
+			while (true) {
+				try {
+					Thread.sleep(interval);
+				} catch (InterruptedException e) {
+					return;
+				}
+				line.setLength(0);
+				for (Map.Entry<String, Long> entry : snapshot().entrySet())
+					line.append(line.length() == 0 ? "" : " ").append(entry.getKey()).append('=').append(entry.getValue());
+				out.println(line);
+			}
+		}, "metrics-dump");
+		dumper.setDaemon(true);
+		dumper.start();
+	}
+
+	public boolean repOk() {
+		return statuses.length() == TaxiStatus.values().length && overBudget >= 0 && taken >= 0 && missed >= 0;
+	}
+}
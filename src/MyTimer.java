@@ -1,46 +1,87 @@
+import java.util.concurrent.TimeUnit;
+
 /**
  * Overview:
  * The {@code MyTimer} class implements the encapsulation of the timer.
  * <br>
- * 表现对象：{@code long time, MyTimer myTimer; }
- * 表现了计时器的计时，和计时器单例。
+ * 表现对象：{@code long time, double speedUp, MyTimer myTimer; }
+ * 表现了计时器的计时，模拟时间相对真实时间的加速倍数，和计时器单例。加速倍数为{@code FASTEST}时时间片之间不等待。
  * <br>
  * 抽象函数：{@code AF(x) = (Timer); }
  * 表现了计时器实例。
  * <br>
- * 不定式：{@code myTimer != null;}
+ * 不定式：{@code myTimer != null && speedUp > 0;}
  */
 public class MyTimer {
-	private static long time = 0;
-	private static MyTimer myTimer;
+	public static final double FASTEST = Double.POSITIVE_INFINITY;
+	public static final long TICK = 100;
+	private static volatile long time = 0;
+	private static volatile double speedUp = 1;
+	private static final MyTimer myTimer = new MyTimer();
 
 	private MyTimer() {
 	}
 
 	/**
 	 * Requires:无。<br>
-	 * Modifies:如果自身单例不存在，新建自身单例，若存在则无修改。<br>
-	 * Effects:返回计时器单例。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回计时器单例。单例在类加载时创建，并行运行的出租车读取时间时不需要加锁。<br>
 	 *
 	 * @return 计时器单例。
 	 */
-	public synchronized static MyTimer getMyTimer() {
-		if (myTimer == null) myTimer = new MyTimer();
+	public static MyTimer getMyTimer() {
 		return myTimer;
 	}
 
 	/**
-	 * Requires:无。<br>
+	 * Requires:只能在调度线程中调用。<br>
 	 * Modifies:修改time加100。<br>
-	 * Effects:计时器加100ms。<br>
+	 * Effects:按照加速倍数等待相应的真实时间后，计时器加100ms。加速倍数为{@code FASTEST}时不等待。<br>
 	 */
-	public synchronized void count() {
-		try {
-			Thread.sleep(100);
-		} catch (InterruptedException e) {
-			e.printStackTrace();
+	public void count() {
+		if (speedUp != FASTEST) {
+			try {
+				TimeUnit.NANOSECONDS.sleep((long) (TimeUnit.MILLISECONDS.toNanos(TICK) / speedUp));
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
 		}
-		time += 100;
+		time += TICK;
+	}
+
+	/**
+	 * Requires:传入一个正数，或者{@code FASTEST}。<br>
+	 * Modifies:修改加速倍数。<br>
+	 * Effects:设置模拟时间相对真实时间的加速倍数，1表示实时运行，{@code FASTEST}表示尽可能快地运行。<br>
+	 *
+	 * @param speedUp 加速倍数。
+	 */
+	public void setSpeedUp(double speedUp) {
+		if (!(speedUp > 0)) throw new IllegalArgumentException("speed up must be positive");
+		MyTimer.speedUp = speedUp;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回模拟时间相对真实时间的加速倍数。<br>
+	 *
+	 * @return 加速倍数。
+	 */
+	public double getSpeedUp() {
+		return speedUp;
+	}
+
+	/**
+	 * Requires:传入一个非负的模拟时间，单位为ms，不能与调度线程同时调用。<br>
+	 * Modifies:修改time。<br>
+	 * Effects:把计时器设为该时间，用于从快照恢复。<br>
+	 *
+	 * @param time 模拟时间。
+	 */
+	public void setTime(long time) {
+		if (time < 0) throw new IllegalArgumentException("time must be non-negative");
+		MyTimer.time = time;
 	}
 
 	/**
@@ -50,7 +91,7 @@ public class MyTimer {
 	 *
 	 * @return 计时器当前时间。
 	 */
-	public synchronized long getTime() {
+	public long getTime() {
 		return time;
 	}
 
@@ -67,6 +108,6 @@ public class MyTimer {
 	}
 
 	public boolean repOk() {
-		return myTimer != null;
+		return myTimer != null && speedUp > 0;
 	}
 }
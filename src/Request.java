@@ -1,43 +1,66 @@
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.List;
 import java.util.Vector;
-import java.util.stream.Collectors;
 
 /**
  * Overview:
  * The {@code Request} class implements the encapsulation of passenger requests.
  * <br>
- * 表现对象：{@code CityCross start, CityCross end, long startTime, Vector<Taxi> taxis; }
- * 表现了请求的发出地和目的地还有请求的发出时间和候选出租车队列。
+ * 表现对象：{@code CityCross start, CityCross end, long startTime, Vector<Taxi> taxis, BitSet registered, int registrations; }
+ * 表现了请求的发出地和目的地还有请求的发出时间和候选出租车队列，以出租车id索引的抢单标记，以及抢单的出租车总数。
  * <br>
  * 抽象函数：{@code AF(c) = (start,end,startTime); }
  * 表现了请求的发出地和目的地和发出时间。
  * <br>
- * 不定式：{@code !(start.getX() == end.getX() && start.getY() == end.getY()) && !(start.getX() < 0 || start.getY() < 0 || end.getX() < 0 || end.getY() < 0 || start.getX() > 79 || start.getY() > 79 || end.getX() > 79 || end.getY() > 79);}
+ * 不定式：{@code !(start.getX() == end.getX() && start.getY() == end.getY()) && start.repOk() && end.repOk();}
+ * 起止点是否在地图范围内在构造时由{@link CityMap#contains(CityCross)}检查。
  */
 public class Request {
 	private CityCross start, end;
 	private long startTime;
 	private Vector<Taxi> taxis = new Vector<>();
+	private BitSet registered = new BitSet();
+	private int registrations = 0;
 
 	/**
-	 * Requires:四个整数，前两个表示起始点的坐标，后两个表示目的地的坐标。<br>
+	 * Requires:四个整数，前两个表示起始点的坐标，后两个表示目的地的坐标，以及请求所在的城市地图。<br>
 	 * Modifies:修改属性中的起始地和目的地，记录请求发出时间。<br>
-	 * Effects:初始化该对象。<br>
+	 * Effects:初始化该对象，发出时间为当前时间。起止点不在地图内，相同，或者之间无路可达时抛出异常。<br>
 	 *
 	 * @param sx 起始地x坐标。
 	 * @param sy 起始地y坐标。
 	 * @param ex 目的地x坐标。
 	 * @param ey 目的地y坐标。
+	 * @param cityMap 请求所在的城市地图。
 	 *
 	 * @throws Exception 异常。
 	 */
-	public Request(int sx, int sy, int ex, int ey) throws Exception {
-		if (sx == ex && sy == ey) throw new Exception("wrong request");
-		if (sx < 0 || sy < 0 || ex < 0 || ey < 0 || sx > 79 || sy > 79 || ex > 79 || ey > 79)
-			throw new Exception("wrong request");
-		this.start = new CityCross(sx, sy);
-		this.end = new CityCross(ex, ey);
-		this.startTime = MyTimer.getMyTimer().getTime();
+	public Request(int sx, int sy, int ex, int ey, CityMap cityMap) throws Exception {
+		this(sx, sy, ex, ey, cityMap, MyTimer.getMyTimer().getTime());
+	}
+
+	/**
+	 * Requires:四个整数，前两个表示起始点的坐标，后两个表示目的地的坐标，请求所在的城市地图，以及请求发出时间。<br>
+	 * Modifies:修改属性中的起始地和目的地，记录请求发出时间。<br>
+	 * Effects:初始化该对象。起止点不在地图内，相同，或者之间无路可达时抛出说明原因的异常。<br>
+	 *
+	 * @param sx        起始地x坐标。
+	 * @param sy        起始地y坐标。
+	 * @param ex        目的地x坐标。
+	 * @param ey        目的地y坐标。
+	 * @param cityMap   请求所在的城市地图。
+	 * @param startTime 请求发出时间，单位为毫秒。
+	 *
+	 * @throws Exception 异常。
+	 */
+	public Request(int sx, int sy, int ex, int ey, CityMap cityMap, long startTime) throws Exception {
+		if (sx == ex && sy == ey) throw new Exception("wrong request: start equals end");
+		if (!cityMap.contains(sx, sy) || !cityMap.contains(ex, ey)) throw new Exception("wrong request: out of map");
+		this.start = cityMap.cross(sx, sy);
+		this.end = cityMap.cross(ex, ey);
+		if (!cityMap.reachable(start, end, false) && !cityMap.reachable(start, end, true)) throw new Exception("unreachable request");
+		this.startTime = startTime;
 	}
 
 	/**
@@ -50,35 +73,120 @@ public class Request {
 	 * @return 是否能抢单。
 	 */
 	public boolean canRegister(Taxi taxi) {
-		return !taxis.contains(taxi) && !(Math.abs(taxi.getStayCityCross().getX() - start.getX()) > 2 || Math.abs(taxi.getStayCityCross().getY() - start.getY()) > 2);
+		return !registered.get(taxi.getId()) && !(Math.abs(taxi.getStayCityCross().getX() - start.getX()) > 2 || Math.abs(taxi.getStayCityCross().getY() - start.getY()) > 2);
 	}
 
 	/**
 	 * Requires:传入一个出租车对象。<br>
-	 * Modifies:将出租车添加进候选列表。<br>
+	 * Modifies:将出租车添加进候选列表，记录抢单标记和抢单数。<br>
 	 * Effects:实现出租车抢单。<br>
 	 *
 	 * @param taxi 抢单的出租车。
 	 */
 	public void register(Taxi taxi) {
 		taxis.add(taxi);
+		registered.set(taxi.getId());
+		registrations++;
 		taxi.addCredit(1);
+		Metrics.getMetrics().register();
 	}
 
 	/**
 	 * Requires:无。<br>
-	 * Modifies:将候选列表里的不合格的出租车清除。<br>
+	 * Modifies:将候选列表里不在等待，或者无法到达请求发出地和目的地的出租车清除。<br>
+	 * Effects:返回仍然合格的候选出租车的只读列表，按抢单顺序排列。<br>
+	 *
+	 * @return 候选出租车列表。
+	 */
+	public List<Taxi> getCandidates() {
+		prune();
+		return Collections.unmodifiableList(taxis);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:将候选列表里不在等待，或者无法到达请求发出地和目的地的出租车清除。<br>
 	 * Effects:如果没有可选出租车，则返回null，如果存在可选出租车则返回离请求发出点最近的一辆出租车。若存在多辆距离最近的车，则随机返回一辆。<br>
 	 *
 	 * @return 被选中的出租车。
 	 */
 	public Taxi chooseTheTaxi() {
-		taxis.removeAll(taxis.stream().filter(taxi -> !taxi.isWaiting()).collect(Collectors.toList()));
+		prune();
 		if (taxis.isEmpty()) return null;
 		Collections.sort(taxis, (o1, o2) -> o2.getCredit() - o1.getCredit() != 0 ? o2.getCredit() - o1.getCredit() : o1.howFar(start) - o2.howFar(start));
 		return taxis.get(0);
 	}
 
+	private void prune() {
+		taxis.removeIf(taxi -> !taxi.isWaiting() || !taxi.canReach(start) || !taxi.canReach(end));
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:按抢单顺序返回候选列表中出租车的id，不清除不合格的出租车。<br>
+	 *
+	 * @return 候选出租车id。
+	 */
+	public int[] getCandidateIds() {
+		synchronized (taxis) {
+			int[] ids = new int[taxis.size()];
+			for (int i = 0; i < ids.length; i++) ids[i] = taxis.get(i).getId();
+			return ids;
+		}
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回抢过该请求的出租车id位图，格式同{@link BitSet#toLongArray()}。<br>
+	 *
+	 * @return 抢单标记。
+	 */
+	public long[] getRegisteredIds() {
+		return registered.toLongArray();
+	}
+
+	private Request(CityCross start, CityCross end, long startTime) {
+		this.start = start;
+		this.end = end;
+		this.startTime = startTime;
+	}
+
+	/**
+	 * Requires:传入快照中请求的起止点，发出时间，候选出租车列表，抢单标记和抢单数。<br>
+	 * Modifies:无，不修改出租车的信誉度。<br>
+	 * Effects:返回与快照中状态相同的请求。请求在保存时已经合法，因此不再检查起止点和可达性，
+	 * 之后关闭的道路不会使恢复失败。<br>
+	 *
+	 * @param start         发出地。
+	 * @param end           目的地。
+	 * @param startTime     请求发出时间，单位为毫秒。
+	 * @param candidates    候选出租车列表。
+	 * @param registeredIds 抢单标记，格式同{@link BitSet#toLongArray()}。
+	 * @param registrations 抢单数。
+	 *
+	 * @return 恢复的请求。
+	 */
+	static Request restore(CityCross start, CityCross end, long startTime, List<Taxi> candidates, long[] registeredIds, int registrations) {
+		Request request = new Request(start, end, startTime);
+		request.taxis = new Vector<>(candidates);
+		request.registered = BitSet.valueOf(registeredIds);
+		request.registrations = registrations;
+		return request;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回抢过该请求的出租车总数，包括之后被清除出候选列表的出租车。<br>
+	 *
+	 * @return 抢单数。
+	 */
+	public int getRegistrations() {
+		return registrations;
+	}
+
 	/**
 	 * Requires:无。<br>
 	 * Modifies:无。<br>
@@ -129,6 +237,6 @@ public class Request {
 	}
 
 	public boolean repOk() {
-		return !(start.getX() == end.getX() && start.getY() == end.getY()) && !(start.getX() < 0 || start.getY() < 0 || end.getX() < 0 || end.getY() < 0 || start.getX() > 79 || start.getY() > 79 || end.getX() > 79 || end.getY() > 79);
+		return !(start.getX() == end.getX() && start.getY() == end.getY()) && start.repOk() && end.repOk();
 	}
 }
@@ -0,0 +1,167 @@
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Overview:
+ * The {@code RequestQueue} class implements the pending requests ordered by their dispatch deadline.
+ * <br>
+ * 表现对象：{@code int x0, int y0, int rows, int cols, ArrayList<Request>[] wheel, long cursor, ArrayList<Request>[] cells, int size; }
+ * 分别表示所管辖矩形区域左上角的坐标，区域行数，区域列数，按到期时间片散列的时间轮，下一个待检查的时间片，按发出地索引的请求，以及请求总数。
+ * <br>
+ * 请求在发出{@code WINDOW}毫秒后到期分派。时间轮每个槽对应一个时间片，请求放入其到期时间片所在的槽，
+ * 每个时间片只检查从上次检查到当前时间之间的槽，因此只会访问到期的请求；到期时间超出一圈的请求留在槽中等待下一圈。
+ * 同一槽中的请求保持加入顺序。按发出地路口索引的请求用于从出租车出发查找附近的请求。
+ * 同一实例同一时间只能被一个线程使用。
+ * <br>
+ * 抽象函数：{@code AF(c) = (pending requests in deadline order); }
+ * 表示按到期时间排列的待分派请求。
+ * <br>
+ * 不定式：{@code wheel.length == SLOTS && cells.length == rows * cols && size >= 0;}
+ */
+public class RequestQueue {
+	public static final long WINDOW = 3000;
+	private static final int SLOTS = 64;
+	private final int x0;
+	private final int y0;
+	private final int rows;
+	private final int cols;
+	private final ArrayList<Request>[] wheel;
+	private long cursor = 0;
+	private final ArrayList<Request>[] cells;
+	private int size = 0;
+
+	/**
+	 * Requires:传入地图的行数和列数。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化一个管辖整张地图的空请求队列。<br>
+	 *
+	 * @param rows 地图行数。
+	 * @param cols 地图列数。
+	 */
+	public RequestQueue(int rows, int cols) {
+		this(0, 0, rows, cols);
+	}
+
+	/**
+	 * Requires:传入矩形区域左上角的坐标，区域的行数和列数。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化一个空的请求队列，只能加入发出地在该区域内的请求。<br>
+	 *
+	 * @param x0   区域左上角x坐标。
+	 * @param y0   区域左上角y坐标。
+	 * @param rows 区域行数。
+	 * @param cols 区域列数。
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public RequestQueue(int x0, int y0, int rows, int cols) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.rows = rows;
+		this.cols = cols;
+		this.wheel = new ArrayList[SLOTS];
+		for (int i = 0; i < SLOTS; i++) wheel[i] = new ArrayList<>();
+		this.cells = new ArrayList[rows * cols];
+	}
+
+	/**
+	 * Requires:传入一个发出地在区域内的请求。<br>
+	 * Modifies:修改时间轮和发出地索引。<br>
+	 * Effects:加入请求，已经过期的请求在下一次{@link #pollDue(long, Consumer)}时到期。<br>
+	 *
+	 * @param request 新请求。
+	 */
+	public void add(Request request) {
+		long slot = Math.max(cursor, Math.floorDiv(deadline(request) + MyTimer.TICK - 1, MyTimer.TICK));
+		wheel[(int) (slot & (SLOTS - 1))].add(request);
+		int cell = cell(request.getStart());
+		if (cells[cell] == null) cells[cell] = new ArrayList<>(2);
+		cells[cell].add(request);
+		size++;
+	}
+
+	/**
+	 * Requires:传入当前模拟时间和对到期请求的操作。<br>
+	 * Modifies:移除所有到期的请求。<br>
+	 * Effects:按到期时间顺序对所有到期时间不晚于当前时间的请求执行该操作，到期时间相同的按加入顺序。<br>
+	 *
+	 * @param now    当前模拟时间。
+	 * @param action 对到期请求的操作。
+	 */
+	public void pollDue(long now, Consumer<Request> action) {
+		long last = Math.floorDiv(now, MyTimer.TICK);
+		if (last - cursor >= SLOTS) cursor = last - SLOTS + 1;
+		for (; cursor <= last; cursor++) {
+			ArrayList<Request> slot = wheel[(int) (cursor & (SLOTS - 1))];
+			if (slot.isEmpty()) continue;
+			int kept = 0;
+			for (int i = 0; i < slot.size(); i++) {
+				Request request = slot.get(i);
+				if (deadline(request) > now) slot.set(kept++, request);
+				else {
+					unindex(request);
+					action.accept(request);
+				}
+			}
+			slot.subList(kept, slot.size()).clear();
+		}
+	}
+
+	/**
+	 * Requires:传入一个合法的路口，一个非负的半径和一个对请求的操作。<br>
+	 * Modifies:无。<br>
+	 * Effects:对发出地横纵坐标与该路口相差都不超过半径的所有待分派请求执行该操作，该路口可以在区域外。<br>
+	 *
+	 * @param center 中心路口。
+	 * @param radius 半径。
+	 * @param action 对请求的操作。
+	 */
+	public void forEachNear(CityCross center, int radius, Consumer<Request> action) {
+		for (int x = Math.max(0, center.getX() - x0 - radius); x <= Math.min(rows - 1, center.getX() - x0 + radius); x++)
+			for (int y = Math.max(0, center.getY() - y0 - radius); y <= Math.min(cols - 1, center.getY() - y0 + radius); y++) {
+				ArrayList<Request> cell = cells[x * cols + y];
+				if (cell != null) for (int i = 0; i < cell.size(); i++) action.accept(cell.get(i));
+			}
+	}
+
+	/**
+	 * Requires:传入一个对请求的操作。<br>
+	 * Modifies:无。<br>
+	 * Effects:对所有待分派请求执行该操作。<br>
+	 *
+	 * @param action 对请求的操作。
+	 */
+	public void forEach(Consumer<Request> action) {
+		for (ArrayList<Request> slot : wheel) for (int i = 0; i < slot.size(); i++) action.accept(slot.get(i));
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回待分派请求数。<br>
+	 *
+	 * @return 待分派请求数。
+	 */
+	public int size() {
+		return size;
+	}
+
+	private static long deadline(Request request) {
+		return request.getStartTime() + WINDOW;
+	}
+
+	private int cell(CityCross cityCross) {
+		return (cityCross.getX() - x0) * cols + cityCross.getY() - y0;
+	}
+
+	private void unindex(Request request) {
+		ArrayList<Request> cell = cells[cell(request.getStart())];
+		int i = cell.indexOf(request);
+		cell.set(i, cell.get(cell.size() - 1));
+		cell.remove(cell.size() - 1);
+		size--;
+	}
+
+	public boolean repOk() {
+		return wheel.length == SLOTS && cells.length == rows * cols && size >= 0;
+	}
+}
@@ -0,0 +1,279 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Overview:
+ * The {@code RequestTrace} class implements the incremental reader of a timestamped request trace.
+ * <br>
+ * 文本格式每行一条记录{@code time,sx,sy,ex,ey}，time为相对回放开始的毫秒数，空行和以#开头的行被忽略。
+ * 二进制格式（大端序）以{@code int MAGIC, short VERSION, short 0}共8字节的文件头开始，之后每条记录为{@code long time, int sx, int sy, int ex, int ey}共24字节。
+ * 读入时根据文件头自动识别格式，每次只读一条记录。
+ * <br>
+ * 表现对象：{@code BufferedReader text, DataInputStream binary, long record, long time, int sx, int sy, int ex, int ey, String raw, String error; }
+ * 分别表示文本输入，二进制输入，当前记录编号，当前记录的时间，起止坐标，原始文本（二进制格式为null）和格式错误。
+ * 二进制记录只解码字段，只有调用{@link #getRaw()}时才转换为文本，避免为每条记录生成字符串。
+ * <br>
+ * 抽象函数：{@code AF(c) = (records[record]); }
+ * 表示已读到的当前记录。
+ * <br>
+ * 不定式：{@code (text == null) != (binary == null) && record >= 0;}
+ */
+public class RequestTrace implements Closeable {
+	public static final int MAGIC = 0x54585251;
+	public static final short VERSION = 1;
+	private final BufferedReader text;
+	private final DataInputStream binary;
+	private long record = 0;
+	private long time;
+	private int sx, sy, ex, ey;
+	private String raw;
+	private String error;
+
+	/**
+	 * Requires:传入一个存在的轨迹文件名。<br>
+	 * Modifies:打开文件。<br>
+	 * Effects:根据文件头选择文本或二进制格式，二进制文件版本不支持时抛出异常。<br>
+	 *
+	 * @param fileName 轨迹文件名。
+	 *
+	 * @throws IOException 打开文件异常或版本不支持。
+	 */
+	public RequestTrace(String fileName) throws IOException {
+		BufferedInputStream in = new BufferedInputStream(new FileInputStream(fileName), 1 << 16);
+		in.mark(8);
+		DataInputStream header = new DataInputStream(in);
+		boolean isBinary;
+		try {
+			isBinary = header.readInt() == MAGIC;
+		} catch (EOFException e) {
+			isBinary = false;
+		}
+		in.reset();
+		if (isBinary) {
+			binary = new DataInputStream(in);
+			binary.readInt();
+			short version = binary.readShort();
+			binary.readShort();
+			if (version != VERSION) {
+				in.close();
+				throw new IOException(fileName + ": unsupported version " + version);
+			}
+			text = null;
+		} else {
+			text = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+			binary = null;
+		}
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:读入下一条记录，更新当前记录。<br>
+	 * Effects:若还有记录返回true，文件结束时返回false。格式错误的记录同样返回true，此时{@link #getError()}不为null。<br>
+	 *
+	 * @return 是否读到记录。
+	 *
+	 * @throws IOException 读文件异常。
+	 */
+	public boolean next() throws IOException {
+		error = null;
+		if (binary != null) {
+			try {
+				time = binary.readLong();
+			} catch (EOFException e) {
+				return false;
+			}
+			try {
+				sx = binary.readInt();
+				sy = binary.readInt();
+				ex = binary.readInt();
+				ey = binary.readInt();
+			} catch (EOFException e) {
+				error = "truncated record";
+			}
+			record++;
+			return true;
+		}
+		for (String line = text.readLine(); line != null; line = text.readLine()) {
+			record++;
+			raw = line.trim();
+			if (raw.isEmpty() || raw.startsWith("#")) continue;
+			String[] fields = raw.split(",");
+			if (fields.length != 5) {
+				error = "expected 5 fields";
+				return true;
+			}
+			try {
+				time = Long.parseLong(fields[0].trim());
+				sx = Integer.parseInt(fields[1].trim());
+				sy = Integer.parseInt(fields[2].trim());
+				ex = Integer.parseInt(fields[3].trim());
+				ey = Integer.parseInt(fields[4].trim());
+			} catch (NumberFormatException e) {
+				error = "bad number";
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录编号，文本格式为行号，二进制格式为记录序号，从1开始。<br>
+	 *
+	 * @return 当前记录编号。
+	 */
+	public long getRecord() {
+		return record;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录相对回放开始的时间，单位为毫秒。<br>
+	 *
+	 * @return 当前记录的时间。
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的起始地x坐标。<br>
+	 *
+	 * @return 当前记录的起始地x坐标。
+	 */
+	public int getSx() {
+		return sx;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的起始地y坐标。<br>
+	 *
+	 * @return 当前记录的起始地y坐标。
+	 */
+	public int getSy() {
+		return sy;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的目的地x坐标。<br>
+	 *
+	 * @return 当前记录的目的地x坐标。
+	 */
+	public int getEx() {
+		return ex;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的目的地y坐标。<br>
+	 *
+	 * @return 当前记录的目的地y坐标。
+	 */
+	public int getEy() {
+		return ey;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的原始文本，二进制记录在调用时转换为文本格式。<br>
+	 *
+	 * @return 当前记录的原始文本。
+	 */
+	public String getRaw() {
+		return binary != null ? format(time, sx, sy, ex, ey) : raw;
+	}
+
+	/**
+	 * Requires:传入一条记录的时间和起止坐标。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该记录的文本格式{@code time,sx,sy,ex,ey}。<br>
+	 *
+	 * @param time 记录时间。
+	 * @param sx   起始地x坐标。
+	 * @param sy   起始地y坐标。
+	 * @param ex   目的地x坐标。
+	 * @param ey   目的地y坐标。
+	 *
+	 * @return 该记录的文本。
+	 */
+	public static String format(long time, int sx, int sy, int ex, int ey) {
+		return time + "," + sx + "," + sy + "," + ex + "," + ey;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前记录的格式错误，格式正确时返回null。<br>
+	 *
+	 * @return 当前记录的格式错误。
+	 */
+	public String getError() {
+		return error;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (text != null) text.close();
+		else binary.close();
+	}
+
+	/**
+	 * Requires:传入文本轨迹文件名和输出的二进制文件名。<br>
+	 * Modifies:写入二进制文件。<br>
+	 * Effects:把文本格式的轨迹转换为二进制格式，跳过格式错误的记录并在标准错误中报告。<br>
+	 *
+	 * @param args 命令行参数。
+	 *
+	 * @throws IOException 读写文件异常。
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("usage: RequestTrace trace.csv trace.bin");
+			System.exit(2);
+		}
+		long written = 0;
+		try (RequestTrace trace = new RequestTrace(args[0]);
+		     DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeShort(VERSION);
+			out.writeShort(0);
+			while (trace.next()) {
+				if (trace.getError() != null) {
+					System.err.println(args[0] + ":" + trace.getRecord() + ": " + trace.getError() + ": " + trace.getRaw());
+					continue;
+				}
+				out.writeLong(trace.getTime());
+				out.writeInt(trace.getSx());
+				out.writeInt(trace.getSy());
+				out.writeInt(trace.getEx());
+				out.writeInt(trace.getEy());
+				written++;
+			}
+		}
+		System.out.println(args[1] + ": " + written + " records");
+	}
+
+	public boolean repOk() {
+		return (text == null) != (binary == null) && record >= 0;
+	}
+}
@@ -0,0 +1,288 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Overview:
+ * The {@code RouteIndex} class implements the encapsulation of the distance index of the city map.
+ * <br>
+ * 表现对象：{@code CityMap cityMap, boolean ifVip, int rows, int cols, AtomicReferenceArray<int[]> distances, int[] cachedTargets, long cachedCount,
+ * ThreadLocal<int[]> buildQueue, int[] queue, int[] stamp, int generation, int[] opened, int openedCount; }
+ * 分别表示所属城市地图，是否为VipTaxi视图，地图行数，地图列数，以终点编号索引的距离表，按建立顺序排列的已缓存终点，已缓存终点数，
+ * 每个线程建立距离表时的BFS队列，修复时的BFS队列，修复时的受影响标记和标记代数，本次修改新开通的道路及其端点数。
+ * <br>
+ * {@link #row(int)}可在多个线程中并发调用：已有的距离表不加锁直接读取，没有时在锁外用当前线程的队列建立，
+ * 只在登记和淘汰时短暂持有该对象的锁，距离表通过{@link AtomicReferenceArray}安全发布。
+ * 修复只由{@link CityMap#markRoad}调用，不能与查询并发。一次修改可能同时关闭或开通路口右方和下方两条道路：
+ * 先按修改前的距离找出所有因关闭而失去父路口的起点，一起增量修复，修复时不经过新开通的道路，再从新开通的道路出发降低距离。
+ * 逐条修复关闭的道路是错误的，第一次修复改变的距离会使第二条道路的检查漏掉其子树。
+ * <br>
+ * 已缓存距离表的总格数不超过构造时给定的上限，超出时淘汰最早建立的距离表，因此大地图上内存占用有界。
+ * 每格是一个int，上限为n格时距离表最多占用{@code 4 * n}字节，另加{@code 4 * rows * cols}字节的下标表。
+ * 默认上限{@link #DEFAULT_CACHE_CELLS}取自系统属性{@code routeindex.cacheCells}，未设置时为{@code 1 << 24}格，即每个视图约64MB；
+ * 每张{@link CityMap}有普通出租车和VipTaxi两个视图，因此共约128MB。
+ * <br>
+ * 抽象函数：{@code AF(c) = (target -> (source -> distance)); }
+ * 表示每个已计算终点到城市中所有路口的最短距离，-1表示不可达。
+ * <br>
+ * 不定式：{@code cityMap != null && distances.length == rows * cols && queue.length == rows * cols && cachedTargets.length > 0;}
+ */
+public class RouteIndex {
+	public static final long DEFAULT_CACHE_CELLS = Long.getLong("routeindex.cacheCells", 1 << 24);
+	private final CityMap cityMap;
+	private final boolean ifVip;
+	private final int rows;
+	private final int cols;
+	private final AtomicReferenceArray<int[]> distances;
+	private final int[] cachedTargets;
+	private long cachedCount = 0;
+	private final ThreadLocal<int[]> buildQueue;
+	private final int[] queue;
+	private final int[] stamp;
+	private int generation = 0;
+	private final int[] opened = new int[4];
+	private int openedCount = 0;
+
+	/**
+	 * Requires:传入一个不为空的城市地图，地图的行数和列数，以及是否为VipTaxi视图。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化该对象，缓存上限为{@link #DEFAULT_CACHE_CELLS}格。<br>
+	 *
+	 * @param cityMap 所属城市地图。
+	 * @param rows    地图行数。
+	 * @param cols    地图列数。
+	 * @param ifVip   是否为VipTaxi视图。
+	 */
+	public RouteIndex(CityMap cityMap, int rows, int cols, boolean ifVip) {
+		this(cityMap, rows, cols, ifVip, DEFAULT_CACHE_CELLS);
+	}
+
+	/**
+	 * Requires:传入一个不为空的城市地图，地图的行数和列数，是否为VipTaxi视图，以及一个正整数表示已缓存距离表的总格数上限。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化该对象，距离表在第一次查询某个终点时按需建立。上限小于一张距离表时仍缓存一张。<br>
+	 *
+	 * @param cityMap    所属城市地图。
+	 * @param rows       地图行数。
+	 * @param cols       地图列数。
+	 * @param ifVip      是否为VipTaxi视图。
+	 * @param cacheCells 已缓存距离表的总格数上限。
+	 */
+	public RouteIndex(CityMap cityMap, int rows, int cols, boolean ifVip, long cacheCells) {
+		if (cacheCells <= 0) throw new IllegalArgumentException("cache cells must be positive");
+		this.cityMap = cityMap;
+		this.rows = rows;
+		this.cols = cols;
+		this.ifVip = ifVip;
+		this.distances = new AtomicReferenceArray<>(rows * cols);
+		this.buildQueue = ThreadLocal.withInitial(() -> new int[rows * cols]);
+		this.cachedTargets = new int[(int) Math.max(1, Math.min(rows * cols, cacheCells / (rows * cols)))];
+		this.queue = new int[rows * cols];
+		this.stamp = new int[rows * cols];
+	}
+
+	/**
+	 * Requires:传入两个合法的路口坐标。<br>
+	 * Modifies:若终点的距离表不存在则建立之。<br>
+	 * Effects:返回起点到终点的最短距离，不可达时返回-1。<br>
+	 *
+	 * @param sx 起点x坐标。
+	 * @param sy 起点y坐标。
+	 * @param ex 终点x坐标。
+	 * @param ey 终点y坐标。
+	 *
+	 * @return 起点到终点的最短距离。
+	 */
+	public int distance(int sx, int sy, int ex, int ey) {
+		return row(ex * cols + ey)[sx * cols + sy];
+	}
+
+	/**
+	 * Requires:传入一个合法的终点编号。可在多个线程中并发调用，但不能与{@link #roadChanged}并发。<br>
+	 * Modifies:若该终点的距离表不存在则建立之，缓存已满时淘汰最早建立的距离表。<br>
+	 * Effects:返回所有路口到该终点的距离表，返回的数组只能读取。<br>
+	 *
+	 * @param target 终点编号，即{@code x * cols + y}。
+	 *
+	 * @return 所有路口到该终点的距离表。
+	 */
+	public int[] row(int target) {
+		int[] distance = distances.get(target);
+		if (distance != null) return distance;
+		distance = build(target, buildQueue.get());
+		synchronized (this) {
+			int[] built = distances.get(target);
+			if (built != null) return built;
+			int slot = (int) (cachedCount % cachedTargets.length);
+			if (cachedCount >= cachedTargets.length) distances.set(cachedTargets[slot], null);
+			cachedTargets[slot] = target;
+			cachedCount++;
+			distances.set(target, distance);
+		}
+		return distance;
+	}
+
+	/**
+	 * Requires:传入被修改的路口坐标，以及修改前后的道路信息。<br>
+	 * Modifies:修复受影响的距离表。<br>
+	 * Effects:检查路口右方和下方两条道路的变化，只对距离可能改变的部分进行增量修复，返回距离发生变化的(起点,终点)对数。<br>
+	 *
+	 * @param x      被修改路口x坐标。
+	 * @param y      被修改路口y坐标。
+	 * @param before 修改前的道路信息。
+	 * @param after  修改后的道路信息。
+	 *
+	 * @return 距离发生变化的(起点,终点)对数。
+	 */
+	public int roadChanged(int x, int y, int before, int after) {
+		int node = x * cols + y, invalidated = 0;
+		boolean rightChanged = y + 1 < cols && hasRight(before) != hasRight(after);
+		boolean downChanged = x + 1 < rows && hasDown(before) != hasDown(after);
+		openedCount = 0;
+		if (rightChanged && hasRight(after)) addOpened(node, node + 1);
+		if (downChanged && hasDown(after)) addOpened(node, node + cols);
+		boolean rightClosed = rightChanged && !hasRight(after), downClosed = downChanged && !hasDown(after);
+		for (int i = 0; i < distances.length(); i++) {
+			int[] distance = distances.get(i);
+			if (distance == null) continue;
+			int sources = 0;
+			if (rightClosed) sources = addSource(distance, node, node + 1, sources);
+			if (downClosed) sources = addSource(distance, node, node + cols, sources);
+			if (sources > 0) invalidated += increase(distance, sources);
+			for (int j = 0; j < openedCount; j += 2) invalidated += open(distance, opened[j], opened[j + 1]);
+		}
+		openedCount = 0;
+		return invalidated;
+	}
+
+	private void addOpened(int u, int v) {
+		opened[openedCount++] = u;
+		opened[openedCount++] = v;
+	}
+
+	private boolean isOpened(int u, int v) {
+		for (int i = 0; i < openedCount; i += 2)
+			if (opened[i] == u && opened[i + 1] == v || opened[i] == v && opened[i + 1] == u) return true;
+		return false;
+	}
+
+	private int addSource(int[] distance, int u, int v, int sources) {
+		if (distance[u] >= 0 && distance[v] == distance[u] + 1) queue[sources++] = v;
+		else if (distance[v] >= 0 && distance[u] == distance[v] + 1) queue[sources++] = u;
+		return sources;
+	}
+
+	private int open(int[] distance, int u, int v) {
+		if (reachedBefore(distance, u, v)) return decrease(distance, v, distance[u] + 1);
+		if (reachedBefore(distance, v, u)) return decrease(distance, u, distance[v] + 1);
+		return 0;
+	}
+
+	private static boolean reachedBefore(int[] distance, int u, int v) {
+		return distance[u] >= 0 && (distance[v] < 0 || distance[v] > distance[u] + 1);
+	}
+
+	private int decrease(int[] distance, int source, int value) {
+		int head = 0, tail = 0;
+		distance[source] = value;
+		queue[tail++] = source;
+		while (head < tail) {
+			int now = queue[head++];
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int next = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (distance[next] >= 0 && distance[next] <= distance[now] + 1) continue;
+				distance[next] = distance[now] + 1;
+				queue[tail++] = next;
+			}
+		}
+		return tail;
+	}
+
+	private int increase(int[] distance, int sources) {
+		generation++;
+		int head = 0, tail = 0;
+		for (int i = 0; i < sources; i++) {
+			if (stamp[queue[i]] == generation) continue;
+			stamp[queue[i]] = generation;
+			queue[tail++] = queue[i];
+		}
+		while (head < tail) {
+			int now = queue[head++];
+			if (hasParent(distance, now)) {
+				stamp[now] = -generation;
+				continue;
+			}
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int next = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (distance[next] != distance[now] + 1 || Math.abs(stamp[next]) == generation || isOpened(now, next)) continue;
+				stamp[next] = generation;
+				queue[tail++] = next;
+			}
+		}
+		int affected = 0, seeds = 0;
+		for (int i = 0; i < tail; i++) if (stamp[queue[i]] == generation) queue[affected++] = queue[i];
+		long[] pending = new long[affected];
+		for (int i = 0; i < affected; i++) {
+			int now = queue[i], best = -1;
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int next = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (stamp[next] == generation || distance[next] < 0 || isOpened(now, next)) continue;
+				if (best < 0 || distance[next] + 1 < best) best = distance[next] + 1;
+			}
+			distance[now] = -1;
+			if (best >= 0) pending[seeds++] = (long) best << 32 | now;
+		}
+		Arrays.sort(pending, 0, seeds);
+		long[] frontier = new long[4 * affected + 1];
+		int seed = 0;
+		head = tail = 0;
+		while (seed < seeds || head < tail) {
+			long entry = head < tail && (seed == seeds || frontier[head] < pending[seed]) ? frontier[head++] : pending[seed++];
+			int now = (int) entry, value = (int) (entry >>> 32);
+			if (distance[now] >= 0) continue;
+			distance[now] = value;
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int next = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (stamp[next] == generation && distance[next] < 0 && !isOpened(now, next)) frontier[tail++] = (long) (value + 1) << 32 | next;
+			}
+		}
+		return affected;
+	}
+
+	private boolean hasParent(int[] distance, int node) {
+		for (int mask = cityMap.neighbours(node, ifVip); mask != 0; mask &= mask - 1) {
+			int next = cityMap.neighbour(node, Integer.numberOfTrailingZeros(mask));
+			if (stamp[next] != generation && distance[next] >= 0 && distance[next] == distance[node] - 1 && !isOpened(node, next)) return true;
+		}
+		return false;
+	}
+
+	private int[] build(int target, int[] queue) {
+		int[] distance = new int[rows * cols];
+		Arrays.fill(distance, -1);
+		int head = 0, tail = 0;
+		distance[target] = 0;
+		queue[tail++] = target;
+		while (head < tail) {
+			int now = queue[head++];
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				int next = cityMap.neighbour(now, Integer.numberOfTrailingZeros(mask));
+				if (distance[next] >= 0) continue;
+				distance[next] = distance[now] + 1;
+				queue[tail++] = next;
+			}
+		}
+		return distance;
+	}
+
+	private static boolean hasRight(int road) {
+		return road == 1 || road == 3;
+	}
+
+	private static boolean hasDown(int road) {
+		return road == 2 || road == 3;
+	}
+
+	public boolean repOk() {
+		return cityMap != null && distances.length() == rows * cols && queue.length == rows * cols && cachedTargets.length > 0;
+	}
+}
@@ -0,0 +1,148 @@
+import java.util.Arrays;
+
+/**
+ * Overview:
+ * The {@code RouteSearch} class implements the point-to-point A* search on the city map.
+ * <br>
+ * 表现对象：{@code int cells, int[] distance, int[] stamp, int[] closed, long[] heap, int heapSize, int generation, int expanded; }
+ * 分别表示地图路口数，到终点的距离，距离的有效代数标记，已展开标记，以{@code f << 32 | node}为键的二叉堆，堆大小，当前代数，上一次查询展开的路口数。
+ * <br>
+ * 从终点向起点反向搜索，启发函数为到起点的曼哈顿距离。搜索会展开所有{@code f}不超过最短距离的路口，
+ * 因此所有位于某条最短路上的路口的距离都是精确的，调用者可以据此按原来的规则在最短路之间选择。
+ * 每个线程使用自己的缓冲区，通过代数标记代替清空，查询本身不分配内存。
+ * <br>
+ * 抽象函数：{@code AF(c) = (node -> distance to end); }
+ * 表示上一次查询中已到达路口到终点的距离。
+ * <br>
+ * 不定式：{@code distance.length == cells && stamp.length == cells && closed.length == cells && heapSize <= heap.length && generation >= 0;}
+ */
+public class RouteSearch {
+	private static final ThreadLocal<RouteSearch> SCRATCH = new ThreadLocal<>();
+	private final int cells;
+	private final int[] distance;
+	private final int[] stamp;
+	private final int[] closed;
+	private long[] heap = new long[64];
+	private int heapSize = 0;
+	private int generation = 0;
+	private int expanded = 0;
+
+	private RouteSearch(int cells) {
+		this.cells = cells;
+		this.distance = new int[cells];
+		this.stamp = new int[cells];
+		this.closed = new int[cells];
+	}
+
+	/**
+	 * Requires:传入地图路口数。<br>
+	 * Modifies:当前线程没有对应大小的缓冲区时新建之。<br>
+	 * Effects:返回当前线程的搜索缓冲区。<br>
+	 *
+	 * @param cells 地图路口数。
+	 *
+	 * @return 当前线程的搜索缓冲区。
+	 */
+	public static RouteSearch forThread(int cells) {
+		RouteSearch search = SCRATCH.get();
+		if (search == null || search.cells != cells) SCRATCH.set(search = new RouteSearch(cells));
+		return search;
+	}
+
+	/**
+	 * Requires:传入一张不为空的城市地图，地图列数，起点和终点编号，以及是否使用VipTaxi的道路信息。<br>
+	 * Modifies:修改缓冲区。<br>
+	 * Effects:返回起点到终点的最短距离，不可达时返回-1。返回后可以通过{@link #distanceTo(int)}查询最短路上各路口到终点的距离。<br>
+	 *
+	 * @param cityMap 城市地图。
+	 * @param cols    地图列数。
+	 * @param start   起点编号，即{@code x * cols + y}。
+	 * @param end     终点编号。
+	 * @param ifVip   是否为VipTaxi。
+	 *
+	 * @return 起点到终点的最短距离。
+	 */
+	public int search(CityMap cityMap, int cols, int start, int end, boolean ifVip) {
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			Arrays.fill(closed, 0);
+			generation = 1;
+		}
+		int sx = start / cols, sy = start % cols, best = -1;
+		heapSize = 0;
+		expanded = 0;
+		stamp[end] = generation;
+		distance[end] = 0;
+		push((long) (Math.abs(end / cols - sx) + Math.abs(end % cols - sy)) << 32 | end);
+		while (heapSize > 0) {
+			long top = pop();
+			int now = (int) top;
+			if (best >= 0 && (int) (top >>> 32) > best) break;
+			if (closed[now] == generation) continue;
+			closed[now] = generation;
+			expanded++;
+			if (now == start) best = distance[now];
+			int x = now / cols, y = now % cols, value = distance[now] + 1;
+			for (int mask = cityMap.neighbours(now, ifVip); mask != 0; mask &= mask - 1) {
+				Direction direction = Direction.of(Integer.numberOfTrailingZeros(mask));
+				int nx = x + direction.getX(), ny = y + direction.getY(), next = nx * cols + ny;
+				if (stamp[next] == generation && distance[next] <= value) continue;
+				stamp[next] = generation;
+				distance[next] = value;
+				push((long) (value + Math.abs(nx - sx) + Math.abs(ny - sy)) << 32 | next);
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Requires:传入一个路口编号，只能在{@link #search}之后调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次查询中该路口到终点的距离，未到达时返回-1。位于最短路上的路口的距离是精确的。<br>
+	 *
+	 * @param node 路口编号。
+	 *
+	 * @return 路口到终点的距离。
+	 */
+	public int distanceTo(int node) {
+		return stamp[node] == generation ? distance[node] : -1;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次查询展开的路口数。<br>
+	 *
+	 * @return 展开的路口数。
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	private void push(long entry) {
+		if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) >> 1] > entry) {
+			heap[i] = heap[(i - 1) >> 1];
+			i = (i - 1) >> 1;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop() {
+		long top = heap[0], last = heap[--heapSize];
+		int i = 0;
+		for (int child = 1; child < heapSize; child = 2 * i + 1) {
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+			if (heap[child] >= last) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+
+	public boolean repOk() {
+		return distance.length == cells && stamp.length == cells && closed.length == cells && heapSize <= heap.length && generation >= 0;
+	}
+}
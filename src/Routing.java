@@ -0,0 +1,11 @@
+/**
+ * Overview:
+ * The {@code Routing} class implements the encapsulation of the route planning modes of taxis.
+ * <br>
+ * {@code SHORTEST}规划步数最少的路径，{@code LIGHTS}按红绿灯的反转周期规划最早到达的路径，{@code FLOW}按车流加权规划避开拥堵的路径。
+ */
+public enum Routing {
+	SHORTEST,
+	LIGHTS,
+	FLOW
+}
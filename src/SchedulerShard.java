@@ -0,0 +1,263 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+/**
+ * Overview:
+ * The {@code SchedulerShard} class implements the scheduling state of one rectangular region of the city.
+ * <br>
+ * 表现对象：{@code int x0, int y0, int x1, int y1, TaxiGrid taxiGrid, Fleet fleet, RequestQueue requests, ArrayList<Taxi> taxis, int[] slots,
+ * ArrayList<Taxi> leaving, BatchDispatcher batchDispatcher, ArrayList<Request> due, Taxi[] chosen; }
+ * 分别表示区域的左上角坐标和右下角坐标（不含），全城出租车位置索引，出租车所属的车队，发出地在区域内的待分派请求，当前位于区域内的出租车，
+ * 这些出租车在车队中的槽位（下标与{@code taxis}对应），本时间片驶出区域的出租车，批量分派器，本时间片到期的请求，以及为到期请求选出的出租车。
+ * <br>
+ * 每个分片只修改自己的请求和出租车列表，各阶段之间由调度系统同步：
+ * {@link #choose(long, boolean)}选出到期请求的出租车但不接单，由调度系统按分片顺序确认，被前面的分片抢先接走的改为重新选车。
+ * 确认顺序是先按分片、分片内再按到期时间，而不是全城按到期时间，因此只有一个分片时才与原来逐个分派的结果相同；
+ * 多个分片时，到期时间较晚的请求可能先于其他分片中到期较早的请求接走同一辆出租车；
+ * {@link #register(int)}让区域内的请求抢单，抢单范围跨越边界时读取全城出租车位置索引中相邻区域的出租车；
+ * {@link #step()}按槽位分块调用{@link Fleet#step(int[], int, int)}运行区域内的出租车，不经过出租车对象，
+ * 并把驶出区域的出租车放入{@code leaving}，由调度系统交给新的分片。
+ * <br>
+ * 抽象函数：{@code AF(c) = (region, requests, taxis); }
+ * 表示一个区域和其中的待分派请求和出租车。
+ * <br>
+ * 不定式：{@code x0 < x1 && y0 < y1 && taxiGrid != null && fleet != null && requests != null && taxis != null && slots.length >= taxis.size() && leaving != null;}
+ */
+public class SchedulerShard {
+	private static final int STEP_CHUNK = 256;
+	private final int x0, y0, x1, y1;
+	private final TaxiGrid taxiGrid;
+	private final Fleet fleet;
+	private final int cols;
+	private final RequestQueue requests;
+	private final ArrayList<Taxi> taxis = new ArrayList<>();
+	private int[] slots = new int[16];
+	private final ArrayList<Taxi> leaving = new ArrayList<>();
+	private final BatchDispatcher batchDispatcher = new BatchDispatcher();
+	private final ArrayList<Request> due = new ArrayList<>();
+	private Taxi[] chosen = new Taxi[0];
+
+	/**
+	 * Requires:传入区域的左上角坐标和右下角坐标（不含），全城出租车位置索引，以及出租车所属的车队。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化一个没有请求和出租车的分片。<br>
+	 *
+	 * @param x0       区域左上角x坐标。
+	 * @param y0       区域左上角y坐标。
+	 * @param x1       区域右下角x坐标，不含。
+	 * @param y1       区域右下角y坐标，不含。
+	 * @param taxiGrid 全城出租车位置索引。
+	 * @param fleet    出租车所属的车队。
+	 */
+	public SchedulerShard(int x0, int y0, int x1, int y1, TaxiGrid taxiGrid, Fleet fleet) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.x1 = x1;
+		this.y1 = y1;
+		this.taxiGrid = taxiGrid;
+		this.fleet = fleet;
+		this.cols = fleet.getCols();
+		this.requests = new RequestQueue(x0, y0, x1 - x0, y1 - y0);
+	}
+
+	/**
+	 * Requires:传入一个发出地在区域内的请求。<br>
+	 * Modifies:修改待分派请求。<br>
+	 * Effects:加入请求。<br>
+	 *
+	 * @param request 新请求。
+	 */
+	public void addRequest(Request request) {
+		requests.add(request);
+	}
+
+	/**
+	 * Requires:传入一辆位于区域内的出租车。<br>
+	 * Modifies:修改区域内的出租车列表和槽位。<br>
+	 * Effects:让该分片运行这辆出租车，出租车不属于该分片的车队时抛出异常。<br>
+	 *
+	 * @param taxi 出租车。
+	 */
+	public void addTaxi(Taxi taxi) {
+		if (taxi.fleet != fleet) throw new IllegalArgumentException("taxi belongs to another fleet");
+		if (taxis.size() == slots.length) slots = Arrays.copyOf(slots, slots.length * 2);
+		slots[taxis.size()] = taxi.slot;
+		taxis.add(taxi);
+	}
+
+	/**
+	 * Requires:传入当前模拟时间和分派方式，只能在调度系统的选车阶段调用。<br>
+	 * Modifies:取出到期的请求，清除其候选列表中已不在等待的出租车。<br>
+	 * Effects:为每个到期请求选出一辆出租车但不接单，结果通过{@link #getDue()}和{@link #getChosen()}取得。<br>
+	 *
+	 * @param now           当前模拟时间。
+	 * @param batchDispatch 是否批量分派。
+	 */
+	public void choose(long now, boolean batchDispatch) {
+		due.clear();
+		requests.pollDue(now, due::add);
+		if (due.isEmpty()) return;
+		if (batchDispatch) chosen = batchDispatcher.assign(due);
+		else {
+			if (chosen.length < due.size()) chosen = new Taxi[due.size()];
+			for (int i = 0; i < due.size(); i++) chosen[i] = due.get(i).chooseTheTaxi();
+		}
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次选车阶段到期的请求。<br>
+	 *
+	 * @return 到期的请求。
+	 */
+	public ArrayList<Request> getDue() {
+		return due;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次选车阶段为到期请求选出的出租车，下标与{@link #getDue()}对应，没有选出的为null。<br>
+	 *
+	 * @return 选出的出租车。
+	 */
+	public Taxi[] getChosen() {
+		return chosen;
+	}
+
+	/**
+	 * Requires:传入抢单半径，只能在调度系统的抢单阶段调用。<br>
+	 * Modifies:修改区域内请求的候选出租车队列和相应出租车的信誉度。<br>
+	 * Effects:让区域内请求发出地附近所有可以抢单的出租车抢单。请求少于区域内的出租车时从请求出发查找，
+	 * 否则从区域内和边界外{@code radius}格以内的出租车出发查找。<br>
+	 *
+	 * @param radius 抢单半径。
+	 */
+	public void register(int radius) {
+		if (requests.size() == 0) return;
+		if (requests.size() <= taxis.size()) {
+			requests.forEach(request -> taxiGrid.forEachNear(request.getStart(), radius, taxi -> register(request, taxi)));
+			return;
+		}
+		for (Taxi taxi : taxis) registerNear(taxi, radius);
+		taxiGrid.forEachIn(x0 - radius, y0 - radius, x0, y1 + radius, taxi -> registerNear(taxi, radius));
+		taxiGrid.forEachIn(x1, y0 - radius, x1 + radius, y1 + radius, taxi -> registerNear(taxi, radius));
+		taxiGrid.forEachIn(x0, y0 - radius, x1, y0, taxi -> registerNear(taxi, radius));
+		taxiGrid.forEachIn(x0, y1, x1, y1 + radius, taxi -> registerNear(taxi, radius));
+	}
+
+	private void registerNear(Taxi taxi, int radius) {
+		requests.forEachNear(taxi.getStayCityCross(), radius, request -> register(request, taxi));
+	}
+
+	/**
+	 * Requires:传入一个请求和一辆出租车。<br>
+	 * Modifies:出租车可以抢单时修改请求的候选出租车队列和出租车的信誉度。<br>
+	 * Effects:如果该出租车能抢这个请求，则让它抢单并记录相应事件。<br>
+	 *
+	 * @param request 请求。
+	 * @param taxi    出租车。
+	 */
+	public static void register(Request request, Taxi taxi) {
+		if (request.canRegister(taxi)) {
+			request.register(taxi);
+			EventLog.getEventLog().register(taxi, request);
+		}
+	}
+
+	/**
+	 * Requires:只能在调度系统的运行阶段调用。<br>
+	 * Modifies:修改区域内出租车的状态，把驶出区域的出租车从列表移到{@code leaving}。<br>
+	 * Effects:运行区域内所有出租车一个时间片，每{@code STEP_CHUNK}个槽位为一块并行运行。<br>
+	 */
+	public void step() {
+		leaving.clear();
+		int size = taxis.size(), chunks = (size + STEP_CHUNK - 1) / STEP_CHUNK;
+		if (chunks <= 1) fleet.step(slots, 0, size);
+		else IntStream.range(0, chunks).parallel().forEach(chunk -> fleet.step(slots, chunk * STEP_CHUNK, Math.min(size, (chunk + 1) * STEP_CHUNK)));
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			int node = fleet.getNode(slots[i]), x = node / cols, y = node % cols;
+			if (x >= x0 && x < x1 && y >= y0 && y < y1) {
+				slots[kept] = slots[i];
+				taxis.set(kept++, taxis.get(i));
+			} else leaving.add(taxis.get(i));
+		}
+		taxis.subList(kept, size).clear();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次运行阶段驶出区域的出租车。<br>
+	 *
+	 * @return 驶出区域的出租车。
+	 */
+	public ArrayList<Taxi> getLeaving() {
+		return leaving;
+	}
+
+	/**
+	 * Requires:传入一个路口。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果路口在区域内返回true，否则返回false。<br>
+	 *
+	 * @param cityCross 路口。
+	 *
+	 * @return 是否在区域内。
+	 */
+	public boolean contains(CityCross cityCross) {
+		return cityCross.getX() >= x0 && cityCross.getX() < x1 && cityCross.getY() >= y0 && cityCross.getY() < y1;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回区域内待分派的请求数。<br>
+	 *
+	 * @return 待分派请求数。
+	 */
+	public int getPendingCount() {
+		return requests.size();
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前由该分片运行的出租车数。<br>
+	 *
+	 * @return 区域内的出租车数。
+	 */
+	public int getTaxiCount() {
+		return taxis.size();
+	}
+
+	/**
+	 * Requires:传入一个对出租车的操作，不能与其他阶段同时调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:对当前由该分片运行的所有出租车执行该操作。<br>
+	 *
+	 * @param action 对出租车的操作。
+	 */
+	public void forEachTaxi(Consumer<Taxi> action) {
+		taxis.forEach(action);
+	}
+
+	/**
+	 * Requires:传入一个对请求的操作，不能与其他阶段同时调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:对区域内所有待分派请求执行该操作。<br>
+	 *
+	 * @param action 对请求的操作。
+	 */
+	public void forEachPending(Consumer<Request> action) {
+		requests.forEach(action);
+	}
+
+	public boolean repOk() {
+		return x0 < x1 && y0 < y1 && taxiGrid != null && fleet != null && requests != null && taxis != null && slots.length >= taxis.size() && leaving != null;
+	}
+}
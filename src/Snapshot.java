@@ -0,0 +1,523 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Vector;
+import java.util.zip.CRC32;
+
+/**
+ * Overview:
+ * The {@code Snapshot} class implements the versioned binary checkpoint of the whole simulation state.
+ * <br>
+ * 文件格式（大端序）：{@code int MAGIC, short VERSION, short 0, long time, int rows, int cols}共24字节的文件头；
+ * 之后每个路口1字节，第0-1位是当前道路，第2-3位是被关闭的道路，第4位表示有红绿灯，第5位表示相位0时南北方向通行；
+ * 然后是{@code int n}和n个{@code (int cell, int offset)}的红绿灯相位偏移，{@code int n}和n个{@code (int edge, int flow)}的非0车流；
+ * 然后是{@code int n}和n辆出租车，每辆为{@code int id, byte kind, int node, byte heading, byte status, int waitTime, int credit, byte hasAim}，
+ * 有当前请求时接{@code int start, int end, long startTime}，VipTaxi再接当前服务路程和{@code int n}条已完成服务路程；
+ * 然后是{@code int n}和n个待分派请求，每个为{@code int start, int end, long startTime, int registrations, int n, n * int candidate, int n, n * long registered}；
+ * 最后是之前所有字节的CRC32。字符串为{@code int length}（null为-1）和UTF-8字节，路口为编号{@code x * cols + y}。
+ * <br>
+ * 表现对象：{@code long time, int rows, int cols, long mapVersion, int[][] roads, int[][] flags, int[][] lights, int[] offsets, int[] flow,
+ * int[] ids, byte[] kinds, int[] nodes, byte[] headings, byte[] statuses, int[] waitTimes, int[] credits, int[] aimStarts, int[] aimEnds,
+ * long[] aimTimes, String[] nowWays, String[][] histories, int[] starts, int[] ends, long[] startTimes, int[] registrations,
+ * int[][] candidates, long[][] registered; }
+ * 分别表示模拟时间，地图行数和列数，地图版本号，当前道路，被关闭的道路，相位0时的红绿灯，红绿灯相位偏移（没有时为null），车流，
+ * 每辆出租车的id，种类（第0位为VipTaxi，第1位为被追踪），所在路口，最后一次运行方向，运行状态，等待时间，信誉度，
+ * 当前请求的发出地，目的地（没有请求时为-1）和发出时间，VipTaxi的当前服务路程和已完成服务路程（普通出租车为null），
+ * 以及每个待分派请求的发出地，目的地，发出时间，抢单数，候选出租车id和抢单标记。
+ * <br>
+ * {@link #capture}只在调度线程的时间片之间复制状态，地图版本号不变时直接沿用上一份快照中的道路和红绿灯，
+ * 编码，校验和写文件都由{@link #write(String)}在后台线程完成，先写临时文件再原子地替换，因此读者总能看到完整的快照。
+ * {@link #load(String)}通过内存映射读入并校验文件，各{@code restore}方法新建相互独立的对象，因此同一份快照可以派生多个模拟。
+ * 出租车的规划路径不保存，恢复后第一次运行时重新规划；红绿灯的相位由模拟时间决定，因此只需保存时间。
+ * <br>
+ * 抽象函数：{@code AF(c) = (time, city, lights, taxis, pending requests); }
+ * 表示某个时间片结束时的完整模拟状态。
+ * <br>
+ * 不定式：{@code rows > 0 && cols > 0 && roads.length == rows && flags.length == rows && lights.length == rows && flow.length == 2 * rows * cols
+ * && all taxi arrays have the same length && all request arrays have the same length;}
+ */
+public class Snapshot {
+	public static final int MAGIC = 0x5458534E;
+	public static final short VERSION = 1;
+	private static final int HEADER = 24;
+	private long time;
+	private int rows;
+	private int cols;
+	private long mapVersion = -1;
+	private int[][] roads;
+	private int[][] flags;
+	private int[][] lights;
+	private int[] offsets;
+	private int[] flow;
+	private int[] ids;
+	private byte[] kinds;
+	private int[] nodes;
+	private byte[] headings;
+	private byte[] statuses;
+	private int[] waitTimes;
+	private int[] credits;
+	private int[] aimStarts;
+	private int[] aimEnds;
+	private long[] aimTimes;
+	private String[] nowWays;
+	private String[][] histories;
+	private int[] starts;
+	private int[] ends;
+	private long[] startTimes;
+	private int[] registrations;
+	private int[][] candidates;
+	private long[][] registered;
+
+	private Snapshot() {
+	}
+
+	/**
+	 * Requires:传入城市地图，红绿灯信息图，所有出租车，调度系统，当前模拟时间，以及上一份快照（可以为null），只能在调度线程的时间片之间调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:复制当前的完整模拟状态并返回，地图版本号与上一份快照相同时沿用其道路和红绿灯，
+	 * VipTaxi的服务记录沿用上一份快照中同一出租车的记录，只复制之后新增的部分。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param lightsMap 红绿灯信息图。
+	 * @param taxis     所有出租车。
+	 * @param scheduler 调度系统。
+	 * @param now       当前模拟时间。
+	 * @param previous  上一份快照。
+	 *
+	 * @return 快照。
+	 */
+	public static Snapshot capture(CityMap cityMap, LightsMap lightsMap, Taxi[] taxis, TaxiSchedulingSystem scheduler, long now, Snapshot previous) {
+		Snapshot snapshot = new Snapshot();
+		snapshot.time = now;
+		snapshot.rows = cityMap.getRows();
+		snapshot.cols = cityMap.getCols();
+		snapshot.mapVersion = cityMap.getVersion();
+		if (previous != null && previous.mapVersion == snapshot.mapVersion && previous.rows == snapshot.rows && previous.cols == snapshot.cols) {
+			snapshot.roads = previous.roads;
+			snapshot.flags = previous.flags;
+			snapshot.lights = previous.lights;
+			snapshot.offsets = previous.offsets;
+		} else {
+			snapshot.roads = cityMap.copyRoads();
+			snapshot.flags = cityMap.copyFlags();
+			snapshot.lights = new int[snapshot.rows][snapshot.cols];
+			for (int x = 0; x < snapshot.rows; x++)
+				for (int y = 0; y < snapshot.cols; y++) {
+					int offset = lightsMap.getOffset(x, y);
+					snapshot.lights[x][y] = lightsMap.getLight(x, y, -offset);
+					if (offset == 0) continue;
+					if (snapshot.offsets == null) snapshot.offsets = new int[snapshot.rows * snapshot.cols];
+					snapshot.offsets[x * snapshot.cols + y] = offset;
+				}
+		}
+		snapshot.flow = cityMap.copyFlow();
+		snapshot.captureTaxis(taxis, previous);
+		ArrayList<Request> pending = new ArrayList<>();
+		scheduler.forEachPending(pending::add);
+		snapshot.captureRequests(pending);
+		return snapshot;
+	}
+
+	private void captureTaxis(Taxi[] taxis, Snapshot previous) {
+		int count = taxis.length;
+		ids = new int[count];
+		kinds = new byte[count];
+		nodes = new int[count];
+		headings = new byte[count];
+		statuses = new byte[count];
+		waitTimes = new int[count];
+		credits = new int[count];
+		aimStarts = new int[count];
+		aimEnds = new int[count];
+		aimTimes = new long[count];
+		nowWays = new String[count];
+		histories = new String[count][];
+		for (int i = 0; i < count; i++) {
+			Taxi taxi = taxis[i];
+			Fleet fleet = taxi.fleet;
+			CityCross cross = fleet.getCross(taxi.slot);
+			ids[i] = taxi.getId();
+			kinds[i] = (byte) ((fleet.isVip(taxi.slot) ? 1 : 0) | (fleet.isTraced(taxi.slot) ? 2 : 0));
+			nodes[i] = cross.getX() * cols + cross.getY();
+			headings[i] = (byte) fleet.getHeading(taxi.slot).ordinal();
+			statuses[i] = (byte) fleet.getStatus(taxi.slot).ordinal();
+			waitTimes[i] = fleet.getWaitTime(taxi.slot);
+			credits[i] = fleet.getCredit(taxi.slot);
+			Request aim = fleet.getAim(taxi.slot);
+			aimStarts[i] = aim == null ? -1 : node(aim.getStart());
+			aimEnds[i] = aim == null ? -1 : node(aim.getEnd());
+			aimTimes[i] = aim == null ? 0 : aim.getStartTime();
+			if (taxi instanceof VipTaxi) {
+				nowWays[i] = ((VipTaxi) taxi).getNowWays();
+				String[] known = previous != null && i < previous.ids.length && previous.ids[i] == ids[i] ? previous.histories[i] : null;
+				histories[i] = ((VipTaxi) taxi).getHistory(known);
+			}
+		}
+	}
+
+	private void captureRequests(List<Request> pending) {
+		int count = pending.size();
+		starts = new int[count];
+		ends = new int[count];
+		startTimes = new long[count];
+		registrations = new int[count];
+		candidates = new int[count][];
+		registered = new long[count][];
+		for (int i = 0; i < count; i++) {
+			Request request = pending.get(i);
+			starts[i] = node(request.getStart());
+			ends[i] = node(request.getEnd());
+			startTimes[i] = request.getStartTime();
+			registrations[i] = request.getRegistrations();
+			candidates[i] = request.getCandidateIds();
+			registered[i] = request.getRegisteredIds();
+		}
+	}
+
+	private int node(CityCross cityCross) {
+		return cityCross.getX() * cols + cityCross.getY();
+	}
+
+	/**
+	 * Requires:传入一个可写的文件名，可以在任意线程中调用。<br>
+	 * Modifies:写入同目录下的临时文件，再原子地替换目标文件。<br>
+	 * Effects:以二进制格式保存快照。<br>
+	 *
+	 * @param fileName 输出文件名。
+	 *
+	 * @throws IOException 写文件异常。
+	 */
+	public void write(String fileName) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER + rows * cols + 64 * ids.length + 64 * starts.length);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeShort(0);
+		out.writeLong(time);
+		out.writeInt(rows);
+		out.writeInt(cols);
+		byte[] cells = new byte[rows * cols];
+		for (int x = 0; x < rows; x++)
+			for (int y = 0; y < cols; y++)
+				cells[x * cols + y] = (byte) (roads[x][y] | flags[x][y] << 2 | (lights[x][y] != 0 ? 1 << 4 : 0) | (lights[x][y] > 0 ? 1 << 5 : 0));
+		out.write(cells);
+		int count = 0;
+		for (int i = 0; offsets != null && i < offsets.length; i++) if (offsets[i] != 0) count++;
+		out.writeInt(count);
+		for (int i = 0; offsets != null && i < offsets.length; i++)
+			if (offsets[i] != 0) {
+				out.writeInt(i);
+				out.writeInt(offsets[i]);
+			}
+		count = 0;
+		for (int value : flow) if (value != 0) count++;
+		out.writeInt(count);
+		for (int i = 0; i < flow.length; i++)
+			if (flow[i] != 0) {
+				out.writeInt(i);
+				out.writeInt(flow[i]);
+			}
+		out.writeInt(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			out.writeInt(ids[i]);
+			out.writeByte(kinds[i]);
+			out.writeInt(nodes[i]);
+			out.writeByte(headings[i]);
+			out.writeByte(statuses[i]);
+			out.writeInt(waitTimes[i]);
+			out.writeInt(credits[i]);
+			out.writeByte(aimStarts[i] < 0 ? 0 : 1);
+			if (aimStarts[i] >= 0) {
+				out.writeInt(aimStarts[i]);
+				out.writeInt(aimEnds[i]);
+				out.writeLong(aimTimes[i]);
+			}
+			if ((kinds[i] & 1) == 0) continue;
+			writeString(out, nowWays[i]);
+			out.writeInt(histories[i].length);
+			for (String ways : histories[i]) writeString(out, ways);
+		}
+		out.writeInt(starts.length);
+		for (int i = 0; i < starts.length; i++) {
+			out.writeInt(starts[i]);
+			out.writeInt(ends[i]);
+			out.writeLong(startTimes[i]);
+			out.writeInt(registrations[i]);
+			out.writeInt(candidates[i].length);
+			for (int id : candidates[i]) out.writeInt(id);
+			out.writeInt(registered[i].length);
+			for (long word : registered[i]) out.writeLong(word);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(bytes.toByteArray(), 0, bytes.size());
+		out.writeInt((int) crc.getValue());
+		String temporary = fileName + ".tmp";
+		try (FileOutputStream file = new FileOutputStream(temporary)) {
+			bytes.writeTo(file);
+			file.getFD().sync();
+		}
+		Files.move(Paths.get(temporary), Paths.get(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Requires:传入一个存在的快照文件名。<br>
+	 * Modifies:无。<br>
+	 * Effects:通过内存映射读入并校验快照文件，校验和解析都直接在映射上进行，不把文件复制到堆中。文件格式错误，版本不支持或校验失败时抛出异常。<br>
+	 *
+	 * @param fileName 快照文件名。
+	 *
+	 * @return 读入的快照。
+	 *
+	 * @throws IOException 读文件异常或文件格式错误。
+	 */
+	public static Snapshot load(String fileName) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(fileName, "r"); FileChannel channel = file.getChannel()) {
+			if (channel.size() < HEADER + 4 || channel.size() > Integer.MAX_VALUE) throw new IOException(fileName + ": not a snapshot file");
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			if (buffer.getInt(0) != MAGIC) throw new IOException(fileName + ": not a snapshot file");
+			if (buffer.getShort(4) != VERSION) throw new IOException(fileName + ": unsupported version " + buffer.getShort(4));
+			int length = (int) channel.size() - 4;
+			CRC32 crc = new CRC32();
+			crc.update((ByteBuffer) buffer.duplicate().limit(length));
+			if (buffer.getInt(length) != (int) crc.getValue()) throw new IOException(fileName + ": checksum mismatch");
+			try {
+				return read((ByteBuffer) buffer.limit(length).position(8));
+			} catch (RuntimeException e) {
+				throw new IOException(fileName + ": corrupt snapshot", e);
+			}
+		}
+	}
+
+	private static Snapshot read(ByteBuffer in) throws IOException {
+		Snapshot snapshot = new Snapshot();
+		snapshot.time = in.getLong();
+		int rows = snapshot.rows = in.getInt(), cols = snapshot.cols = in.getInt();
+		if (rows <= 0 || cols <= 0) throw new IOException("bad size " + rows + "x" + cols);
+		snapshot.roads = new int[rows][cols];
+		snapshot.flags = new int[rows][cols];
+		snapshot.lights = new int[rows][cols];
+		for (int x = 0; x < rows; x++)
+			for (int y = 0; y < cols; y++) {
+				int cell = in.get();
+				snapshot.roads[x][y] = cell & 3;
+				snapshot.flags[x][y] = cell >> 2 & 3;
+				snapshot.lights[x][y] = (cell & 1 << 4) == 0 ? 0 : (cell & 1 << 5) != 0 ? 1 : -1;
+			}
+		int count = in.getInt();
+		if (count > 0) snapshot.offsets = new int[rows * cols];
+		for (int i = 0; i < count; i++) snapshot.offsets[in.getInt()] = in.getInt();
+		snapshot.flow = new int[2 * rows * cols];
+		count = in.getInt();
+		for (int i = 0; i < count; i++) snapshot.flow[in.getInt()] = in.getInt();
+		count = in.getInt();
+		snapshot.ids = new int[count];
+		snapshot.kinds = new byte[count];
+		snapshot.nodes = new int[count];
+		snapshot.headings = new byte[count];
+		snapshot.statuses = new byte[count];
+		snapshot.waitTimes = new int[count];
+		snapshot.credits = new int[count];
+		snapshot.aimStarts = new int[count];
+		snapshot.aimEnds = new int[count];
+		snapshot.aimTimes = new long[count];
+		snapshot.nowWays = new String[count];
+		snapshot.histories = new String[count][];
+		for (int i = 0; i < count; i++) {
+			snapshot.ids[i] = in.getInt();
+			snapshot.kinds[i] = in.get();
+			snapshot.nodes[i] = in.getInt();
+			snapshot.headings[i] = in.get();
+			snapshot.statuses[i] = in.get();
+			snapshot.waitTimes[i] = in.getInt();
+			snapshot.credits[i] = in.getInt();
+			boolean hasAim = in.get() != 0;
+			snapshot.aimStarts[i] = hasAim ? in.getInt() : -1;
+			snapshot.aimEnds[i] = hasAim ? in.getInt() : -1;
+			snapshot.aimTimes[i] = hasAim ? in.getLong() : 0;
+			if ((snapshot.kinds[i] & 1) == 0) continue;
+			snapshot.nowWays[i] = readString(in);
+			snapshot.histories[i] = new String[in.getInt()];
+			for (int j = 0; j < snapshot.histories[i].length; j++) snapshot.histories[i][j] = readString(in);
+		}
+		count = in.getInt();
+		snapshot.starts = new int[count];
+		snapshot.ends = new int[count];
+		snapshot.startTimes = new long[count];
+		snapshot.registrations = new int[count];
+		snapshot.candidates = new int[count][];
+		snapshot.registered = new long[count][];
+		for (int i = 0; i < count; i++) {
+			snapshot.starts[i] = in.getInt();
+			snapshot.ends[i] = in.getInt();
+			snapshot.startTimes[i] = in.getLong();
+			snapshot.registrations[i] = in.getInt();
+			snapshot.candidates[i] = new int[in.getInt()];
+			for (int j = 0; j < snapshot.candidates[i].length; j++) snapshot.candidates[i][j] = in.getInt();
+			snapshot.registered[i] = new long[in.getInt()];
+			for (int j = 0; j < snapshot.registered[i].length; j++) snapshot.registered[i][j] = in.getLong();
+		}
+		if (in.hasRemaining()) throw new IOException(in.remaining() + " trailing bytes");
+		return snapshot;
+	}
+
+	private static String readString(ByteBuffer in) {
+		int length = in.getInt();
+		if (length < 0) return null;
+		if (length > in.remaining()) throw new BufferUnderflowException();
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回快照的模拟时间，恢复时应以此设置{@link MyTimer}。<br>
+	 *
+	 * @return 模拟时间。
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回一张新的城市地图，道路，被关闭的道路和已发布的车流与快照相同。<br>
+	 *
+	 * @return 城市地图。
+	 */
+	public CityMap restoreCityMap() {
+		int[][] crosses = new int[rows][];
+		for (int x = 0; x < rows; x++) crosses[x] = roads[x].clone();
+		CityMap cityMap = new CityMap(crosses, flags);
+		cityMap.restoreFlow(flow);
+		return cityMap;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回一幅新的红绿灯信息图，布局和相位偏移与快照相同。<br>
+	 *
+	 * @return 红绿灯信息图。
+	 */
+	public LightsMap restoreLightsMap() {
+		LightsMap lightsMap = new LightsMap(lights);
+		for (int i = 0; offsets != null && i < offsets.length; i++)
+			if (offsets[i] != 0) lightsMap.setOffset(i / cols, i % cols, offsets[i]);
+		return lightsMap;
+	}
+
+	/**
+	 * Requires:传入由{@link #restoreCityMap()}得到的地图上的车队，不能与车队运行同时调用。<br>
+	 * Modifies:在车队中占用槽位。<br>
+	 * Effects:按快照中的顺序新建所有出租车并恢复其id，位置，方向，状态，等待时间，信誉度，当前请求，追踪标记和服务记录。
+	 * 当前请求按保存时的状态恢复，不重新检查可达性，起止点超出地图时抛出异常。<br>
+	 *
+	 * @param fleet 车队。
+	 *
+	 * @return 出租车列表。
+	 *
+	 * @throws IOException 快照中的请求不合法。
+	 */
+	public Vector<Taxi> restoreTaxis(Fleet fleet) throws IOException {
+		CityMap cityMap = fleet.getCityMap();
+		Vector<Taxi> taxis = new Vector<>(ids.length);
+		for (int i = 0; i < ids.length; i++) {
+			CityCross cross = cityMap.cross(nodes[i] / cols, nodes[i] % cols);
+			Taxi taxi = (kinds[i] & 1) != 0 ? new VipTaxi(cross, fleet, ids[i]) : new Taxi(cross, fleet, ids[i]);
+			Request aim = aimStarts[i] < 0 ? null : request(cityMap, aimStarts[i], aimEnds[i], aimTimes[i], Collections.emptyList(), new long[0], 0);
+			fleet.restore(taxi.slot, Direction.of(headings[i]), TaxiStatus.values()[statuses[i]], waitTimes[i], credits[i], aim);
+			fleet.setTrace(taxi.slot, (kinds[i] & 2) != 0);
+			if (taxi instanceof VipTaxi) ((VipTaxi) taxi).restoreHistory(java.util.Arrays.asList(histories[i]), nowWays[i]);
+			taxis.add(taxi);
+		}
+		return taxis;
+	}
+
+	/**
+	 * Requires:传入由{@link #restoreCityMap()}得到的地图，由{@link #restoreTaxis(Fleet)}得到的出租车，以及用它们新建且尚未启动的调度系统。<br>
+	 * Modifies:把待分派请求加入调度系统，并让调度系统记录出租车已计入的车流。<br>
+	 * Effects:恢复所有待分派请求及其候选出租车和抢单记录，不重新检查可达性。起止点超出地图或候选出租车不存在时抛出异常。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param taxis     出租车列表。
+	 * @param scheduler 调度系统。
+	 *
+	 * @throws IOException 快照中的请求不合法。
+	 */
+	public void restoreRequests(CityMap cityMap, List<Taxi> taxis, TaxiSchedulingSystem scheduler) throws IOException {
+		HashMap<Integer, Taxi> byId = new HashMap<>();
+		for (Taxi taxi : taxis) byId.put(taxi.getId(), taxi);
+		for (int i = 0; i < starts.length; i++) {
+			ArrayList<Taxi> chosen = new ArrayList<>(candidates[i].length);
+			for (int id : candidates[i]) {
+				Taxi taxi = byId.get(id);
+				if (taxi == null) throw new IOException("request candidate " + id + " is not a taxi");
+				chosen.add(taxi);
+			}
+			scheduler.addRequest(request(cityMap, starts[i], ends[i], startTimes[i], chosen, registered[i], registrations[i]));
+		}
+		scheduler.seedFlow();
+	}
+
+	private Request request(CityMap cityMap, int start, int end, long startTime, List<Taxi> chosen, long[] registeredIds, int count) throws IOException {
+		if (start < 0 || start >= rows * cols || end < 0 || end >= rows * cols) throw new IOException("bad request in snapshot: out of map");
+		return Request.restore(cityMap.cross(start / cols, start % cols), cityMap.cross(end / cols, end % cols), startTime, chosen, registeredIds, count);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回快照中的出租车数。<br>
+	 *
+	 * @return 出租车数。
+	 */
+	public int getTaxiCount() {
+		return ids.length;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回快照中的待分派请求数。<br>
+	 *
+	 * @return 待分派请求数。
+	 */
+	public int getPendingCount() {
+		return starts.length;
+	}
+
+	public boolean repOk() {
+		return rows > 0 && cols > 0 && roads.length == rows && flags.length == rows && lights.length == rows && flow.length == 2 * rows * cols
+				       && kinds.length == ids.length && nodes.length == ids.length && credits.length == ids.length && histories.length == ids.length
+				       && ends.length == starts.length && candidates.length == starts.length && registered.length == starts.length;
+	}
+}
@@ -1,43 +1,25 @@
-import java.util.ArrayList;
-import java.util.Random;
-import java.util.Vector;
-
 /**
  * Overview:
  * The {@code Taxi} class implements the encapsulation of the taxi object.
  * <br>
- * 表现对象：{@code int TIMEUNIT, int WAITUPPERTIME, int STOPUPPERTIME, int num, int id, int credit,
- * int waitTime, Vector<Direction> directions, Direction curDirection, TaxiStatus status,
- * CityCross stayCityCross, CityMap cityMap, LightsMap lightsMap, Request aim, boolean trace; }
- * 表明了单位时间，最高等待时间，最高停止时间，总编号，id，信誉度，等待时间，当前最短路径，最后一次运行方向，运行状态，
- * 当前路口，城市路口地图，城市红绿灯信息图，当前请求，追踪标记。
+ * 表现对象：{@code int num, int id, Fleet fleet, int slot; }
+ * 表明了总编号，id，出租车状态所在的车队，以及在车队中的槽位。
+ * 出租车的位置，方向，状态，等待时间，信誉度，规划路径和当前请求都存放在{@link Fleet}的并行数组中，该对象是这些数组的视图。
  * <br>
- * 不定式：
  * 抽象函数：{@code AF(x) = (id, credit, curDirection, status, stayCityCross, aim); }
  * 表明了出租车的id，信誉度，最后一次运行方向，当前状态，当前停留路口，当前请求。
  * <br>
- * 不定式：{@code id > 0 && id <= 100 && credit >= 0 && stayCityCross != null && cityMap != null && lightsMap != null;}
+ * 不定式：{@code id > 0 && id <= num && fleet != null && slot >= 0 && getCredit() >= 0;}
  */
 public class Taxi {
-	protected static final int TIMEUNIT = 100;
-	protected static final int WAITUPPERTIME = 20000;
-	protected static final int STOPUPPERTIME = 1000;
 	protected static int num = 0;
 	protected int id = ++num;
-	protected int credit = 0;
-	protected int waitTime = 0;
-	protected Vector<Direction> directions = new Vector<>();
-	protected Direction curDirection;
-	protected TaxiStatus status = TaxiStatus.WAIT;
-	protected CityCross stayCityCross;
-	protected CityMap cityMap;
-	protected LightsMap lightsMap;
-	protected Request aim;
-	protected boolean trace;
+	protected final Fleet fleet;
+	protected final int slot;
 
 	/**
 	 * Requires:传入一个出租车现在的位置，一张城市地图和一幅城市红绿灯信息图。<br>
-	 * Modifies:修改自身属性的位置和城市地图。<br>
+	 * Modifies:在该地图的共享车队中占用一个槽位。<br>
 	 * Effects:初始化该对象。<br>
 	 *
 	 * @param stayCityCross 出租车当前位置。
@@ -45,10 +27,35 @@ public class Taxi {
 	 * @param lightsMap     当前城市红绿灯信息。
 	 */
 	public Taxi(CityCross stayCityCross, CityMap cityMap, LightsMap lightsMap) {
-		this.stayCityCross = stayCityCross;
-		this.cityMap = cityMap;
-		this.lightsMap = lightsMap;
-		this.curDirection = Direction.UP;
+		this(stayCityCross, Fleet.shared(cityMap, lightsMap));
+	}
+
+	/**
+	 * Requires:传入一个出租车现在的位置和一个车队，不能与车队运行同时调用。<br>
+	 * Modifies:在车队中占用一个槽位。<br>
+	 * Effects:初始化该对象。<br>
+	 *
+	 * @param stayCityCross 出租车当前位置。
+	 * @param fleet         车队。
+	 */
+	public Taxi(CityCross stayCityCross, Fleet fleet) {
+		this.fleet = fleet;
+		this.slot = fleet.add(this, stayCityCross, this instanceof VipTaxi);
+	}
+
+	/**
+	 * Requires:传入一个出租车现在的位置，一个车队和一个正整数id，不能与车队运行同时调用。<br>
+	 * Modifies:在车队中占用一个槽位，必要时增大总编号使之后新建的出租车id不会重复。<br>
+	 * Effects:以指定的id初始化该对象，用于从快照恢复。<br>
+	 *
+	 * @param stayCityCross 出租车当前位置。
+	 * @param fleet         车队。
+	 * @param id            出租车id。
+	 */
+	public Taxi(CityCross stayCityCross, Fleet fleet, int id) {
+		this(stayCityCross, fleet);
+		this.id = id;
+		num = Math.max(num, id);
 	}
 
 	/**
@@ -57,64 +64,18 @@ public class Taxi {
 	 * Effects:模拟出租车运行的过程。<br>
 	 */
 	public void run() {
-		Direction tempDirection;
-		CityCross nextCityCross;
-		switch (status) {
-			case WAIT:
-				waitTime += TIMEUNIT;
-				int minFlow = cityMap.getFlow(stayCityCross, Direction.UP);
-				for (Direction direction : Direction.values())
-					minFlow = minFlow > cityMap.getFlow(stayCityCross, direction) ? cityMap.getFlow(stayCityCross, direction) : minFlow;
-				ArrayList<Direction> temp = new ArrayList<>();
-				for (Direction direction : Direction.values())
-					if (cityMap.getFlow(stayCityCross, direction) == minFlow) temp.add(direction);
-				do {
-					tempDirection = temp.get(new Random().nextInt(temp.size()));
-					nextCityCross = stayCityCross.moveOn(tempDirection);
-				} while (!nextCityCross.repOk() || !cityMap.canMove(stayCityCross, nextCityCross));
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = nextCityCross;
-				if (waitTime == WAITUPPERTIME) {
-					waitTime = 0;
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case READY:
-				directions = cityMap.getTheShortestWay(stayCityCross, aim.getStart(),false);
-				tempDirection = directions.remove(0);
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = stayCityCross.moveOn(curDirection);
-				if (directions.isEmpty()) {
-					directions = cityMap.getTheShortestWay(aim.getStart(), aim.getEnd(),false);
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case WORK:
-				directions = cityMap.getTheShortestWay(stayCityCross, aim.getEnd(),false);
-				tempDirection = directions.remove(0);
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = stayCityCross.moveOn(curDirection);
-				if (directions.isEmpty()) {
-					credit += 3;
-					System.out.println("taxi No." + id + " finished the " + aim + " at " + MyTimer.getMyTimer());
-					System.out.println("now taxi No." + id + " credit: " + credit);
-					aim = null;
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case STOP:
-				waitTime += TIMEUNIT;
-				if (waitTime == STOPUPPERTIME) {
-					waitTime = 0;
-					if (aim == null) status = TaxiStatus.WAIT;
-					else status = TaxiStatus.WORK;
-				}
-				break;
-		}
-		if (trace) System.out.println(this);
+		fleet.step(slot);
+	}
+
+	/**
+	 * Requires:传入一个非负整数。<br>
+	 * Modifies:修改触发重新规划的车流阈值。<br>
+	 * Effects:当出租车下一段道路的车流大于该阈值时，出租车重新规划路径。<br>
+	 *
+	 * @param flow 车流阈值。
+	 */
+	public static void setRerouteFlow(int flow) {
+		Fleet.setRerouteFlow(flow);
 	}
 
 	/**
@@ -125,22 +86,18 @@ public class Taxi {
 	 * @param request 待完成请求。
 	 */
 	public void carryRequest(Request request) {
-		System.out.println("taxi No." + id + " take the " + request + "at " + MyTimer.getMyTimer());
-		aim = request;
-		waitTime = 0;
-		if (stayCityCross.equals(aim.getStart())) status = TaxiStatus.STOP;
-		else status = TaxiStatus.READY;
+		fleet.carry(slot, request);
 	}
 
 	/**
 	 * Requires:传入一个正整数。<br>
 	 * Modifies:修改信誉度。<br>
-	 * Effects:将信誉度增加num。<br>
+	 * Effects:将信誉度增加num。相邻区域的调度分片可能同时让同一辆车抢单，因此加锁。<br>
 	 *
 	 * @param num 信誉度增量。
 	 */
-	public void addCredit(int num) {
-		credit += num;
+	public synchronized void addCredit(int num) {
+		fleet.addCredit(slot, num);
 	}
 
 	/**
@@ -153,7 +110,20 @@ public class Taxi {
 	 * @return 出租车当前位置到目标路口的距离。
 	 */
 	public int howFar(CityCross cityCross) {
-		return cityMap.getTheShortestWay(stayCityCross, cityCross, false).size();
+		return fleet.getCityMap().getDistance(getStayCityCross(), cityCross, false);
+	}
+
+	/**
+	 * Requires:传入一个地图内的路口。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果出租车从当前位置有路可以到达这个路口返回true，否则返回false。<br>
+	 *
+	 * @param cityCross 目的路口。
+	 *
+	 * @return 是否可达。
+	 */
+	public boolean canReach(CityCross cityCross) {
+		return fleet.getCityMap().reachable(getStayCityCross(), cityCross, false);
 	}
 
 	/**
@@ -164,7 +134,7 @@ public class Taxi {
 	 * @return 出租车的信誉度。
 	 */
 	public int getCredit() {
-		return credit;
+		return fleet.getCredit(slot);
 	}
 
 	/**
@@ -186,7 +156,18 @@ public class Taxi {
 	 * @return 当前所在路口。
 	 */
 	public CityCross getStayCityCross() {
-		return stayCityCross;
+		return fleet.getCross(slot);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回出租车的运行状态。<br>
+	 *
+	 * @return 出租车的运行状态。
+	 */
+	public TaxiStatus getStatus() {
+		return fleet.getStatus(slot);
 	}
 
 	/**
@@ -197,7 +178,7 @@ public class Taxi {
 	 * @return 最近一次出租车运动的方向。
 	 */
 	public Direction getCurDirection() {
-		return curDirection;
+		return fleet.getHeading(slot);
 	}
 
 	/**
@@ -208,7 +189,7 @@ public class Taxi {
 	 * @return 是否处于等待服务状态。
 	 */
 	public boolean isWaiting() {
-		return status == TaxiStatus.WAIT;
+		return fleet.getStatus(slot) == TaxiStatus.WAIT;
 	}
 
 	/**
@@ -219,7 +200,7 @@ public class Taxi {
 	 * @param trace 是否被追踪。
 	 */
 	public void setTrace(boolean trace) {
-		this.trace = trace;
+		fleet.setTrace(slot, trace);
 	}
 
 	/**
@@ -237,6 +218,18 @@ public class Taxi {
 
 	}
 
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回与{@link #equals(Object)}一致的哈希值，即出租车id。<br>
+	 *
+	 * @return 哈希值。
+	 */
+	@Override
+	public int hashCode() {
+		return id;
+	}
+
 	/**
 	 * Requires:无。<br>
 	 * Modifies:无。<br>
@@ -248,15 +241,15 @@ public class Taxi {
 	public String toString() {
 		return "Taxi{" +
 				       "id=" + id +
-				       ", status=" + status +
+				       ", status=" + getStatus() +
 				       ", now=" + MyTimer.getMyTimer() +
-				       ", stayCityCross=" + stayCityCross +
-				       ", credit=" + credit +
+				       ", stayCityCross=" + getStayCityCross() +
+				       ", credit=" + getCredit() +
 				       '}';
 	}
 
 	public boolean repOk() {
-		return id > 0 && id <= 100 && credit >= 0 && stayCityCross != null && cityMap != null && lightsMap != null;
+		return id > 0 && id <= num && fleet != null && slot >= 0 && getCredit() >= 0;
 	}
 
 }
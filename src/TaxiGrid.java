@@ -0,0 +1,119 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Overview:
+ * The {@code TaxiGrid} class implements the encapsulation of the spatial index of taxi positions.
+ * <br>
+ * 表现对象：{@code int rows, int cols, int[] head, int[] next, int[] prev, int[] cell, Taxi[] slots, int size; }
+ * 分别表示地图行数，地图列数，每个路口的出租车链表头，链表后继，链表前驱，每辆出租车所在路口编号，出租车槽位，已索引出租车数量。
+ * <br>
+ * 抽象函数：{@code AF(c) = (cross -> {taxi | taxi.getStayCityCross() == cross}); }
+ * 表示每个路口上停留的出租车集合。
+ * <br>
+ * 查询不加锁，多个线程可以同时查询，但查询不能与{@link #update(List)}同时进行。
+ * <br>
+ * 不定式：{@code head.length == rows * cols && size <= slots.length;}
+ */
+public class TaxiGrid {
+	private final int rows;
+	private final int cols;
+	private final int[] head;
+	private int[] next = new int[16];
+	private int[] prev = new int[16];
+	private int[] cell = new int[16];
+	private Taxi[] slots = new Taxi[16];
+	private int size = 0;
+
+	/**
+	 * Requires:传入地图的行数和列数。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化一个空的出租车位置索引。<br>
+	 *
+	 * @param rows 地图行数。
+	 * @param cols 地图列数。
+	 */
+	public TaxiGrid(int rows, int cols) {
+		this.rows = rows;
+		this.cols = cols;
+		this.head = new int[rows * cols];
+		Arrays.fill(head, -1);
+	}
+
+	/**
+	 * Requires:传入一个只在末尾追加的出租车列表。<br>
+	 * Modifies:修改位置发生变化的出租车所在的链表，并索引新加入的出租车。<br>
+	 * Effects:使索引与出租车当前位置一致。<br>
+	 *
+	 * @param taxis 出租车列表。
+	 */
+	public synchronized void update(List<Taxi> taxis) {
+		for (int i = 0; i < taxis.size(); i++) {
+			Taxi taxi = taxis.get(i);
+			int now = taxi.getStayCityCross().getX() * cols + taxi.getStayCityCross().getY();
+			if (i == size) {
+				grow();
+				slots[size++] = taxi;
+			} else if (cell[i] == now) continue;
+			else unlink(i);
+			link(i, now);
+		}
+	}
+
+	/**
+	 * Requires:传入一个合法的路口，一个非负的半径和一个对出租车的操作。<br>
+	 * Modifies:无。<br>
+	 * Effects:对横纵坐标与该路口相差都不超过半径的所有出租车执行该操作。<br>
+	 *
+	 * @param center 中心路口。
+	 * @param radius 半径。
+	 * @param action 对出租车的操作。
+	 */
+	public void forEachNear(CityCross center, int radius, Consumer<Taxi> action) {
+		forEachIn(center.getX() - radius, center.getY() - radius, center.getX() + radius + 1, center.getY() + radius + 1, action);
+	}
+
+	/**
+	 * Requires:传入矩形范围的左上角坐标和右下角坐标（不含），以及一个对出租车的操作。<br>
+	 * Modifies:无。<br>
+	 * Effects:对矩形范围与地图重叠部分内的所有出租车执行该操作。<br>
+	 *
+	 * @param fromX  起始x坐标。
+	 * @param fromY  起始y坐标。
+	 * @param toX    结束x坐标，不含。
+	 * @param toY    结束y坐标，不含。
+	 * @param action 对出租车的操作。
+	 */
+	public void forEachIn(int fromX, int fromY, int toX, int toY, Consumer<Taxi> action) {
+		for (int x = Math.max(0, fromX); x < Math.min(rows, toX); x++)
+			for (int y = Math.max(0, fromY); y < Math.min(cols, toY); y++)
+				for (int i = head[x * cols + y]; i >= 0; i = next[i]) action.accept(slots[i]);
+	}
+
+	private void link(int slot, int now) {
+		cell[slot] = now;
+		prev[slot] = -1;
+		next[slot] = head[now];
+		if (head[now] >= 0) prev[head[now]] = slot;
+		head[now] = slot;
+	}
+
+	private void unlink(int slot) {
+		if (prev[slot] >= 0) next[prev[slot]] = next[slot];
+		else head[cell[slot]] = next[slot];
+		if (next[slot] >= 0) prev[next[slot]] = prev[slot];
+	}
+
+	private void grow() {
+		if (size < slots.length) return;
+		next = Arrays.copyOf(next, size * 2);
+		prev = Arrays.copyOf(prev, size * 2);
+		cell = Arrays.copyOf(cell, size * 2);
+		slots = Arrays.copyOf(slots, size * 2);
+	}
+
+	public boolean repOk() {
+		return head.length == rows * cols && size <= slots.length;
+	}
+}
@@ -1,73 +1,346 @@
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Overview:
  * The {@code TaxiSchedulingSystem} class implements the encapsulation of the taxiSchedulingSystem object.
  * <br>
- * 表现对象：{@code CityMap cityMap, LightsMap lightsMap, Vector<Taxi> taxis, Vector<Request> requestArrayList; }
- * 表明了城市路况地图，城市红绿灯信息图，出租车列表，请求队列。
+ * 表现对象：{@code CityMap cityMap, LightsMap lightsMap, Vector<Taxi> taxis, TaxiGrid taxiGrid, ConcurrentLinkedQueue<Runnable> inbox,
+ * ForkJoinPool stepPool, int[] flowEdges, boolean batchDispatch, CopyOnWriteArrayList<TraceReplay> replays,
+ * SchedulerShard[] shards, int shardRows, int shardCols, int adopted, Taxi[] roster, int[] statuses,
+ * ConcurrentLinkedQueue<Runnable> checkpoints, ExecutorService checkpointWriter, AtomicInteger writing, Snapshot lastSnapshot,
+ * String checkpointFile, int checkpointInterval; }
+ * 表明了城市路况地图，城市红绿灯信息图，出租车列表，出租车位置索引，用户操作收件箱，并行运行各分片的线程池，
+ * 每辆出租车当前计入车流的道路编号，是否批量分派，正在回放的请求轨迹，按区域划分的调度分片，分片的行数和列数，已交给分片的出租车数，已交给分片的出租车（每个时间片遍历它而不是加锁的出租车列表），以及统计各状态出租车数的缓存，
+ * 以及时间片结束时要保存的快照，在后台写快照文件的线程，正在写的快照数，上一份快照，定期保存的快照文件名（不定期保存时为null）和保存间隔的时间片数。
+ * <br>
+ * 地图被划分为{@code shardRows * shardCols}个矩形区域，每个区域由一个{@link SchedulerShard}管理其中发出的请求和停留的出租车。
+ * 每个时间片依次执行选车，抢单，运行三个阶段，每个阶段各分片在线程池中并行执行，全部完成后才进入下一阶段，
+ * 阶段之间由调度线程按分片顺序确认接单（不是全城按到期时间的顺序，见{@link SchedulerShard}），并把驶出区域的出租车交给新的分片。
  * <br>
  * 抽象函数：{@code AF(c) = (TaxiSchedulingSystem); }
  * 表明了出租车调度系统。
  * <br>
- * 不定式：{@code cityMap != null && lightsMap != null && taxis != null && requestArrayList != null; }
+ * 不定式：{@code cityMap != null && lightsMap != null && taxis != null && taxiGrid != null && inbox != null && stepPool != null
+ * && shards.length == shardRows * shardCols && adopted <= taxis.size()
+ * && (each adopted taxi is owned by exactly one shard, the one whose region contains it); }
  */
 public class TaxiSchedulingSystem implements Runnable {
+	private static final int RADIUS = 2;
 	private CityMap cityMap;
 	private LightsMap lightsMap;
 	private Vector<Taxi> taxis;
-	private Vector<Request> requestArrayList;
+	private TaxiGrid taxiGrid;
+	private final ConcurrentLinkedQueue<Runnable> inbox = new ConcurrentLinkedQueue<>();
+	private final ForkJoinPool stepPool;
+	private int[] flowEdges = new int[0];
+	private volatile boolean batchDispatch = false;
+	private final CopyOnWriteArrayList<TraceReplay> replays = new CopyOnWriteArrayList<>();
+	private final SchedulerShard[] shards;
+	private final int shardRows;
+	private final int shardCols;
+	private int adopted = 0;
+	private Taxi[] roster = new Taxi[0];
+	private final int[] statuses = new int[TaxiStatus.values().length];
+	private final ConcurrentLinkedQueue<Runnable> checkpoints = new ConcurrentLinkedQueue<>();
+	private final ExecutorService checkpointWriter = Executors.newSingleThreadExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "checkpoint-writer");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final AtomicInteger writing = new AtomicInteger();
+	private Snapshot lastSnapshot;
+	private volatile String checkpointFile;
+	private volatile int checkpointInterval = 1;
+
+	/**
+	 * Requires:传入一张城市地图，一张红绿灯信息图，一个出租车列表，一个出租车位置索引，
+	 * Modifies:修改自身属性中的城市地图，出租车列表和出租车位置索引。
+	 * Effects:初始化该对象，整张地图只有一个分片。
+	 *
+	 * @param cityMap   城市路口地图。
+	 * @param lightsMap 红绿灯信息图。
+	 * @param taxis     出租车列表。
+	 * @param taxiGrid  出租车位置索引。
+	 */
+	public TaxiSchedulingSystem(CityMap cityMap, LightsMap lightsMap, Vector<Taxi> taxis, TaxiGrid taxiGrid) {
+		this(cityMap, lightsMap, taxis, taxiGrid, Runtime.getRuntime().availableProcessors(), 1);
+	}
 
 	/**
-	 * Requires:传入一张城市地图，一张红绿灯信息图，一个出租车列表，一个请求队列，
-	 * Modifies:修改自身属性中的城市地图，出租车列表和请求队列。
-	 * Effects:初始化该对象。
+	 * Requires:传入一张城市地图，一张红绿灯信息图，一个出租车列表，一个出租车位置索引，一个正整数表示并行度，一个正整数表示分片数，
+	 * Modifies:修改自身属性中的城市地图，出租车列表和出租车位置索引，新建线程池和各分片。
+	 * Effects:初始化该对象。分片数分解为尽量接近的行数和列数，地图按行列均分为矩形区域。
 	 *
-	 * @param cityMap          城市路口地图。
-	 * @param lightsMap        红绿灯信息图。
-	 * @param taxis            出租车列表。
-	 * @param requestArrayList 请求队列。
+	 * @param cityMap     城市路口地图。
+	 * @param lightsMap   红绿灯信息图。
+	 * @param taxis       出租车列表。
+	 * @param taxiGrid    出租车位置索引。
+	 * @param parallelism 并行运行各分片的线程数。
+	 * @param shardCount  分片数。
 	 */
-	public TaxiSchedulingSystem(CityMap cityMap, LightsMap lightsMap, Vector<Taxi> taxis, Vector<Request> requestArrayList) {
+	public TaxiSchedulingSystem(CityMap cityMap, LightsMap lightsMap, Vector<Taxi> taxis, TaxiGrid taxiGrid, int parallelism, int shardCount) {
 		this.lightsMap = lightsMap;
 		this.cityMap = cityMap;
 		this.taxis = taxis;
-		this.requestArrayList = requestArrayList;
+		this.taxiGrid = taxiGrid;
+		this.stepPool = new ForkJoinPool(parallelism);
+		int rows = cityMap.getRows(), cols = cityMap.getCols(), split = (int) Math.sqrt(shardCount);
+		while (shardCount % split != 0) split--;
+		this.shardRows = Math.min(split, rows);
+		this.shardCols = Math.min(shardCount / split, cols);
+		this.shards = new SchedulerShard[shardRows * shardCols];
+		Fleet fleet = Fleet.shared(cityMap, lightsMap);
+		for (int i = 0; i < shardRows; i++)
+			for (int j = 0; j < shardCols; j++)
+				shards[i * shardCols + j] = new SchedulerShard(bound(i, rows, shardRows), bound(j, cols, shardCols),
+						bound(i + 1, rows, shardRows), bound(j + 1, cols, shardCols), taxiGrid, fleet);
+	}
+
+	private static int bound(int index, int length, int parts) {
+		return (int) (((long) index * length + parts - 1) / parts);
+	}
+
+	private SchedulerShard shardOf(CityCross cityCross) {
+		return shards[(int) ((long) cityCross.getX() * shardRows / cityMap.getRows()) * shardCols
+				              + (int) ((long) cityCross.getY() * shardCols / cityMap.getCols())];
+	}
+
+	/**
+	 * Requires:传入一个不为空的用户操作。<br>
+	 * Modifies:修改用户操作收件箱。<br>
+	 * Effects:将用户操作放入收件箱，该操作会在下一个时间片开始时由调度线程执行。该方法不会阻塞。<br>
+	 *
+	 * @param operation 用户操作。
+	 */
+	public void submit(Runnable operation) {
+		inbox.add(operation);
+	}
+
+	/**
+	 * Requires:传入一个布尔值。<br>
+	 * Modifies:修改分派方式，从下一个时间片开始生效。<br>
+	 * Effects:为true时同一时间片到期的请求一起用{@link BatchDispatcher}分派，为false时按到期顺序逐个选车。<br>
+	 *
+	 * @param batchDispatch 是否批量分派。
+	 */
+	public void setBatchDispatch(boolean batchDispatch) {
+		this.batchDispatch = batchDispatch;
+	}
+
+	/**
+	 * Requires:传入轨迹文件名和被拒绝记录的报告输出。<br>
+	 * Modifies:新建并启动读入轨迹的后台线程，修改正在回放的轨迹列表。<br>
+	 * Effects:以当前模拟时间为起点回放轨迹，每条请求在记录时间到达时加入所在区域的分片。返回该回放以便查询接受和拒绝的记录数。<br>
+	 *
+	 * @param fileName 轨迹文件名。
+	 * @param rejects  被拒绝记录的报告输出。
+	 *
+	 * @return 该回放。
+	 */
+	public TraceReplay replay(String fileName, PrintStream rejects) {
+		TraceReplay replay = new TraceReplay(fileName, cityMap, rejects, MyTimer.getMyTimer().getTime());
+		Thread reader = new Thread(replay, "trace-replay");
+		reader.setDaemon(true);
+		reader.start();
+		replays.add(replay);
+		return replay;
+	}
+
+	/**
+	 * Requires:传入一个发出地在地图内的请求，只能在调度线程中调用。<br>
+	 * Modifies:修改请求发出地所在分片的待分派请求。<br>
+	 * Effects:加入请求，请求在发出{@link RequestQueue#WINDOW}毫秒后分派。<br>
+	 *
+	 * @param request 新请求。
+	 */
+	public void addRequest(Request request) {
+		shardOf(request.getStart()).addRequest(request);
+	}
+
+	/**
+	 * Requires:只能在调度线程中调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回所有分片中待分派的请求数。<br>
+	 *
+	 * @return 待分派请求数。
+	 */
+	public int getPendingCount() {
+		int count = 0;
+		for (SchedulerShard shard : shards) count += shard.getPendingCount();
+		return count;
+	}
+
+	/**
+	 * Requires:传入一个对请求的操作，只能在调度线程中调用。<br>
+	 * Modifies:无。<br>
+	 * Effects:按分片顺序对所有待分派请求执行该操作。<br>
+	 *
+	 * @param action 对请求的操作。
+	 */
+	public void forEachPending(Consumer<Request> action) {
+		for (SchedulerShard shard : shards) shard.forEachPending(action);
+	}
+
+	/**
+	 * Requires:传入一个可写的文件名，可以在任意线程中调用。<br>
+	 * Modifies:修改快照队列。<br>
+	 * Effects:在下一个时间片结束时复制完整的模拟状态，由后台线程写入该文件，返回写完（或失败）时完成的结果。该方法不会阻塞。<br>
+	 *
+	 * @param fileName 快照文件名。
+	 *
+	 * @return 写快照的结果。
+	 */
+	public CompletableFuture<Void> checkpoint(String fileName) {
+		CompletableFuture<Void> written = new CompletableFuture<>();
+		checkpoints.add(() -> write(capture(), fileName, written));
+		return written;
+	}
+
+	/**
+	 * Requires:传入快照文件名（null表示不再定期保存）和一个正整数表示保存间隔的时间片数，可以在任意线程中调用。<br>
+	 * Modifies:修改定期保存的设置。<br>
+	 * Effects:此后每{@code intervalTicks}个时间片结束时保存一次快照，上一次保存还没有写完时跳过本次。<br>
+	 *
+	 * @param fileName      快照文件名。
+	 * @param intervalTicks 保存间隔的时间片数。
+	 */
+	public void setCheckpoint(String fileName, int intervalTicks) {
+		if (intervalTicks <= 0) throw new IllegalArgumentException("checkpoint interval must be positive");
+		this.checkpointInterval = intervalTicks;
+		this.checkpointFile = fileName;
+	}
+
+	/**
+	 * Requires:出租车列表中的出租车所在道路的车流已经计入城市地图（例如由{@link Snapshot#restoreCityMap()}恢复），只能在调度线程启动前调用。<br>
+	 * Modifies:修改每辆出租车当前计入车流的道路编号。<br>
+	 * Effects:记录每辆出租车当前计入车流的道路，使第一个时间片移动车流时不重复计入。<br>
+	 */
+	public void seedFlow() {
+		flowEdges = new int[taxis.size()];
+		for (int i = 0; i < flowEdges.length; i++) {
+			Taxi taxi = taxis.get(i);
+			flowEdges[i] = taxi instanceof VipTaxi ? -1 : cityMap.flowEdge(taxi.getStayCityCross(), taxi.getCurDirection());
+		}
+	}
+
+	private Snapshot capture() {
+		return lastSnapshot = Snapshot.capture(cityMap, lightsMap, Arrays.copyOf(roster, adopted), this, MyTimer.getMyTimer().getTime(), lastSnapshot);
+	}
+
+	private void write(Snapshot snapshot, String fileName, CompletableFuture<Void> written) {
+		writing.incrementAndGet();
+		checkpointWriter.execute(() -> {
+			try {
+				snapshot.write(fileName);
+				written.complete(null);
+			} catch (Throwable e) {
+				written.completeExceptionally(e);
+			} finally {
+				writing.decrementAndGet();
+			}
+		});
 	}
 
 	@Override
 	public void run() {
-		while (true) synchronized (requestArrayList) {
-			synchronized (taxis) {
-				synchronized (cityMap) {
-					MyTimer.getMyTimer().count();
-					if (MyTimer.getMyTimer().getTime() % 300 == 0) lightsMap.changeLights();
-					for (int i = 0; i < requestArrayList.size(); i++) {
-						Request now = requestArrayList.get(i);
-						if (MyTimer.getMyTimer().getTime() - now.getStartTime() < 3000) continue;
-						Taxi theTaxi = now.chooseTheTaxi();
-						if (theTaxi == null) System.out.println(now + " can not be finished!");
-						else theTaxi.carryRequest(now);
-						requestArrayList.remove(i--);
-					}
-					for (Request request : requestArrayList)
-						for (Taxi taxi : taxis)
-							if (request.canRegister(taxi)) {
-								request.register(taxi);
-								System.out.println("taxi No." + taxi.getId() + " register the " + request + " at " + MyTimer.getMyTimer());
-							}
-					for (Taxi taxi : taxis) taxi.run();
-					cityMap.clearFlow();
-					for (Taxi taxi : taxis) {
-						if (!(taxi instanceof VipTaxi))
-							cityMap.addFlow(taxi.getStayCityCross(), taxi.getCurDirection());
-					}
-				}
+		while (true) tick();
+	}
+
+	/**
+	 * Requires:只能在调度线程中调用。<br>
+	 * Modifies:修改计时器，各分片的请求和出租车，出租车状态，出租车位置索引和车流信息。<br>
+	 * Effects:运行一个时间片：推进计时器，执行收件箱中的用户操作，投放回放轨迹中到期的请求，
+	 * 各分片并行为到期请求选车后按分片顺序接单，各分片并行抢单，各分片并行运行出租车后交接驶出区域的出租车，最后发布车流信息，并把各阶段耗时，队列深度和出租车状态分布记入{@link Metrics}，
+	 * 然后复制要求保存的快照，交给后台线程写入。<br>
+	 */
+	public void tick() {
+		MyTimer.getMyTimer().count();
+		long now = MyTimer.getMyTimer().getTime(), started = System.nanoTime();
+		for (Runnable operation = inbox.poll(); operation != null; operation = inbox.poll()) operation.run();
+		for (TraceReplay replay : replays)
+			if (replay.deliver(now, this::addRequest)) replays.remove(replay);
+		for (; adopted < taxis.size(); adopted++) {
+			if (adopted == roster.length) roster = Arrays.copyOf(roster, Math.max(16, adopted * 2));
+			roster[adopted] = taxis.get(adopted);
+			shardOf(roster[adopted].getStayCityCross()).addTaxi(roster[adopted]);
+		}
+		boolean batch = batchDispatch;
+		inParallel(shard -> shard.choose(now, batch));
+		for (SchedulerShard shard : shards) {
+			Taxi[] chosen = shard.getChosen();
+			for (int i = 0; i < shard.getDue().size(); i++) {
+				Request request = shard.getDue().get(i);
+				boolean rechosen = chosen[i] != null && !chosen[i].isWaiting();
+				Taxi theTaxi = rechosen ? request.chooseTheTaxi() : chosen[i];
+				if (theTaxi == null) EventLog.getEventLog().miss(request);
+				else theTaxi.carryRequest(request);
+				Metrics.getMetrics().dispatch(request, theTaxi != null, rechosen);
 			}
 		}
+		long dispatched = System.nanoTime();
+		inParallel(shard -> shard.register(RADIUS));
+		long registered = System.nanoTime();
+		inParallel(SchedulerShard::step);
+		for (SchedulerShard shard : shards)
+			for (Taxi taxi : shard.getLeaving()) shardOf(taxi.getStayCityCross()).addTaxi(taxi);
+		taxiGrid.update(Arrays.asList(roster).subList(0, adopted));
+		long stepped = System.nanoTime();
+		if (flowEdges.length < adopted) {
+			int old = flowEdges.length;
+			flowEdges = Arrays.copyOf(flowEdges, adopted);
+			Arrays.fill(flowEdges, old, flowEdges.length, -1);
+		}
+		Arrays.fill(statuses, 0);
+		for (int i = 0; i < adopted; i++) {
+			Taxi taxi = roster[i];
+			statuses[taxi.getStatus().ordinal()]++;
+			int edge = taxi instanceof VipTaxi ? -1 : cityMap.flowEdge(taxi.getStayCityCross(), taxi.getCurDirection());
+			cityMap.moveFlow(flowEdges[i], edge);
+			flowEdges[i] = edge;
+		}
+		cityMap.publishFlow();
+		Metrics.getMetrics().gauge(getPendingCount(), statuses);
+		Metrics.getMetrics().tick(dispatched - started, registered - dispatched, stepped - registered, System.nanoTime() - stepped);
+		for (Runnable checkpoint = checkpoints.poll(); checkpoint != null; checkpoint = checkpoints.poll()) checkpoint.run();
+		String fileName = checkpointFile;
+		if (fileName != null && now / MyTimer.TICK % checkpointInterval == 0 && writing.get() == 0)
+			write(capture(), fileName, new CompletableFuture<>());
+	}
+
+	private void inParallel(Consumer<SchedulerShard> phase) {
+		if (shards.length == 1) stepPool.invoke(ForkJoinTask.adapt(() -> phase.accept(shards[0])));
+		else stepPool.invoke(ForkJoinTask.adapt(() -> Arrays.stream(shards).parallel().forEach(phase)));
+	}
+
+	/**
+	 * Requires:传入一个不为空的请求，只能在调度线程中调用。<br>
+	 * Modifies:修改请求的候选出租车队列和相应出租车的信誉度。<br>
+	 * Effects:让请求发出地附近所有可以抢单的出租车抢单，并记录相应事件。<br>
+	 *
+	 * @param request 待抢的请求。
+	 */
+	public void register(Request request) {
+		taxiGrid.forEachNear(request.getStart(), RADIUS, taxi -> SchedulerShard.register(request, taxi));
 	}
 
 	public boolean repOk() {
-		return cityMap != null && lightsMap != null && taxis != null && requestArrayList != null;
+		HashSet<Taxi> owned = new HashSet<>();
+		boolean[] misplaced = {false};
+		for (SchedulerShard shard : shards)
+			shard.forEachTaxi(taxi -> misplaced[0] |= !owned.add(taxi) || shardOf(taxi.getStayCityCross()) != shard);
+		return cityMap != null && lightsMap != null && taxis != null && taxiGrid != null && inbox != null && stepPool != null
+				       && shards.length == shardRows * shardCols && adopted <= taxis.size() && owned.size() == adopted && !misplaced[0];
 	}
 }
@@ -0,0 +1,169 @@
+import java.util.Arrays;
+
+/**
+ * Overview:
+ * The {@code TimedRouteSearch} class implements the earliest-arrival search on the city map under the traffic light schedule.
+ * <br>
+ * 表现对象：{@code int cells, int[] stamp, int[] closed, int[] elapsed, int[] parent, long[] heap, int heapSize, int generation, int expanded; }
+ * 分别表示地图路口数，到达状态的有效代数标记，已展开标记，到达状态经过的时间片数，到达状态的前一个状态，以{@code f << 32 | state}为键的二叉堆，
+ * 堆大小，当前代数，上一次查询展开的状态数。
+ * <br>
+ * 出租车每个时间片要么沿一条道路走一步，要么停在原地，能否驶出路口由{@link LightsMap#allows(int, int, int)}按来向和去向决定。
+ * 每个路口的红绿灯每{@link LightsMap#PERIOD}毫秒反转一次，因此红绿灯的状态以{@code PHASES}个时间片为周期，
+ * 搜索的状态为（路口，来向，时间片相位），每个状态的编号为{@code (node * 4 + heading) * PHASES + phase}，每一步代价为一个时间片。
+ * 从起点出发正向A*搜索，启发函数为到终点的曼哈顿距离，第一次取出终点时得到最早到达的路径。
+ * 只有在路口有红灯挡住某个去向时才扩展原地等待。每个线程使用自己的缓冲区，通过代数标记代替清空。
+ * <br>
+ * 抽象函数：{@code AF(c) = (state -> earliest arrival); }
+ * 表示上一次查询中已到达状态的最早到达时间片数。
+ * <br>
+ * 不定式：{@code stamp.length == cells * 4 * PHASES && closed.length == stamp.length && elapsed.length == stamp.length && parent.length == stamp.length
+ * && heapSize <= heap.length && generation >= 0;}
+ */
+public class TimedRouteSearch {
+	public static final byte WAIT = 4;
+	private static final int PHASES = (int) (2 * LightsMap.PERIOD / MyTimer.TICK);
+	private static final ThreadLocal<TimedRouteSearch> SCRATCH = new ThreadLocal<>();
+	private final int cells;
+	private final int[] stamp;
+	private final int[] closed;
+	private final int[] elapsed;
+	private final int[] parent;
+	private long[] heap = new long[64];
+	private int heapSize = 0;
+	private int generation = 0;
+	private int expanded = 0;
+
+	private TimedRouteSearch(int cells) {
+		this.cells = cells;
+		this.stamp = new int[cells * 4 * PHASES];
+		this.closed = new int[stamp.length];
+		this.elapsed = new int[stamp.length];
+		this.parent = new int[stamp.length];
+	}
+
+	/**
+	 * Requires:传入地图路口数。<br>
+	 * Modifies:当前线程没有对应大小的缓冲区时新建之。<br>
+	 * Effects:返回当前线程的搜索缓冲区。<br>
+	 *
+	 * @param cells 地图路口数。
+	 *
+	 * @return 当前线程的搜索缓冲区。
+	 */
+	public static TimedRouteSearch forThread(int cells) {
+		TimedRouteSearch search = SCRATCH.get();
+		if (search == null || search.cells != cells) SCRATCH.set(search = new TimedRouteSearch(cells));
+		return search;
+	}
+
+	/**
+	 * Requires:传入一张不为空的城市地图和红绿灯信息图，地图列数，起点和终点编号，出租车在起点的来向编码，是否使用VipTaxi的道路信息，
+	 * 以及出租车在起点走第一步的模拟时间，终点必须从起点可达。<br>
+	 * Modifies:修改缓冲区。<br>
+	 * Effects:返回最早到达终点的路径，每个元素为一个时间片的动作：方向编码表示沿该方向走一步，{@code WAIT}表示停在原地。
+	 * 路径的最后一个动作总是走一步。起点与终点相同时返回空路径。<br>
+	 *
+	 * @param cityMap   城市地图。
+	 * @param lightsMap 红绿灯信息图。
+	 * @param cols      地图列数。
+	 * @param start     起点编号，即{@code x * cols + y}。
+	 * @param heading   起点的来向编码。
+	 * @param end       终点编号。
+	 * @param ifVip     是否为VipTaxi。
+	 * @param now       走第一步的模拟时间。
+	 *
+	 * @return 最早到达终点的路径。
+	 */
+	public byte[] search(CityMap cityMap, LightsMap lightsMap, int cols, int start, int heading, int end, boolean ifVip, long now) {
+		if (++generation == Integer.MAX_VALUE) {
+			Arrays.fill(stamp, 0);
+			Arrays.fill(closed, 0);
+			generation = 1;
+		}
+		int ex = end / cols, ey = end % cols, goal = -1;
+		heapSize = 0;
+		expanded = 0;
+		int first = (start * 4 + heading) * PHASES;
+		stamp[first] = generation;
+		elapsed[first] = 0;
+		parent[first] = -1;
+		push((long) (Math.abs(start / cols - ex) + Math.abs(start % cols - ey)) << 32 | first);
+		while (heapSize > 0) {
+			int state = (int) pop();
+			if (closed[state] == generation) continue;
+			closed[state] = generation;
+			expanded++;
+			int node = state / (4 * PHASES), cur = state / PHASES % 4, phase = state % PHASES, value = elapsed[state] + 1;
+			if (node == end) {
+				goal = state;
+				break;
+			}
+			int x = node / cols, y = node % cols, light = lightsMap.getLight(x, y, now + phase * MyTimer.TICK), nextPhase = (phase + 1) % PHASES;
+			boolean blocked = false;
+			for (int mask = cityMap.neighbours(node, ifVip); mask != 0; mask &= mask - 1) {
+				int code = Integer.numberOfTrailingZeros(mask);
+				if (!LightsMap.allows(light, cur, code)) {
+					blocked = true;
+					continue;
+				}
+				Direction direction = Direction.of(code);
+				int nx = x + direction.getX(), ny = y + direction.getY();
+				relax(state, ((nx * cols + ny) * 4 + code) * PHASES + nextPhase, value, Math.abs(nx - ex) + Math.abs(ny - ey));
+			}
+			if (blocked) relax(state, (node * 4 + cur) * PHASES + nextPhase, value, Math.abs(x - ex) + Math.abs(y - ey));
+		}
+		if (goal < 0) return CityMap.NOWAY;
+		byte[] ways = new byte[elapsed[goal]];
+		for (int state = goal, step = ways.length - 1; step >= 0; state = parent[state], step--)
+			ways[step] = parent[state] / (4 * PHASES) == state / (4 * PHASES) ? WAIT : (byte) (state / PHASES % 4);
+		return ways;
+	}
+
+	private void relax(int from, int to, int value, int estimate) {
+		if (stamp[to] == generation && elapsed[to] <= value) return;
+		stamp[to] = generation;
+		elapsed[to] = value;
+		parent[to] = from;
+		push((long) (value + estimate) << 32 | to);
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回上一次查询展开的状态数。<br>
+	 *
+	 * @return 展开的状态数。
+	 */
+	public int getExpanded() {
+		return expanded;
+	}
+
+	private void push(long entry) {
+		if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+		int i = heapSize++;
+		while (i > 0 && heap[(i - 1) >> 1] > entry) {
+			heap[i] = heap[(i - 1) >> 1];
+			i = (i - 1) >> 1;
+		}
+		heap[i] = entry;
+	}
+
+	private long pop() {
+		long top = heap[0], last = heap[--heapSize];
+		int i = 0;
+		for (int child = 1; child < heapSize; child = 2 * i + 1) {
+			if (child + 1 < heapSize && heap[child + 1] < heap[child]) child++;
+			if (heap[child] >= last) break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = last;
+		return top;
+	}
+
+	public boolean repOk() {
+		return stamp.length == cells * 4 * PHASES && closed.length == stamp.length && elapsed.length == stamp.length && parent.length == stamp.length
+				       && heapSize <= heap.length && generation >= 0;
+	}
+}
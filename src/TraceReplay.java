@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Overview:
+ * The {@code TraceReplay} class implements the bulk ingestion of requests replayed from a trace file.
+ * <br>
+ * 表现对象：{@code String fileName, CityMap cityMap, PrintStream rejects, long offset, BlockingQueue<Batch> batches,
+ * Batch current, int cursor, boolean finished, long accepted, AtomicLong rejected; }
+ * 分别表示轨迹文件名，城市地图，被拒绝记录的报告输出，回放开始时的模拟时间，已解码记录批次的有界队列，正在投放的批次，批次中下一条记录的位置，
+ * 是否已投放完毕，已接受的记录数和被拒绝的记录数。
+ * <br>
+ * 后台读线程只解码轨迹，检查格式和时间顺序，每{@code BATCH}条记录作为一批放入有界队列，不访问城市地图。
+ * 调度线程每个时间片调用{@link #deliver(long, Consumer)}，对所有已到期的记录校验地图范围，起止点是否相同和是否可达并新建请求，
+ * 以记录时间加上回放开始时间作为发出时间交给调度系统，因此校验使用的总是当前的道路信息。
+ * 被拒绝的记录连同编号和原因写到报告输出。队列满时读线程等待；队列空时调度线程不等待，留到下一个时间片再取，
+ * 因此读线程再慢也不会拖住模拟时钟，内存占用有界。批次只保存解码后的字段，投放时被拒绝的记录在报告时才转换为文本。
+ * <br>
+ * 抽象函数：{@code AF(c) = (requests not yet delivered); }
+ * 表示尚未投放的请求序列。
+ * <br>
+ * 不定式：{@code fileName != null && cityMap != null && rejects != null && batches != null && current != null && 0 <= cursor <= current.size;}
+ */
+public class TraceReplay implements Runnable {
+	private static final int BATCH = 1024;
+	private static final Batch END = new Batch();
+	private final String fileName;
+	private final CityMap cityMap;
+	private final PrintStream rejects;
+	private final long offset;
+	private final BlockingQueue<Batch> batches = new ArrayBlockingQueue<>(16);
+	private Batch current = new Batch();
+	private int cursor = 0;
+	private boolean finished = false;
+	private volatile long accepted = 0;
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Requires:传入轨迹文件名，城市地图，被拒绝记录的报告输出，以及回放开始时的模拟时间。<br>
+	 * Modifies:修改自身属性。<br>
+	 * Effects:初始化该对象，需要另外启动线程运行{@link #run()}读入轨迹。<br>
+	 *
+	 * @param fileName 轨迹文件名。
+	 * @param cityMap  城市地图。
+	 * @param rejects  被拒绝记录的报告输出。
+	 * @param offset   回放开始时的模拟时间，单位为毫秒。
+	 */
+	public TraceReplay(String fileName, CityMap cityMap, PrintStream rejects, long offset) {
+		this.fileName = fileName;
+		this.cityMap = cityMap;
+		this.rejects = rejects;
+		this.offset = offset;
+	}
+
+	@Override
+	public void run() {
+		try (RequestTrace trace = new RequestTrace(fileName)) {
+			long last = Long.MIN_VALUE;
+			Batch batch = new Batch();
+			while (trace.next()) {
+				String reason = trace.getError();
+				if (reason == null && trace.getTime() < last) reason = "out of order";
+				if (reason != null) {
+					reject(trace.getRecord(), reason, trace.getRaw());
+					continue;
+				}
+				last = trace.getTime();
+				batch.add(trace);
+				if (batch.size == BATCH) {
+					batches.put(batch);
+					batch = new Batch();
+				}
+			}
+			if (batch.size > 0) batches.put(batch);
+		} catch (IOException e) {
+			synchronized (rejects) {
+				rejects.println(fileName + ": " + e.getMessage());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			synchronized (rejects) {
+				rejects.flush();
+			}
+			try {
+				batches.put(END);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void reject(long record, String reason, String raw) {
+		rejected.incrementAndGet();
+		synchronized (rejects) {
+			rejects.println(fileName + ":" + record + ": " + reason + ": " + raw);
+		}
+	}
+
+	/**
+	 * Requires:传入当前模拟时间和接收请求的操作，只能在调度线程中调用。<br>
+	 * Modifies:修改正在投放的批次和位置，报告被拒绝的记录。<br>
+	 * Effects:按发出时间顺序校验所有发出时间不晚于当前时间的记录，把合格的请求交给该操作。
+	 * 读线程还没有读入下一批时立即返回，不会阻塞。返回轨迹是否已全部投放。<br>
+	 *
+	 * @param now     当前模拟时间。
+	 * @param request 接收请求的操作。
+	 *
+	 * @return 是否已全部投放。
+	 */
+	public boolean deliver(long now, Consumer<Request> request) {
+		while (!finished) {
+			if (cursor == current.size) {
+				Batch next = batches.poll();
+				if (next == null) return false;
+				current = next;
+				cursor = 0;
+				finished = current == END;
+				continue;
+			}
+			if (offset + current.times[cursor] > now) return false;
+			int i = cursor++;
+			try {
+				request.accept(new Request(current.sx[i], current.sy[i], current.ex[i], current.ey[i], cityMap, offset + current.times[i]));
+				accepted++;
+			} catch (Exception e) {
+				reject(current.records[i], e.getMessage(), RequestTrace.format(current.times[i], current.sx[i], current.sy[i], current.ex[i], current.ey[i]));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回到目前为止通过校验的记录数。<br>
+	 *
+	 * @return 已接受的记录数。
+	 */
+	public long getAccepted() {
+		return accepted;
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回到目前为止被拒绝的记录数。<br>
+	 *
+	 * @return 被拒绝的记录数。
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	public boolean repOk() {
+		return fileName != null && cityMap != null && rejects != null && batches != null && current != null && cursor >= 0 && cursor <= current.size;
+	}
+
+	/**
+	 * Overview:
+	 * 一批已解码但尚未校验的轨迹记录。
+	 * <br>
+	 * 表现对象：{@code long[] records, long[] times, int[] sx, int[] sy, int[] ex, int[] ey, int size; }
+	 * 分别表示每条记录的编号，记录时间，起止点坐标，以及记录数。
+	 * <br>
+	 * 不定式：{@code 0 <= size <= BATCH;}
+	 */
+	private static class Batch {
+		private final long[] records = new long[BATCH];
+		private final long[] times = new long[BATCH];
+		private final int[] sx = new int[BATCH];
+		private final int[] sy = new int[BATCH];
+		private final int[] ex = new int[BATCH];
+		private final int[] ey = new int[BATCH];
+		private int size = 0;
+
+		private void add(RequestTrace trace) {
+			records[size] = trace.getRecord();
+			times[size] = trace.getTime();
+			sx[size] = trace.getSx();
+			sy[size] = trace.getSy();
+			ex[size] = trace.getEx();
+			ey[size++] = trace.getEy();
+		}
+	}
+}
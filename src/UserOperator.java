@@ -5,38 +5,38 @@ import java.util.Vector;
  * Overview:
  * The {@code UserOperator} class implements the thread safety the encapsulation of the user action.
  * <br>
- * 表现对象：{@code Vector<Request> requestArrayList, Vector<Taxi> taxis, CityMap cityMap; }
- * 表明了请求队列，出租车队列，和城市路口路况地图。
+ * 表现对象：{@code Vector<Taxi> taxis, CityMap cityMap, TaxiSchedulingSystem scheduler; }
+ * 表明了出租车队列，城市路口路况地图和出租车调度系统。所有修改操作都通过调度系统的收件箱在时间片边界执行。
  * <br>
  * 抽象函数：{@code AF(x) = (UserOperator); }
  * 表明了一个用户操作类。
  * <br>
- * 不定式：{@code requestArrayList != null && taxis != null && cityMap != null;}
+ * 不定式：{@code taxis != null && cityMap != null && scheduler != null;}
  */
 public class UserOperator {
-	private Vector<Request> requestArrayList;
 	private Vector<Taxi> taxis;
 	private CityMap cityMap;
+	private TaxiSchedulingSystem scheduler;
 
 	/**
-	 * Requires:传入一个出租车列表，一个请求队列，一张城市地图。<br>
-	 * Modifies:修改自身的出租车列表，请求队列和城市地图。<br>
+	 * Requires:传入一个出租车列表，一张城市地图，一个出租车调度系统。<br>
+	 * Modifies:修改自身的出租车列表，城市地图和出租车调度系统。<br>
 	 * Effects:初始化该对象。
 	 *
-	 * @param taxis            出租车列表。
-	 * @param requestArrayList 请求队列。
-	 * @param cityMap          城市地图。
+	 * @param taxis     出租车列表。
+	 * @param cityMap   城市地图。
+	 * @param scheduler 出租车调度系统。
 	 */
-	public UserOperator(Vector<Taxi> taxis, Vector<Request> requestArrayList, CityMap cityMap) {
+	public UserOperator(Vector<Taxi> taxis, CityMap cityMap, TaxiSchedulingSystem scheduler) {
 		this.taxis = taxis;
-		this.requestArrayList = requestArrayList;
 		this.cityMap = cityMap;
+		this.scheduler = scheduler;
 	}
 
 	/**
 	 * Requires:传入四个正整数，前两个表示请求发出地的坐标，后两个表示请求目的地的坐标。<br>
-	 * Modifies:修改请求队列。<br>
-	 * Effects:向请求队列中添加新请求，并输出出租车抢单的相应信息。
+	 * Modifies:修改调度系统的待分派请求。<br>
+	 * Effects:立即记录请求发出时间，并在下一个时间片开始时向调度系统添加新请求，输出出租车抢单的相应信息。
 	 *
 	 * @param sx 出发地x坐标。
 	 * @param sy 出发地y坐标。
@@ -44,28 +44,25 @@ public class UserOperator {
 	 * @param ey 目的地y坐标。
 	 */
 	public void addRequest(int sx, int sy, int ex, int ey) {
-		synchronized (requestArrayList) {
-			try {
-				Request request = new Request(sx, sy, ex, ey);
-				taxis.stream().filter(request::canRegister).forEach(taxi -> {
-					request.register(taxi);
-					System.out.println("taxi No." + taxi.getId() + " taxi register the " + request + " at " + MyTimer.getMyTimer());
-				});
-				requestArrayList.add(request);
-			} catch (Throwable ignored) {
-			}
+		try {
+			Request request = new Request(sx, sy, ex, ey, cityMap);
+			scheduler.submit(() -> {
+				scheduler.register(request);
+				scheduler.addRequest(request);
+			});
+		} catch (Throwable ignored) {
 		}
 	}
 
 	/**
 	 * Requires:传入一个正整数表示出租车id<br>
 	 * Modifies:无。<br>
-	 * Effects:打印相应id的出租车信息，若无相应id的出租车则没有操作。<br>
+	 * Effects:在下一个时间片开始时打印相应id的出租车信息，若无相应id的出租车则没有操作。<br>
 	 *
 	 * @param i 出租车的id。
 	 */
 	public void showTaxi(int i) {
-		synchronized (taxis) {
+		scheduler.submit(() -> {
 			try {
 				for (Taxi taxi : taxis)
 					if (taxi.getId() == i) {
@@ -74,19 +71,19 @@ public class UserOperator {
 					}
 			} catch (Throwable ignored) {
 			}
-		}
+		});
 	}
 
 	/**
 	 * Requires:传入一个正整数表示出租车id。<br>
 	 * Modifies:修改相应id的出租车的追踪标记位。<br>
-	 * Effects:将相应id的出租车标记为被追踪，或不被追踪。若flag为true则追踪，否则不追踪。<br>
+	 * Effects:在下一个时间片开始时将相应id的出租车标记为被追踪，或不被追踪。若flag为true则追踪，否则不追踪。<br>
 	 *
 	 * @param i    出租车的id。
 	 * @param flag 是否追踪的标记。
 	 */
 	public void setTraceTaxi(int i, boolean flag) {
-		synchronized (taxis) {
+		scheduler.submit(() -> {
 			try {
 				for (Taxi taxi : taxis)
 					if (taxi.getId() == i) {
@@ -95,27 +92,26 @@ public class UserOperator {
 					}
 			} catch (Throwable ignored) {
 			}
-
-		}
+		});
 	}
 
 	/**
 	 * Requires:传入3个整数，前两个表示路口的坐标，最后一个表示想要修改成为的道路信息。<br>
 	 * Modifies:修改相应路口的道路信息。<br>
-	 * Effects:将相应路口的道路信息更新。<br>
+	 * Effects:在下一个时间片开始时将相应路口的道路信息更新。<br>
 	 *
 	 * @param x      路口位置的x坐标。
 	 * @param y      路口位置的y坐标。
 	 * @param status 路口的右方和下方的路况。
 	 */
 	public void setRoad(int x, int y, int status) {
-		synchronized (cityMap) {
+		scheduler.submit(() -> {
 			try {
-				if (cityMap.markRoad(new CityCross(x, y), status))
-					System.out.println("The city (" + x + "," + y + ") is set to " + status);
+				if (cityMap.contains(x, y) && cityMap.markRoad(cityMap.cross(x, y), status))
+					System.out.println("The city (" + x + "," + y + ") is set to " + status + ", " + cityMap.getInvalidatedPairs() + " routes changed");
 			} catch (Throwable ignored) {
 			}
-		}
+		});
 	}
 
 	/**
@@ -127,7 +123,6 @@ public class UserOperator {
 	 * @throws Exception 无出租车异常或非VipTaxi异常。
 	 */
 	public int getTaxiServiceTime(int taxiId) throws Exception {
-		if (taxiId < 1 || taxiId > 100) throw new Exception("No Such Taxi!");
 		VipTaxi nowTaxi = null;
 		for (Taxi taxi : taxis)
 			if (taxi.getId() == taxiId) {
@@ -136,7 +131,8 @@ public class UserOperator {
 				else throw new Exception("Not a VipTaxi!");
 				break;
 			}
-		return nowTaxi != null ? nowTaxi.getServiceTime() : 0;
+		if (nowTaxi == null) throw new Exception("No Such Taxi!");
+		return nowTaxi.getServiceTime();
 	}
 
 	/**
@@ -150,7 +146,6 @@ public class UserOperator {
 	 * @throws Exception 无出租车异常或非VipTaxi异常或无相应服务异常。
 	 */
 	public ListIterator getTaxiService(int taxiId, int serviceId) throws Exception {
-		if (taxiId < 1 || taxiId > 100) throw new Exception("No Such Taxi!");
 		VipTaxi nowTaxi = null;
 		for (Taxi taxi : taxis)
 			if (taxi.getId() == taxiId) {
@@ -159,10 +154,11 @@ public class UserOperator {
 				else throw new Exception("Not a VipTaxi!");
 				break;
 			}
-		return nowTaxi != null ? nowTaxi.getService(serviceId) : null;
+		if (nowTaxi == null) throw new Exception("No Such Taxi!");
+		return nowTaxi.getService(serviceId);
 	}
 
 	public boolean repOk() {
-		return requestArrayList != null && taxis != null && cityMap != null;
+		return taxis != null && cityMap != null && scheduler != null;
 	}
 }
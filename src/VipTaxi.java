@@ -1,6 +1,7 @@
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.ListIterator;
-import java.util.Random;
 
 /**
  * Overview:
@@ -33,77 +34,63 @@ public class VipTaxi extends Taxi {
 		super(stayCityCross, cityMap, lightsMap);
 		historyRequestsWay = new ArrayList<>();
 	}
+
+	/**
+	 * Requires:传入一个出租车现在的位置和一个车队，不能与车队运行同时调用。<br>
+	 * Modifies:在车队中占用一个槽位。<br>
+	 * Effects:初始化该对象。<br>
+	 *
+	 * @param stayCityCross 出租车当前位置。
+	 * @param fleet         车队。
+	 */
+	public VipTaxi(CityCross stayCityCross, Fleet fleet) {
+		super(stayCityCross, fleet);
+		historyRequestsWay = new ArrayList<>();
+	}
+
+	/**
+	 * Requires:传入一个出租车现在的位置，一个车队和一个正整数id，不能与车队运行同时调用。<br>
+	 * Modifies:在车队中占用一个槽位。<br>
+	 * Effects:以指定的id初始化该对象，用于从快照恢复。<br>
+	 *
+	 * @param stayCityCross 出租车当前位置。
+	 * @param fleet         车队。
+	 * @param id            出租车id。
+	 */
+	public VipTaxi(CityCross stayCityCross, Fleet fleet, int id) {
+		super(stayCityCross, fleet, id);
+		historyRequestsWay = new ArrayList<>();
+	}
+
 	/**
 	 * Requires:无。<br>
-	 * Modifies:修改状态和相关的状态信息。<br>
+	 * Modifies:修改状态和相关的状态信息，载客行驶时记录经过的路口，完成请求时记录本次服务路程。<br>
 	 * Effects:模拟出租车运行的过程。<br>
-	 * 满足LSP原则，对父类的方法进行改写。
+	 * 满足LSP原则，对父类的方法进行扩写。
 	 */
 	@Override
 	public void run() {
-		Direction tempDirection;
-		CityCross nextCityCross;
-		switch (status) {
-			case WAIT:
-				waitTime += TIMEUNIT;
-				int minFlow = cityMap.getFlow(stayCityCross, Direction.UP);
-				for (Direction direction : Direction.values())
-					minFlow = minFlow > cityMap.getFlow(stayCityCross, direction) ? cityMap.getFlow(stayCityCross, direction) : minFlow;
-				ArrayList<Direction> temp = new ArrayList<>();
-				for (Direction direction : Direction.values())
-					if (cityMap.getFlow(stayCityCross, direction) == minFlow) temp.add(direction);
-				do {
-					tempDirection = temp.get(new Random().nextInt(temp.size()));
-					nextCityCross = stayCityCross.moveOn(tempDirection);
-				} while (!nextCityCross.repOk() || !cityMap.canMove(stayCityCross, nextCityCross));
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = nextCityCross;
-				if (waitTime == WAITUPPERTIME) {
-					waitTime = 0;
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case READY:
-				directions = cityMap.getTheShortestWay(stayCityCross, aim.getStart(), true);
-				tempDirection = directions.remove(0);
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = stayCityCross.moveOn(curDirection);
-				if (directions.isEmpty()) {
-					directions = cityMap.getTheShortestWay(aim.getStart(), aim.getEnd(), true);
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case WORK:
-				directions = cityMap.getTheShortestWay(stayCityCross, aim.getEnd(), true);
-				tempDirection = directions.remove(0);
-				if (!lightsMap.checkLights(stayCityCross, curDirection, tempDirection)) return;
-				curDirection = tempDirection;
-				stayCityCross = stayCityCross.moveOn(curDirection);
-				nowWays += "->(" + stayCityCross.getX() + "," + stayCityCross.getY() + ")";
-				if (directions.isEmpty()) {
-					credit += 3;
-					System.out.println("taxi No." + id + " finished the " + aim + " at " + MyTimer.getMyTimer());
-					System.out.println("now taxi No." + id + " credit: " + credit);
-					synchronized (historyRequestsWay) {
-						historyRequestsWay.add(nowWays);
-					}
-					nowWays = null;
-					aim = null;
-					status = TaxiStatus.STOP;
-				}
-				break;
-			case STOP:
-				waitTime += TIMEUNIT;
-				if (waitTime == STOPUPPERTIME) {
-					waitTime = 0;
-					if (aim == null) status = TaxiStatus.WAIT;
-					else status = TaxiStatus.WORK;
-				}
-				break;
+		record(fleet.step(slot));
+	}
+
+	/**
+	 * Requires:传入该出租车刚运行的一个时间片发生的事件位，只能由运行该出租车的线程调用。<br>
+	 * Modifies:载客行驶时修改当前服务路程，完成请求时把当前服务路程加入服务记录。<br>
+	 * Effects:按{@link Fleet#step(int)}返回的事件更新服务记录。<br>
+	 *
+	 * @param events 事件位。
+	 */
+	void record(int events) {
+		if ((events & Fleet.MOVED_WITH_PASSENGER) != 0) {
+			CityCross stayCityCross = getStayCityCross();
+			nowWays += "->(" + stayCityCross.getX() + "," + stayCityCross.getY() + ")";
+		}
+		if ((events & Fleet.FINISHED) != 0) {
+			synchronized (historyRequestsWay) {
+				historyRequestsWay.add(nowWays);
+			}
+			nowWays = null;
 		}
-		if (trace) System.out.println(this);
 	}
 
 	/**
@@ -119,6 +106,66 @@ public class VipTaxi extends Taxi {
 		}
 	}
 
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回所有已完成服务路程的副本，按完成顺序排列。<br>
+	 *
+	 * @return 已完成服务路程。
+	 */
+	public List<String> getHistory() {
+		synchronized (historyRequestsWay) {
+			return new ArrayList<>(historyRequestsWay);
+		}
+	}
+
+	/**
+	 * Requires:传入之前由该方法或{@link #getHistory()}得到的服务路程数组，可以为null。<br>
+	 * Modifies:无。<br>
+	 * Effects:服务记录只会在末尾追加，因此传入的数组是当前记录的前缀。没有新记录时直接返回传入的数组，
+	 * 否则返回新数组，只复制传入数组之后新增的记录，前缀从传入的数组复制。<br>
+	 *
+	 * @param known 之前得到的服务路程。
+	 *
+	 * @return 所有已完成服务路程，按完成顺序排列，调用者不能修改。
+	 */
+	String[] getHistory(String[] known) {
+		synchronized (historyRequestsWay) {
+			int size = historyRequestsWay.size(), from = known == null || known.length > size ? 0 : known.length;
+			if (known != null && from == size) return known;
+			String[] history = from == 0 ? new String[size] : Arrays.copyOf(known, size);
+			for (int i = from; i < size; i++) history[i] = historyRequestsWay.get(i);
+			return history;
+		}
+	}
+
+	/**
+	 * Requires:无。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回当前服务已经过的路程，没有在服务时返回null。<br>
+	 *
+	 * @return 当前服务路程。
+	 */
+	public String getNowWays() {
+		return nowWays;
+	}
+
+	/**
+	 * Requires:传入已完成服务路程和当前服务路程（可以为null），不能与出租车运行同时调用。<br>
+	 * Modifies:替换历史完成请求记录和当前完成请求记录。<br>
+	 * Effects:把服务记录恢复到快照中的状态。<br>
+	 *
+	 * @param history 已完成服务路程。
+	 * @param ways    当前服务路程。
+	 */
+	public void restoreHistory(List<String> history, String ways) {
+		synchronized (historyRequestsWay) {
+			historyRequestsWay.clear();
+			historyRequestsWay.addAll(history);
+		}
+		nowWays = ways;
+	}
+
 	/**
 	 * Requires:传入1个整数，表示需要查询的已完成服务的序号。<br>
 	 * Modifies:无。<br>
@@ -163,7 +210,21 @@ public class VipTaxi extends Taxi {
 	 */
 	@Override
 	public int howFar(CityCross cityCross) {
-		return cityMap.getTheShortestWay(stayCityCross, cityCross, true).size();
+		return fleet.getCityMap().getDistance(getStayCityCross(), cityCross, true);
+	}
+
+	/**
+	 * Requires:传入一个地图内的路口。<br>
+	 * Modifies:无。<br>
+	 * Effects:如果出租车按原始道路从当前位置可以到达这个路口返回true，否则返回false。<br>
+	 * 满足LSP原则，对父类的方法进行改写。
+	 * @param cityCross 目的路口。
+	 *
+	 * @return 是否可达。
+	 */
+	@Override
+	public boolean canReach(CityCross cityCross) {
+		return fleet.getCityMap().reachable(getStayCityCross(), cityCross, true);
 	}
 
 	@Override
@@ -0,0 +1,70 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code BatchDispatcherTest} class checks the min-cost matching of {@link BatchDispatcher} against brute force on small instances.
+ * <br>
+ * 最优结果先使匹配数最大，再使总代价最小。
+ */
+public class BatchDispatcherTest {
+	private long bestCount, bestCost;
+
+	@Test
+	public void solveMatchesBruteForce() {
+		Random random = new Random(15);
+		BatchDispatcher batchDispatcher = new BatchDispatcher();
+		for (int round = 0; round < 3000; round++) {
+			int n = 1 + random.nextInt(6), m = 1 + random.nextInt(6);
+			int[] edgeStart = new int[n + 1], edgeTaxi = new int[n * m];
+			long[] edgeCost = new long[n * m];
+			int edges = 0;
+			for (int i = 0; i < n; i++) {
+				for (int taxi = 0; taxi < m; taxi++) {
+					if (random.nextInt(3) == 0) continue;
+					edgeTaxi[edges] = taxi;
+					edgeCost[edges++] = (long) random.nextInt(3) << 32 | random.nextInt(20);
+				}
+				edgeStart[i + 1] = edges;
+			}
+			int[] result = batchDispatcher.solve(n, m, edgeStart, edgeTaxi, edgeCost);
+			boolean[] used = new boolean[m];
+			long count = 0, cost = 0;
+			for (int i = 0; i < n; i++) {
+				if (result[i] < 0) continue;
+				assertTrue("taxi assigned twice", !used[result[i]]);
+				used[result[i]] = true;
+				count++;
+				int edge = edgeStart[i];
+				while (edge < edgeStart[i + 1] && edgeTaxi[edge] != result[i]) edge++;
+				assertTrue("assigned taxi did not register", edge < edgeStart[i + 1]);
+				cost += edgeCost[edge];
+			}
+			bestCount = -1;
+			brute(0, n, edgeStart, edgeTaxi, edgeCost, new boolean[m], 0, 0);
+			assertEquals(bestCount, count);
+			assertEquals(bestCost, cost);
+		}
+	}
+
+	private void brute(int i, int n, int[] edgeStart, int[] edgeTaxi, long[] edgeCost, boolean[] used, long count, long cost) {
+		if (i == n) {
+			if (count > bestCount || count == bestCount && cost < bestCost) {
+				bestCount = count;
+				bestCost = cost;
+			}
+			return;
+		}
+		brute(i + 1, n, edgeStart, edgeTaxi, edgeCost, used, count, cost);
+		for (int edge = edgeStart[i]; edge < edgeStart[i + 1]; edge++) {
+			if (used[edgeTaxi[edge]]) continue;
+			used[edgeTaxi[edge]] = true;
+			brute(i + 1, n, edgeStart, edgeTaxi, edgeCost, used, count + 1, cost + edgeCost[edge]);
+			used[edgeTaxi[edge]] = false;
+		}
+	}
+}
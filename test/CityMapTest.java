@@ -0,0 +1,63 @@
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code CityMapTest} class checks the adjacency masks and the distance index of {@link CityMap} against the road array
+ * after random road changes.
+ */
+public class CityMapTest {
+	@Test
+	public void neighboursFollowMarkRoad() {
+		Random random = new Random(13);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 9, 11, 0.7));
+		for (int round = 0; round < 200; round++) {
+			TestMaps.markRandomRoads(cityMap, random, 1);
+			int[][] roads = cityMap.copyRoads();
+			for (int x = 0; x < cityMap.getRows(); x++)
+				for (int y = 0; y < cityMap.getCols(); y++) {
+					int node = x * cityMap.getCols() + y;
+					for (int code = 0; code < 4; code++) {
+						int next = TestMaps.step(roads, x, y, code);
+						assertEquals(next >= 0, (cityMap.neighbours(node, false) >> code & 1) != 0);
+						if (next >= 0) assertEquals(next, cityMap.neighbour(node, code));
+					}
+				}
+		}
+	}
+
+	@Test
+	public void repairedDistancesMatchFreshBfs() {
+		Random random = new Random(2);
+		for (int map = 0; map < 5; map++) {
+			CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 8, 10, 0.75));
+			int rows = cityMap.getRows(), cols = cityMap.getCols();
+			for (int round = 0; round < 60; round++) {
+				int[][] roads = cityMap.copyRoads();
+				for (int target = 0; target < rows * cols; target++) {
+					int[] expected = TestMaps.bfs(roads, target);
+					CityCross end = cityMap.cross(target / cols, target % cols);
+					for (int start = 0; start < rows * cols; start++)
+						assertEquals(Math.max(0, expected[start]), cityMap.getDistance(cityMap.cross(start / cols, start % cols), end, false));
+				}
+				TestMaps.markRandomRoads(cityMap, random, 1);
+			}
+		}
+	}
+
+	@Test
+	public void evictedRowsAreRebuilt() {
+		Random random = new Random(3);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 7, 7, 0.7));
+		int cells = cityMap.getRows() * cityMap.getCols();
+		RouteIndex routeIndex = new RouteIndex(cityMap, cityMap.getRows(), cityMap.getCols(), false, 3L * cells);
+		int[][] roads = cityMap.copyRoads();
+		for (int query = 0; query < 500; query++) {
+			int start = random.nextInt(cells), end = random.nextInt(cells);
+			assertEquals(TestMaps.bfs(roads, end)[start], routeIndex.distance(start / 7, start % 7, end / 7, end % 7));
+		}
+	}
+}
@@ -0,0 +1,46 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code ComponentIndexTest} class checks the reachability answered by the connected components index against BFS
+ * after random road changes.
+ */
+public class ComponentIndexTest {
+	@Test
+	public void reachableMatchesBfs() {
+		for (int seed = 0; seed < 40; seed++) {
+			Random random = new Random(seed);
+			CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 3 + random.nextInt(8), 3 + random.nextInt(8), 0.4 + random.nextDouble() * 0.4));
+			int rows = cityMap.getRows(), cols = cityMap.getCols();
+			for (int round = 0; round < 40; round++) {
+				int[][] roads = cityMap.copyRoads();
+				for (int target = 0; target < rows * cols; target++) {
+					int[] distance = TestMaps.bfs(roads, target);
+					CityCross end = cityMap.cross(target / cols, target % cols);
+					for (int start = 0; start < rows * cols; start++) {
+						CityCross begin = cityMap.cross(start / cols, start % cols);
+						assertEquals(distance[start] >= 0, cityMap.reachable(begin, end, false));
+						assertEquals(distance[start] >= 0, cityMap.reachable(begin, end, true));
+					}
+				}
+				TestMaps.markRandomRoads(cityMap, random, 1);
+			}
+		}
+	}
+
+	@Test
+	public void unreachableRequestIsRejected() {
+		CityMap cityMap = new CityMap(new int[][]{{1, 0, 0}, {0, 0, 0}});
+		try {
+			new Request(0, 0, 1, 2, cityMap, 0);
+			fail("unreachable request accepted");
+		} catch (Exception e) {
+			assertEquals("unreachable request", e.getMessage());
+		}
+	}
+}
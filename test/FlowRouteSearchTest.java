@@ -0,0 +1,70 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code FlowRouteSearchTest} class checks the congestion-aware routes of {@link CityMap} under random published flow.
+ * <br>
+ * 路径必须沿道路走到终点且不超过绕行上限；绕行上限不起作用时，路径的车流代价必须等于Dijkstra算出的最小代价。
+ */
+public class FlowRouteSearchTest {
+	@Test
+	public void leastCongestedWayRespectsDetourAndCost() {
+		Random random = new Random(23);
+		for (int round = 0; round < 30; round++) {
+			int rows = 3 + random.nextInt(8), cols = 3 + random.nextInt(8), cells = rows * cols;
+			CityMap cityMap = new CityMap(TestMaps.randomRoads(random, rows, cols, 0.8));
+			for (int i = 0; i < 4 * cells; i++) cityMap.moveFlow(-1, random.nextInt(2 * cells));
+			cityMap.publishFlow();
+			int[][] roads = cityMap.copyRoads();
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(cells), end = random.nextInt(cells), detour = random.nextInt(4);
+				int shortest = TestMaps.bfs(roads, end)[start];
+				CityCross from = cityMap.cross(start / cols, start % cols), to = cityMap.cross(end / cols, end % cols);
+				byte[] ways = cityMap.getTheLeastCongestedWay(from, to, false, detour);
+				if (shortest <= 0) {
+					assertArrayEquals(CityMap.NOWAY, ways);
+					continue;
+				}
+				assertTrue("detour too long", ways.length >= shortest && ways.length <= shortest + detour);
+				assertEquals(end, TestMaps.follow(roads, start, ways));
+				ways = cityMap.getTheLeastCongestedWay(from, to, false, cells);
+				assertEquals(end, TestMaps.follow(roads, start, ways));
+				assertEquals(leastCost(cityMap, roads, start)[end], cost(cityMap, start, ways));
+			}
+		}
+	}
+
+	private static int cost(CityMap cityMap, int start, byte[] ways) {
+		int node = start, total = 0;
+		for (byte code : ways) {
+			total += 1 + Math.min(cityMap.getFlow(node, code), FlowRouteSearch.MAX_PENALTY);
+			node = cityMap.neighbour(node, code);
+		}
+		return total;
+	}
+
+	private static int[] leastCost(CityMap cityMap, int[][] roads, int start) {
+		int cols = roads[0].length;
+		int[] best = new int[roads.length * cols];
+		boolean[] done = new boolean[best.length];
+		Arrays.fill(best, Integer.MAX_VALUE);
+		best[start] = 0;
+		while (true) {
+			int node = -1;
+			for (int i = 0; i < best.length; i++) if (!done[i] && best[i] != Integer.MAX_VALUE && (node < 0 || best[i] < best[node])) node = i;
+			if (node < 0) return best;
+			done[node] = true;
+			for (int code = 0; code < 4; code++) {
+				int next = TestMaps.step(roads, node / cols, node % cols, code);
+				if (next >= 0) best[next] = Math.min(best[next], best[node] + 1 + Math.min(cityMap.getFlow(node, code), FlowRouteSearch.MAX_PENALTY));
+			}
+		}
+	}
+}
@@ -0,0 +1,79 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code RequestQueueTest} class checks the timing wheel and the start index of {@link RequestQueue} against a plain list.
+ */
+public class RequestQueueTest {
+	@Test
+	public void pollDueReleasesEachRequestOnceWhenDue() throws Exception {
+		Random random = new Random(18);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 10, 10, 1));
+		RequestQueue requests = new RequestQueue(2, 3, 6, 5);
+		ArrayList<Request> added = new ArrayList<>();
+		HashSet<Request> polled = new HashSet<>();
+		for (long now = 0; now <= 40000; now += MyTimer.TICK) {
+			for (int i = random.nextInt(4); i > 0 && now <= 20000; i--) {
+				int x = 2 + random.nextInt(6), y = 3 + random.nextInt(5);
+				Request request = new Request(x, y, (x + 1) % 10, y, cityMap, Math.max(0, now - 5000 + random.nextInt(20000)));
+				requests.add(request);
+				added.add(request);
+			}
+			long tick = now;
+			requests.pollDue(now, request -> {
+				assertTrue("released early", request.getStartTime() + RequestQueue.WINDOW <= tick);
+				assertTrue("released twice", polled.add(request));
+			});
+			requests.forEach(request -> assertTrue("released late", request.getStartTime() + RequestQueue.WINDOW > tick));
+			assertEquals(added.size() - polled.size(), requests.size());
+		}
+		assertEquals(added.size(), polled.size());
+	}
+
+	@Test
+	public void pollDueKeepsDeadlineOrder() throws Exception {
+		Random random = new Random(5);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 4, 4, 1));
+		RequestQueue requests = new RequestQueue(4, 4);
+		ArrayList<Request> added = new ArrayList<>(), polled = new ArrayList<>();
+		for (int i = 0; i < 2000; i++) {
+			Request request = new Request(random.nextInt(3), 0, 3, 3, cityMap, MyTimer.TICK * random.nextInt(300));
+			requests.add(request);
+			added.add(request);
+		}
+		for (long now = 0; now <= 40000; now += MyTimer.TICK * (1 + random.nextInt(3))) requests.pollDue(now, polled::add);
+		added.sort(Comparator.comparingLong(Request::getStartTime));
+		assertEquals(added, polled);
+	}
+
+	@Test
+	public void forEachNearMatchesScan() throws Exception {
+		Random random = new Random(4);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 12, 12, 1));
+		RequestQueue requests = new RequestQueue(3, 2, 5, 7);
+		ArrayList<Request> added = new ArrayList<>();
+		for (int i = 0; i < 200; i++) {
+			int x = 3 + random.nextInt(5), y = 2 + random.nextInt(7);
+			Request request = new Request(x, y, (x + 1) % 12, y, cityMap, random.nextInt(10000));
+			requests.add(request);
+			added.add(request);
+		}
+		for (int query = 0; query < 300; query++) {
+			CityCross center = cityMap.cross(random.nextInt(12), random.nextInt(12));
+			int radius = random.nextInt(4);
+			HashSet<Request> expected = new HashSet<>(), found = new HashSet<>();
+			for (Request request : added)
+				if (Math.abs(request.getStart().getX() - center.getX()) <= radius && Math.abs(request.getStart().getY() - center.getY()) <= radius) expected.add(request);
+			requests.forEachNear(center, radius, found::add);
+			assertEquals(expected, found);
+		}
+	}
+}
@@ -0,0 +1,86 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Overview:
+ * The {@code RequestTraceTest} class checks that {@link RequestTrace} reads text and binary traces to the same records
+ * and numbers malformed records.
+ */
+public class RequestTraceTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void converterRoundTrip() throws Exception {
+		Random random = new Random(17);
+		File text = folder.newFile(), binary = folder.newFile();
+		List<String> expected = new ArrayList<>();
+		StringBuilder lines = new StringBuilder("# time,sx,sy,ex,ey\n");
+		for (int i = 0; i < 3000; i++) {
+			String record = RequestTrace.format(random.nextInt(1 << 20), random.nextInt(80), random.nextInt(80), random.nextInt(80), random.nextInt(80));
+			expected.add(record);
+			lines.append(i % 10 == 0 ? "\n " + record.replace(",", " , ") : record).append('\n');
+		}
+		Files.write(text.toPath(), lines.toString().getBytes(StandardCharsets.UTF_8));
+		RequestTrace.main(new String[]{text.getPath(), binary.getPath()});
+		assertEquals(expected, read(text, false));
+		assertEquals(expected, read(binary, true));
+	}
+
+	@Test
+	public void malformedRecordsAreNumbered() throws Exception {
+		File text = folder.newFile();
+		Files.write(text.toPath(), Arrays.asList("# trace", "100,1,1,2,2", "", "100,1,1", "x,1,1,2,2", "200,1,1,2,2"), StandardCharsets.UTF_8);
+		assertEquals(Arrays.asList("2", "4: expected 5 fields: 100,1,1", "5: bad number: x,1,1,2,2", "6"), errors(text));
+		File binary = folder.newFile();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(binary))) {
+			out.writeInt(RequestTrace.MAGIC);
+			out.writeShort(RequestTrace.VERSION);
+			out.writeShort(0);
+			out.writeLong(100);
+			for (int i = 0; i < 4; i++) out.writeInt(i);
+			out.writeLong(200);
+			out.writeInt(1);
+		}
+		List<String> errors = errors(binary);
+		assertEquals(2, errors.size());
+		assertEquals("1", errors.get(0));
+		assertEquals("2: truncated record", errors.get(1).substring(0, "2: truncated record".length()));
+	}
+
+	private static List<String> read(File file, boolean binary) throws Exception {
+		List<String> records = new ArrayList<>();
+		try (RequestTrace trace = new RequestTrace(file.getPath())) {
+			while (trace.next()) {
+				assertNull(trace.getError());
+				if (binary) assertEquals(records.size() + 1, trace.getRecord());
+				records.add(RequestTrace.format(trace.getTime(), trace.getSx(), trace.getSy(), trace.getEx(), trace.getEy()));
+				if (binary) assertEquals(records.get(records.size() - 1), trace.getRaw());
+			}
+		}
+		return records;
+	}
+
+	private static List<String> errors(File file) throws Exception {
+		List<String> records = new ArrayList<>();
+		try (RequestTrace trace = new RequestTrace(file.getPath())) {
+			while (trace.next())
+				records.add(trace.getError() == null ? String.valueOf(trace.getRecord()) : trace.getRecord() + ": " + trace.getError() + ": " + trace.getRaw());
+		}
+		return records;
+	}
+}
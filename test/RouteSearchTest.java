@@ -0,0 +1,34 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code RouteSearchTest} class checks the A* shortest routes of {@link CityMap} against a BFS over the road array.
+ */
+public class RouteSearchTest {
+	@Test
+	public void shortestWayMatchesBfs() {
+		Random random = new Random(12);
+		for (int round = 0; round < 20; round++) {
+			CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 6 + random.nextInt(10), 6 + random.nextInt(10), 0.65));
+			TestMaps.markRandomRoads(cityMap, random, 10);
+			int[][] roads = cityMap.copyRoads();
+			int rows = cityMap.getRows(), cols = cityMap.getCols();
+			for (int query = 0; query < 50; query++) {
+				int start = random.nextInt(rows * cols), end = random.nextInt(rows * cols);
+				int expected = TestMaps.bfs(roads, end)[start];
+				byte[] ways = cityMap.getTheShortestWay(cityMap.cross(start / cols, start % cols), cityMap.cross(end / cols, end % cols), false);
+				if (expected <= 0) {
+					assertArrayEquals(CityMap.NOWAY, ways);
+					continue;
+				}
+				assertEquals(expected, ways.length);
+				assertEquals(end, TestMaps.follow(roads, start, ways));
+			}
+		}
+	}
+}
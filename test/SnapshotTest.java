@@ -0,0 +1,119 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Overview:
+ * The {@code SnapshotTest} class checks that a snapshot written by a running scheduler restores to a state that captures
+ * to the same bytes, and that damaged files are rejected.
+ */
+public class SnapshotTest {
+	private static final int SIZE = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private double speedUp;
+	private long time;
+
+	@Before
+	public void setUp() throws IOException {
+		speedUp = MyTimer.getMyTimer().getSpeedUp();
+		time = MyTimer.getMyTimer().getTime();
+		MyTimer.getMyTimer().setSpeedUp(MyTimer.FASTEST);
+		EventLog.getEventLog().configure(folder.newFile().getPath(), true, 1);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		// 计时器和事件日志是单例，恢复后同一JVM中之后的测试才不受影响；事件日志恢复为默认的文本标准输出
+		EventLog.getEventLog().configure(null, false, 1);
+		MyTimer.getMyTimer().setSpeedUp(speedUp);
+		MyTimer.getMyTimer().setTime(time);
+	}
+
+	@Test
+	public void writeLoadCaptureIsIdentical() throws Exception {
+		File written = checkpoint(new Random(25));
+		Snapshot snapshot = Snapshot.load(written.getPath());
+		assertTrue(snapshot.repOk());
+		CityMap cityMap = snapshot.restoreCityMap();
+		LightsMap lightsMap = snapshot.restoreLightsMap();
+		Vector<Taxi> taxis = snapshot.restoreTaxis(Fleet.shared(cityMap, lightsMap));
+		TaxiGrid taxiGrid = new TaxiGrid(SIZE, SIZE);
+		TaxiSchedulingSystem scheduler = new TaxiSchedulingSystem(cityMap, lightsMap, taxis, taxiGrid, 2, 4);
+		snapshot.restoreRequests(cityMap, taxis, scheduler);
+		taxiGrid.update(taxis);
+		assertEquals(snapshot.getPendingCount(), scheduler.getPendingCount());
+		File captured = folder.newFile();
+		Snapshot.capture(cityMap, lightsMap, taxis.toArray(new Taxi[0]), scheduler, snapshot.getTime(), null).write(captured.getPath());
+		assertArrayEquals(Files.readAllBytes(written.toPath()), Files.readAllBytes(captured.toPath()));
+		MyTimer.getMyTimer().setTime(snapshot.getTime());
+		for (int i = 0; i < 50; i++) scheduler.tick();
+		assertTrue(scheduler.repOk());
+	}
+
+	@Test
+	public void damagedSnapshotIsRejected() throws Exception {
+		File written = checkpoint(new Random(7));
+		byte[] bytes = Files.readAllBytes(written.toPath());
+		bytes[bytes.length / 2] ^= 1;
+		Files.write(written.toPath(), bytes);
+		try {
+			Snapshot.load(written.getPath());
+			fail("damaged snapshot accepted");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().endsWith("checksum mismatch"));
+		}
+	}
+
+	private File checkpoint(Random random) throws Exception {
+		MyTimer.getMyTimer().setTime(0);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, SIZE, SIZE, 1));
+		int[][] lights = new int[SIZE][SIZE];
+		for (int x = 0; x < SIZE; x++) for (int y = 0; y < SIZE; y++) lights[x][y] = random.nextInt(3) - 1;
+		LightsMap lightsMap = new LightsMap(lights);
+		lightsMap.setOffset(3, 4, 100);
+		Vector<Taxi> taxis = new Vector<>();
+		for (int i = 0; i < 60; i++) {
+			CityCross cross = cityMap.cross(random.nextInt(SIZE), random.nextInt(SIZE));
+			taxis.add(i % 3 == 0 ? new VipTaxi(cross, cityMap, lightsMap) : new Taxi(cross, cityMap, lightsMap));
+		}
+		TaxiGrid taxiGrid = new TaxiGrid(SIZE, SIZE);
+		taxiGrid.update(taxis);
+		TaxiSchedulingSystem scheduler = new TaxiSchedulingSystem(cityMap, lightsMap, taxis, taxiGrid, 2, 4);
+		for (int tick = 0; tick < 120; tick++) {
+			for (int i = 0; i < 2; i++) {
+				int sx = random.nextInt(SIZE), sy = random.nextInt(SIZE), ex = random.nextInt(SIZE), ey = random.nextInt(SIZE);
+				if (sx != ex || sy != ey) scheduler.addRequest(new Request(sx, sy, ex, ey, cityMap));
+			}
+			if (tick == 60) cityMap.markRoad(cityMap.cross(9, 9), 1);
+			scheduler.tick();
+		}
+		// 请求发出后目的地被封闭，恢复时不能因为重新检查可达性而失败
+		scheduler.addRequest(new Request(2, 2, 5, 5, cityMap));
+		cityMap.markRoad(cityMap.cross(5, 5), 0);
+		cityMap.markRoad(cityMap.cross(4, 5), 1);
+		cityMap.markRoad(cityMap.cross(5, 4), 2);
+		assertFalse(cityMap.reachable(cityMap.cross(2, 2), cityMap.cross(5, 5), true));
+		File file = folder.newFile();
+		CompletableFuture<Void> written = scheduler.checkpoint(file.getPath());
+		scheduler.tick();
+		written.get();
+		return file;
+	}
+}
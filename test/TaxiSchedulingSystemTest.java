@@ -0,0 +1,158 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Overview:
+ * The {@code TaxiSchedulingSystemTest} class runs the same seeded workload through the scheduler with one and with several shards
+ * and checks the dispatch of every tick.
+ * <br>
+ * 每个时间片检查：到期的请求恰好被接走或错过一次，没有到期的请求不被分派，一辆出租车不会在同一时间片接两个请求，
+ * 留下的请求被发出地附近的所有出租车抢过（包括相邻区域的出租车），每辆出租车恰好属于所在区域的分片；
+ * 只有一个分片时，分派结果还必须与按到期顺序逐个选车的原来的分派相同。
+ * 出租车少于请求时分片从区域内和边界外的出租车出发抢单，因此另外用很少的出租车运行一次。
+ */
+public class TaxiSchedulingSystemTest {
+	private static final int SIZE = 30;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private double speedUp;
+	private long time;
+
+	@Before
+	public void setUp() throws IOException {
+		speedUp = MyTimer.getMyTimer().getSpeedUp();
+		time = MyTimer.getMyTimer().getTime();
+		MyTimer.getMyTimer().setSpeedUp(MyTimer.FASTEST);
+		EventLog.getEventLog().configure(folder.newFile().getPath(), true, 1);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		EventLog.getEventLog().configure(null, false, 1);
+		MyTimer.getMyTimer().setSpeedUp(speedUp);
+		MyTimer.getMyTimer().setTime(time);
+	}
+
+	@Test
+	public void oneShardMatchesSequentialDispatch() throws Exception {
+		run(1, false, 400);
+	}
+
+	@Test
+	public void shardsKeepDispatchInvariants() throws Exception {
+		for (int shardCount : new int[]{4, 6, 9}) {
+			run(shardCount, false, 400);
+			run(shardCount, true, 400);
+		}
+		run(9, false, 40);
+	}
+
+	private void run(int shardCount, boolean batch, int taxiCount) throws Exception {
+		MyTimer.getMyTimer().setTime(0);
+		Random random = new Random(19);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, SIZE, SIZE, 1));
+		LightsMap lightsMap = new LightsMap(new int[SIZE][SIZE]);
+		Vector<Taxi> taxis = new Vector<>();
+		for (int i = 0; i < taxiCount; i++) {
+			CityCross cross = cityMap.cross(random.nextInt(SIZE), random.nextInt(SIZE));
+			taxis.add(i % 5 == 0 ? new VipTaxi(cross, cityMap, lightsMap) : new Taxi(cross, cityMap, lightsMap));
+		}
+		TaxiGrid taxiGrid = new TaxiGrid(SIZE, SIZE);
+		taxiGrid.update(taxis);
+		TaxiSchedulingSystem scheduler = new TaxiSchedulingSystem(cityMap, lightsMap, taxis, taxiGrid, 4, shardCount);
+		scheduler.setBatchDispatch(batch);
+		ArrayList<Request> pending = new ArrayList<>();
+		HashSet<Request> dispatched = new HashSet<>();
+		Request[] aims = new Request[taxis.size()];
+		for (int tick = 0; tick < 300; tick++) {
+			for (int i = 0; i < 6 && tick < 200; i++) {
+				int sx = random.nextInt(SIZE), sy = random.nextInt(SIZE), ex = random.nextInt(SIZE), ey = random.nextInt(SIZE);
+				if (sx == ex && sy == ey) continue;
+				Request request = new Request(sx, sy, ex, ey, cityMap);
+				scheduler.addRequest(request);
+				pending.add(request);
+			}
+			long now = MyTimer.getMyTimer().getTime() + MyTimer.TICK;
+			List<Request> due = new ArrayList<>();
+			pending.removeIf(request -> request.getStartTime() + RequestQueue.WINDOW <= now && due.add(request));
+			Map<Request, Taxi> expected = shardCount == 1 && !batch ? sequentialDispatch(due) : null;
+			HashMap<Request, List<Taxi>> near = new HashMap<>();
+			for (Request request : pending) near.put(request, near(taxis, request.getStart()));
+			long taken = metric("dispatch.taken"), missed = metric("dispatch.missed");
+			scheduler.tick();
+			HashMap<Request, Taxi> carried = new HashMap<>();
+			for (int i = 0; i < aims.length; i++) {
+				Taxi taxi = taxis.get(i);
+				Request aim = taxi.fleet.getAim(taxi.slot);
+				if (aim != null && aim != aims[i]) {
+					assertTrue("taken twice", dispatched.add(aim));
+					assertNull("one request for two taxis", carried.put(aim, taxi));
+				}
+				aims[i] = aim;
+			}
+			assertTrue("taken before due", due.containsAll(carried.keySet()));
+			// 一辆出租车在同一时间片接两个请求时，接单次数会多于新接到请求的出租车数，先接的请求也既不算接走也不算错过
+			assertEquals(carried.size(), metric("dispatch.taken") - taken);
+			assertEquals(due.size() - carried.size(), metric("dispatch.missed") - missed);
+			HashSet<Request> left = new HashSet<>();
+			scheduler.forEachPending(left::add);
+			assertEquals(new HashSet<>(pending), left);
+			for (Request request : pending) {
+				BitSet registered = BitSet.valueOf(request.getRegisteredIds());
+				for (Taxi taxi : near.get(request)) assertTrue("nearby taxi did not register", registered.get(taxi.getId()));
+			}
+			assertTrue("taxi owned by a wrong shard or by two shards", scheduler.repOk());
+			if (expected != null) for (Request request : due) assertSame(expected.get(request), carried.get(request));
+		}
+		assertTrue(pending.isEmpty());
+	}
+
+	private static Map<Request, Taxi> sequentialDispatch(List<Request> due) {
+		// 原来的分派：按到期顺序，每个请求选出信誉度最高、其次离发出地最近的仍在等待的候选出租车，相同时取候选列表中靠前的
+		HashMap<Request, Taxi> expected = new HashMap<>();
+		HashSet<Taxi> busy = new HashSet<>();
+		for (Request request : due) {
+			Taxi best = null;
+			for (Taxi taxi : request.getCandidates()) {
+				if (busy.contains(taxi)) continue;
+				if (best == null || taxi.getCredit() > best.getCredit()
+						    || taxi.getCredit() == best.getCredit() && taxi.howFar(request.getStart()) < best.howFar(request.getStart())) best = taxi;
+			}
+			if (best != null) {
+				busy.add(best);
+				expected.put(request, best);
+			}
+		}
+		return expected;
+	}
+
+	private static List<Taxi> near(List<Taxi> taxis, CityCross start) {
+		List<Taxi> near = new ArrayList<>();
+		for (Taxi taxi : taxis)
+			if (Math.abs(taxi.getStayCityCross().getX() - start.getX()) <= 2 && Math.abs(taxi.getStayCityCross().getY() - start.getY()) <= 2) near.add(taxi);
+		return near;
+	}
+
+	private static long metric(String name) {
+		return Metrics.getMetrics().snapshot().get(name);
+	}
+}
@@ -0,0 +1,125 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Overview:
+ * The {@code TestMaps} class implements the random maps and reference searches shared by the tests.
+ * <br>
+ * 参考搜索直接读取{@link CityMap#copyRoads()}格式的道路数组，不经过地图的相邻道路掩码和各种索引，
+ * 因此可以用来检查这些索引。
+ */
+final class TestMaps {
+	private TestMaps() {
+	}
+
+	/**
+	 * Requires:传入随机数生成器，地图行数，列数，以及每条道路存在的概率。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回一张随机道路数组，格式同{@link CityMap#CityMap(int[][])}。<br>
+	 *
+	 * @param random      随机数生成器。
+	 * @param rows        地图行数。
+	 * @param cols        地图列数。
+	 * @param probability 道路存在的概率。
+	 *
+	 * @return 道路数组。
+	 */
+	static int[][] randomRoads(Random random, int rows, int cols, double probability) {
+		int[][] roads = new int[rows][cols];
+		for (int x = 0; x < rows; x++)
+			for (int y = 0; y < cols; y++)
+				roads[x][y] = (y + 1 < cols && random.nextDouble() < probability ? 1 : 0) | (x + 1 < rows && random.nextDouble() < probability ? 2 : 0);
+		return roads;
+	}
+
+	/**
+	 * Requires:传入一张城市地图，随机数生成器和修改次数。<br>
+	 * Modifies:随机关闭或恢复地图上的道路。<br>
+	 * Effects:对随机路口调用{@code count}次{@link CityMap#markRoad}，不合法的修改被地图拒绝。<br>
+	 *
+	 * @param cityMap 城市地图。
+	 * @param random  随机数生成器。
+	 * @param count   修改次数。
+	 */
+	static void markRandomRoads(CityMap cityMap, Random random, int count) {
+		for (int i = 0; i < count; i++)
+			cityMap.markRoad(cityMap.cross(random.nextInt(cityMap.getRows()), random.nextInt(cityMap.getCols())), random.nextInt(4));
+	}
+
+	/**
+	 * Requires:传入道路数组和一个路口坐标。<br>
+	 * Modifies:无。<br>
+	 * Effects:返回该路口沿方向编码可走时相邻路口的编号，否则返回-1。<br>
+	 *
+	 * @param roads 道路数组。
+	 * @param x     路口x坐标。
+	 * @param y     路口y坐标。
+	 * @param code  方向编码。
+	 *
+	 * @return 相邻路口编号。
+	 */
+	static int step(int[][] roads, int x, int y, int code) {
+		int rows = roads.length, cols = roads[0].length;
+		switch (Direction.of(code)) {
+			case UP:
+				return x > 0 && (roads[x - 1][y] & 2) != 0 ? (x - 1) * cols + y : -1;
+			case DOWN:
+				return x + 1 < rows && (roads[x][y] & 2) != 0 ? (x + 1) * cols + y : -1;
+			case LEFT:
+				return y > 0 && (roads[x][y - 1] & 1) != 0 ? x * cols + y - 1 : -1;
+			case RIGHT:
+				return y + 1 < cols && (roads[x][y] & 1) != 0 ? x * cols + y + 1 : -1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Requires:传入道路数组和一个路口编号。<br>
+	 * Modifies:无。<br>
+	 * Effects:用BFS返回所有路口到该路口的距离，-1表示不可达。<br>
+	 *
+	 * @param roads  道路数组。
+	 * @param target 路口编号。
+	 *
+	 * @return 距离表。
+	 */
+	static int[] bfs(int[][] roads, int target) {
+		int cols = roads[0].length;
+		int[] distance = new int[roads.length * cols], queue = new int[distance.length];
+		Arrays.fill(distance, -1);
+		int head = 0, tail = 0;
+		distance[target] = 0;
+		queue[tail++] = target;
+		while (head < tail) {
+			int now = queue[head++];
+			for (int code = 0; code < 4; code++) {
+				int next = step(roads, now / cols, now % cols, code);
+				if (next < 0 || distance[next] >= 0) continue;
+				distance[next] = distance[now] + 1;
+				queue[tail++] = next;
+			}
+		}
+		return distance;
+	}
+
+	/**
+	 * Requires:传入道路数组，起点编号和一条方向编码路径。<br>
+	 * Modifies:无。<br>
+	 * Effects:沿路径行驶，返回到达的路口编号，路径中有不存在的道路时返回-1。{@link TimedRouteSearch#WAIT}表示原地等待。<br>
+	 *
+	 * @param roads 道路数组。
+	 * @param start 起点编号。
+	 * @param ways  路径。
+	 *
+	 * @return 到达的路口编号。
+	 */
+	static int follow(int[][] roads, int start, byte[] ways) {
+		int cols = roads[0].length, node = start;
+		for (byte code : ways) {
+			if (code == TimedRouteSearch.WAIT) continue;
+			node = step(roads, node / cols, node % cols, code);
+			if (node < 0) return -1;
+		}
+		return node;
+	}
+}
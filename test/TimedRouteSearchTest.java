@@ -0,0 +1,73 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Overview:
+ * The {@code TimedRouteSearchTest} class checks the light-aware routes of {@link CityMap} by replaying them under the light schedule
+ * and comparing the arrival time with a brute-force search over (cross, heading) states one time slice at a time.
+ */
+public class TimedRouteSearchTest {
+	@Test
+	public void fastestWayIsFeasibleAndEarliest() {
+		Random random = new Random(22);
+		for (int round = 0; round < 30; round++) {
+			int rows = 3 + random.nextInt(6), cols = 3 + random.nextInt(6);
+			CityMap cityMap = new CityMap(TestMaps.randomRoads(random, rows, cols, 0.8));
+			int[][] lights = new int[rows][cols];
+			for (int x = 0; x < rows; x++) for (int y = 0; y < cols; y++) lights[x][y] = random.nextInt(3) - 1;
+			LightsMap lightsMap = new LightsMap(lights);
+			for (int i = 0; i < 4; i++) lightsMap.setOffset(random.nextInt(rows), random.nextInt(cols), 100 * random.nextInt(10));
+			int[][] roads = cityMap.copyRoads();
+			for (int query = 0; query < 40; query++) {
+				int start = random.nextInt(rows * cols), end = random.nextInt(rows * cols), heading = random.nextInt(4);
+				long now = MyTimer.TICK * random.nextInt(100);
+				byte[] ways = cityMap.getTheFastestWay(cityMap.cross(start / cols, start % cols), cityMap.cross(end / cols, end % cols),
+						Direction.of(heading), false, lightsMap, now);
+				int earliest = earliest(roads, lightsMap, start, heading, end, now);
+				if (start == end || earliest < 0) {
+					assertArrayEquals(CityMap.NOWAY, ways);
+					continue;
+				}
+				assertEquals(earliest, ways.length);
+				assertEquals(end, replay(roads, lightsMap, start, heading, ways, now));
+			}
+		}
+	}
+
+	private static int replay(int[][] roads, LightsMap lightsMap, int start, int heading, byte[] ways, long now) {
+		int cols = roads[0].length, node = start;
+		for (int step = 0; step < ways.length; step++) {
+			if (ways[step] == TimedRouteSearch.WAIT) continue;
+			assertTrue("ran a red light", LightsMap.allows(lightsMap.getLight(node / cols, node % cols, now + step * MyTimer.TICK), heading, ways[step]));
+			node = TestMaps.step(roads, node / cols, node % cols, ways[step]);
+			assertTrue("left the road", node >= 0);
+			heading = ways[step];
+		}
+		return node;
+	}
+
+	private static int earliest(int[][] roads, LightsMap lightsMap, int start, int heading, int end, long now) {
+		int cols = roads[0].length, cells = roads.length * cols;
+		boolean[] reached = new boolean[cells * 4];
+		reached[start * 4 + heading] = true;
+		for (int step = 0; step <= cells * 4 * (2 * LightsMap.PERIOD / MyTimer.TICK); step++) {
+			for (int code = 0; code < 4; code++) if (reached[end * 4 + code]) return step;
+			boolean[] next = reached.clone();
+			for (int state = 0; state < reached.length; state++) {
+				if (!reached[state]) continue;
+				int node = state / 4, light = lightsMap.getLight(node / cols, node % cols, now + step * MyTimer.TICK);
+				for (int code = 0; code < 4; code++) {
+					int other = TestMaps.step(roads, node / cols, node % cols, code);
+					if (other >= 0 && LightsMap.allows(light, state % 4, code)) next[other * 4 + code] = true;
+				}
+			}
+			reached = next;
+		}
+		return -1;
+	}
+}
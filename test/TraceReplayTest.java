@@ -0,0 +1,124 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Overview:
+ * The {@code TraceReplayTest} class checks that {@link TraceReplay} delivers trace records as requests when they are due
+ * and reports every rejected record with its record number.
+ * <br>
+ * 读线程在测试线程中直接运行到结束，测试中的轨迹都小于有界队列的容量。
+ */
+public class TraceReplayTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+	private final PrintStream rejects = new PrintStream(output, true);
+
+	@Test
+	public void malformedAndOutOfOrderRecordsAreReported() throws Exception {
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(new Random(1), 3, 3, 1));
+		File text = folder.newFile();
+		Files.write(text.toPath(), Arrays.asList("# trace", "100,0,0,0,2", "0,0,0,0", "100,0,0,0,x", "50,0,1,0,2", "200,0,2,0,0"), StandardCharsets.UTF_8);
+		TraceReplay replay = new TraceReplay(text.getPath(), cityMap, rejects, 0);
+		replay.run();
+		assertTrue(replay.deliver(Long.MAX_VALUE, request -> {
+		}));
+		assertEquals(2, replay.getAccepted());
+		assertEquals(Arrays.asList(text.getPath() + ":3: expected 5 fields: 0,0,0,0", text.getPath() + ":4: bad number: 100,0,0,0,x",
+				text.getPath() + ":5: out of order: 50,0,1,0,2"), rejected());
+
+		output.reset();
+		File binary = folder.newFile();
+		try (DataOutputStream out = new DataOutputStream(new FileOutputStream(binary))) {
+			out.writeInt(RequestTrace.MAGIC);
+			out.writeShort(RequestTrace.VERSION);
+			out.writeShort(0);
+			for (int[] record : new int[][]{{100, 0, 0, 0, 2}, {200, 0, 2, 0, 0}, {50, 0, 1, 0, 2}}) {
+				out.writeLong(record[0]);
+				for (int i = 1; i < 5; i++) out.writeInt(record[i]);
+			}
+		}
+		replay = new TraceReplay(binary.getPath(), cityMap, rejects, 0);
+		replay.run();
+		assertTrue(replay.deliver(Long.MAX_VALUE, request -> {
+		}));
+		assertEquals(2, replay.getAccepted());
+		assertEquals(1, replay.getRejected());
+		assertEquals(Arrays.asList(binary.getPath() + ":3: out of order: 50,0,1,0,2"), rejected());
+	}
+
+	@Test
+	public void recordsAreCheckedAgainstRoadsAtDelivery() throws Exception {
+		CityMap cityMap = new CityMap(new int[][]{{1, 1, 0}, {0, 0, 0}});
+		File text = folder.newFile();
+		Files.write(text.toPath(), Arrays.asList("0,0,0,0,2", "0,0,0,0,1", "0,0,1,0,1", "0,0,0,5,5"), StandardCharsets.UTF_8);
+		TraceReplay replay = new TraceReplay(text.getPath(), cityMap, rejects, 0);
+		replay.run();
+		// 读入时(0,0)到(0,2)可达，投放前道路被封闭
+		assertTrue(cityMap.markRoad(cityMap.cross(0, 1), 0));
+		List<Request> delivered = new ArrayList<>();
+		assertTrue(replay.deliver(0, delivered::add));
+		assertEquals(1, delivered.size());
+		assertEquals(cityMap.cross(0, 1), delivered.get(0).getEnd());
+		assertEquals(Arrays.asList(text.getPath() + ":1: unreachable request: 0,0,0,0,2", text.getPath() + ":3: wrong request: start equals end: 0,0,1,0,1",
+				text.getPath() + ":4: wrong request: out of map: 0,0,0,5,5"), rejected());
+		assertEquals(3, replay.getRejected());
+	}
+
+	@Test
+	public void requestsAreDeliveredWhenDue() throws Exception {
+		Random random = new Random(17);
+		CityMap cityMap = new CityMap(TestMaps.randomRoads(random, 8, 8, 1));
+		File text = folder.newFile();
+		List<String> lines = new ArrayList<>();
+		List<Long> times = new ArrayList<>();
+		for (long time = 0; lines.size() < 5000; time += random.nextInt(3) * 37) {
+			int sx = random.nextInt(8), sy = random.nextInt(8);
+			lines.add(RequestTrace.format(time, sx, sy, (sx + 1) % 8, sy));
+			times.add(time);
+		}
+		Files.write(text.toPath(), lines, StandardCharsets.UTF_8);
+		long offset = 1000;
+		TraceReplay replay = new TraceReplay(text.getPath(), cityMap, rejects, offset);
+		replay.run();
+		List<Request> delivered = new ArrayList<>();
+		long now = 0;
+		while (true) {
+			long tick = now;
+			int before = delivered.size();
+			boolean finished = replay.deliver(now, request -> {
+				assertTrue("delivered early", request.getStartTime() <= tick);
+				delivered.add(request);
+			});
+			for (int i = before; i < delivered.size(); i++) assertEquals(offset + times.get(i), delivered.get(i).getStartTime());
+			if (delivered.size() < times.size()) assertTrue("delivered late", offset + times.get(delivered.size()) > now);
+			if (finished) break;
+			assertFalse(now > offset + times.get(times.size() - 1));
+			now += MyTimer.TICK;
+		}
+		assertEquals(times.size(), delivered.size());
+		assertEquals(0, replay.getRejected());
+	}
+
+	private List<String> rejected() {
+		String text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+		return text.isEmpty() ? new ArrayList<>() : Arrays.asList(text.split(System.lineSeparator()));
+	}
+}